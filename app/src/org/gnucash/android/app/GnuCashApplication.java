@@ -21,6 +21,7 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import org.gnucash.android.R;
+import org.gnucash.android.db.DatabaseConnection;
 
 import java.util.Currency;
 import java.util.Locale;
@@ -34,6 +35,11 @@ public class GnuCashApplication extends Application{
 
     private static Context context;
 
+    /**
+     * Database connection shared by all database adapters in the process
+     */
+    private static DatabaseConnection databaseConnection;
+
     public void onCreate(){
         super.onCreate();
         GnuCashApplication.context = getApplicationContext();
@@ -47,6 +53,19 @@ public class GnuCashApplication extends Application{
         return GnuCashApplication.context;
     }
 
+    /**
+     * Returns the owner of the database connection which is shared by all database adapters.
+     * The owner is created on first use, the database is opened when it is first acquired
+     * @param context Context used to create the connection owner on first use
+     * @return Shared {@link DatabaseConnection}
+     */
+    public static synchronized DatabaseConnection getDatabaseConnection(Context context){
+        if (databaseConnection == null){
+            databaseConnection = new DatabaseConnection(context);
+        }
+        return databaseConnection;
+    }
+
     /**
      * Returns <code>true</code> if double entry is enabled in the app settings, <code>false</code> otherwise.
      * If the value is not set, the default value can be specified in the parameters.
@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import android.util.SparseArray;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Database adapter for the cached balances of the accounts.
+ * <p>The balance of every account is stored in the {@link AccountBalanceEntry#TABLE_NAME} table and is kept
+ * up to date whenever splits are added, modified or deleted. Reading the balance of an account is then a
+ * single query instead of a scan over all splits of the account and its sub-accounts.</p>
+ * <p>Each record holds the balance of the splits of the account itself and the total balance which also
+ * includes the sub-accounts with the same currency. Accounts without any record have a zero balance.
+ * Only splits of transactions which are not recurring contribute to the balances.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class AccountBalancesDbAdapter extends DatabaseAdapter {
+
+    protected static final String TAG = "AccountBalancesDbAdapter";
+
+    /**
+     * Number of decimal places of balances of accounts without any splits
+     */
+    private static final int ZERO_BALANCE_SCALE = 2;
+
+    /**
+     * Query for the sum of the numerators of the splits per account and denominator, for splits which contribute
+     * to account balances. Debits are added and credits are subtracted, independent of the account type.
+     * A WHERE clause on the splits table is appended to restrict the splits, followed by {@link #SPLIT_SUMS_GROUPING}
+     */
+    private static final String SPLIT_SUMS_QUERY = "SELECT "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + ", "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_TYPE + ", "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_DENOM + ", "
+            + "SUM(CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = '" + TransactionType.DEBIT.name() + "'"
+            + " THEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_NUM
+            + " ELSE -" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_NUM + " END)"
+            + " FROM " + SplitEntry.TABLE_NAME
+            + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+            + " INNER JOIN " + AccountEntry.TABLE_NAME + " ON "
+            + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = "
+            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+            + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0";
+
+    private static final String SPLIT_SUMS_GROUPING = " GROUP BY " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+            + ", " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_DENOM;
+
+    public AccountBalancesDbAdapter(Context context) {
+        super(context);
+    }
+
+    public AccountBalancesDbAdapter(SQLiteDatabase db) {
+        super(db);
+    }
+
+    /**
+     * Returns the balance of the splits in the account, without considering sub-accounts
+     * @param accountUID Unique identifier of the account
+     * @return Balance of the account
+     */
+    public Money getBalance(String accountUID){
+        return readBalance(AccountBalanceEntry.COLUMN_BALANCE,
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = ?", new String[]{accountUID});
+    }
+
+    /**
+     * Returns the balance of the account including all its sub-accounts which have the same currency
+     * @param accountUID Unique identifier of the account
+     * @return Total balance of the account
+     */
+    public Money getTotalBalance(String accountUID){
+        return readBalance(AccountBalanceEntry.COLUMN_TOTAL_BALANCE,
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = ?", new String[]{accountUID});
+    }
+
+    /**
+     * Returns the balance of the account including all its sub-accounts which have the same currency
+     * @param accountId Database record ID of the account
+     * @return Total balance of the account
+     */
+    public Money getTotalBalance(long accountId){
+        return readBalance(AccountBalanceEntry.COLUMN_TOTAL_BALANCE,
+                AccountEntry.TABLE_NAME + "." + AccountEntry._ID + " = " + accountId, null);
+    }
+
+    /**
+     * Returns the total balances of several accounts, read from the cache with one query
+     * per chunk of at most {@link #MAX_SQL_ARGUMENTS} accounts
+     * @param accountIds Database record IDs of the accounts
+     * @return Total balances keyed by the record ID of the account. Accounts which do not exist are left out
+     * @see #getTotalBalance(long)
+     */
+    public SparseArray<Money> getTotalBalances(long[] accountIds){
+        SparseArray<Money> balances = new SparseArray<Money>(accountIds.length);
+        for (int start = 0; start < accountIds.length; start += MAX_SQL_ARGUMENTS) {
+            int end = Math.min(start + MAX_SQL_ARGUMENTS, accountIds.length);
+            String[] selectionArgs = new String[end - start];
+            for (int i = start; i < end; i++) {
+                selectionArgs[i - start] = String.valueOf(accountIds[i]);
+            }
+            Cursor cursor = mDb.rawQuery("SELECT "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry._ID + ", "
+                    + AccountBalanceEntry.TABLE_NAME + "." + AccountBalanceEntry.COLUMN_TOTAL_BALANCE + ", "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY
+                    + " FROM " + AccountEntry.TABLE_NAME
+                    + " LEFT OUTER JOIN " + AccountBalanceEntry.TABLE_NAME + " ON "
+                    + AccountBalanceEntry.TABLE_NAME + "." + AccountBalanceEntry.COLUMN_ACCOUNT_UID + " = "
+                    + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID
+                    + " WHERE " + buildInCondition(AccountEntry.TABLE_NAME + "." + AccountEntry._ID, selectionArgs.length),
+                    selectionArgs);
+            try {
+                while (cursor.moveToNext()){
+                    String balance = cursor.getString(1);
+                    balances.put(cursor.getInt(0), new Money(balance == null ? "0" : balance, cursor.getString(2)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Reads a cached balance of an account together with the currency of the account
+     * @param balanceColumn Balance column to be read
+     * @param condition SQL WHERE clause selecting the account
+     * @param selectionArgs Arguments for the <code>condition</code>
+     * @return Money amount of the balance, zero if there is no cached balance
+     */
+    private Money readBalance(String balanceColumn, String condition, String[] selectionArgs){
+        Cursor cursor = mDb.rawQuery("SELECT "
+                + AccountBalanceEntry.TABLE_NAME + "." + balanceColumn + ", "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY
+                + " FROM " + AccountEntry.TABLE_NAME
+                + " LEFT OUTER JOIN " + AccountBalanceEntry.TABLE_NAME + " ON "
+                + AccountBalanceEntry.TABLE_NAME + "." + AccountBalanceEntry.COLUMN_ACCOUNT_UID + " = "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID
+                + " WHERE " + condition, selectionArgs);
+
+        String balance = null;
+        String currencyCode = null;
+        if (cursor != null){
+            if (cursor.moveToFirst()){
+                balance = cursor.getString(0);
+                currencyCode = cursor.getString(1);
+            }
+            cursor.close();
+        }
+        if (currencyCode == null)
+            currencyCode = Money.DEFAULT_CURRENCY_CODE;
+
+        return new Money(balance == null ? "0" : balance, currencyCode);
+    }
+
+    /**
+     * Updates the cached balances with the contribution of the splits matching <code>condition</code>.
+     * <p>This should be called after splits are added to the database (to add their amounts to the balances)
+     * and before they are modified or deleted (to remove their amounts from the balances).
+     * The parent accounts with the same currency are updated as well</p>
+     * @param condition SQL WHERE clause on the splits table selecting the splits
+     * @param selectionArgs Arguments for the <code>condition</code>
+     * @param remove <code>true</code> if the amounts of the splits should be removed from the balances,
+     *               <code>false</code> if they should be added
+     */
+    void updateBalancesForSplits(String condition, String[] selectionArgs, boolean remove){
+        Map<String, BigDecimal> splitBalances = computeSplitBalances(condition, selectionArgs);
+        for (Map.Entry<String, BigDecimal> entry : splitBalances.entrySet()) {
+            BigDecimal delta = remove ? entry.getValue().negate() : entry.getValue();
+            addToBalance(entry.getKey(), delta);
+        }
+    }
+
+    /**
+     * Updates the cached balances with the contribution of the splits whose <code>column</code> matches
+     * one of <code>values</code>. The values are matched in chunks of at most {@link #MAX_SQL_ARGUMENTS}
+     * @param column Column of the splits table to be matched
+     * @param values Values of the column selecting the splits
+     * @param remove <code>true</code> if the amounts of the splits should be removed from the balances,
+     *               <code>false</code> if they should be added
+     * @see #updateBalancesForSplits(String, String[], boolean)
+     */
+    void updateBalancesForSplits(String column, List<String> values, boolean remove){
+        for (int start = 0; start < values.size(); start += MAX_SQL_ARGUMENTS) {
+            List<String> chunk = values.subList(start, Math.min(start + MAX_SQL_ARGUMENTS, values.size()));
+            updateBalancesForSplits(buildInCondition(SplitEntry.TABLE_NAME + "." + column, chunk.size()),
+                    chunk.toArray(new String[chunk.size()]), remove);
+        }
+    }
+
+    /**
+     * Recomputes the cached balance of an account from its splits.
+     * This is necessary when the sign of the splits changes, e.g. when the account type is modified
+     * @param accountUID Unique identifier of the account
+     */
+    void recomputeBalance(String accountUID){
+        Map<String, BigDecimal> splitBalances = computeSplitBalances(
+                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?", new String[]{accountUID});
+        BigDecimal balance = splitBalances.containsKey(accountUID) ? splitBalances.get(accountUID) : BigDecimal.ZERO;
+        addToBalance(accountUID, balance.subtract(getBalance(accountUID).asBigDecimal()));
+    }
+
+    /**
+     * Adds <code>delta</code> to the balance of the account and the total balance of the account
+     * and all its parents which have the same currency
+     * @param accountUID Unique identifier of the account
+     * @param delta Amount to be added to the balance
+     */
+    private void addToBalance(String accountUID, BigDecimal delta){
+        if (delta.signum() == 0)
+            return;
+
+        addToColumn(accountUID, AccountBalanceEntry.COLUMN_BALANCE, delta);
+        String uid = accountUID;
+        while (uid != null){
+            addToColumn(uid, AccountBalanceEntry.COLUMN_TOTAL_BALANCE, delta);
+            uid = getParentWithSameCurrency(uid);
+        }
+    }
+
+    /**
+     * Adds <code>delta</code> to a balance column of the account, creating the record if necessary
+     * @param accountUID Unique identifier of the account
+     * @param column Balance column to be updated
+     * @param delta Amount to be added
+     */
+    private void addToColumn(String accountUID, String column, BigDecimal delta){
+        mDb.execSQL("INSERT OR IGNORE INTO " + AccountBalanceEntry.TABLE_NAME
+                + " (" + AccountBalanceEntry.COLUMN_ACCOUNT_UID + ") VALUES (?)", new Object[]{accountUID});
+
+        Cursor cursor = mDb.query(AccountBalanceEntry.TABLE_NAME,
+                new String[]{column},
+                AccountBalanceEntry.COLUMN_ACCOUNT_UID + " = ?", new String[]{accountUID},
+                null, null, null);
+        BigDecimal balance = BigDecimal.ZERO;
+        if (cursor != null){
+            if (cursor.moveToFirst()){
+                balance = new BigDecimal(cursor.getString(0));
+            }
+            cursor.close();
+        }
+
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(column, balance.add(delta).toPlainString());
+        mDb.update(AccountBalanceEntry.TABLE_NAME, contentValues,
+                AccountBalanceEntry.COLUMN_ACCOUNT_UID + " = ?", new String[]{accountUID});
+    }
+
+    /**
+     * Returns the unique identifier of the parent of an account, if the parent has the same currency
+     * @param accountUID Unique identifier of the account
+     * @return Unique identifier of the parent account, or <code>null</code> if there is no parent or
+     * the parent has a different currency
+     */
+    private String getParentWithSameCurrency(String accountUID){
+        Cursor cursor = mDb.rawQuery("SELECT parent." + AccountEntry.COLUMN_UID
+                + " FROM " + AccountEntry.TABLE_NAME + " child"
+                + " INNER JOIN " + AccountEntry.TABLE_NAME + " parent ON "
+                + "parent." + AccountEntry.COLUMN_UID + " = child." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID
+                + " WHERE child." + AccountEntry.COLUMN_UID + " = ?"
+                + " AND parent." + AccountEntry.COLUMN_CURRENCY + " = child." + AccountEntry.COLUMN_CURRENCY,
+                new String[]{accountUID});
+        String parentUID = null;
+        if (cursor != null){
+            if (cursor.moveToFirst()){
+                parentUID = cursor.getString(0);
+            }
+            cursor.close();
+        }
+        return parentUID;
+    }
+
+    /**
+     * Sums up the amounts of the splits matching <code>condition</code> per account in a single aggregation query.
+     * The numerators are summed up in the database for each denominator and the partial sums are added up here.
+     * The sign of each split amount depends on the split type and the type of the account
+     * @param condition SQL WHERE clause on the splits table. If <code>null</code>, all splits are considered
+     * @param selectionArgs Arguments for the <code>condition</code>
+     * @return Map of account unique identifiers to the balance of the matching splits
+     */
+    private Map<String, BigDecimal> computeSplitBalances(String condition, String[] selectionArgs){
+        String query = condition == null ? SPLIT_SUMS_QUERY : SPLIT_SUMS_QUERY + " AND (" + condition + ")";
+        Cursor cursor = mDb.rawQuery(query + SPLIT_SUMS_GROUPING, selectionArgs);
+
+        Map<String, BigDecimal> balances = new HashMap<String, BigDecimal>();
+        if (cursor != null){
+            while (cursor.moveToNext()){
+                String accountUID = cursor.getString(0);
+                AccountType accountType = AccountType.valueOf(cursor.getString(1));
+                BigDecimal amount = Money.rationalToDecimal(cursor.getLong(3), cursor.getLong(2));
+
+                //the sum is debit-positive, which is the reverse of the balance for credit accounts
+                if (Transaction.shouldDecreaseBalance(accountType, TransactionType.DEBIT))
+                    amount = amount.negate();
+
+                BigDecimal balance = balances.get(accountUID);
+                balances.put(accountUID, balance == null ? amount : balance.add(amount));
+            }
+            cursor.close();
+        }
+        return balances;
+    }
+
+    /**
+     * Computes the balances of all accounts from the splits in the database, in a single aggregation query.
+     * The cached balances are neither read nor modified
+     * @return Map of account unique identifiers to the balance of their splits, without sub-accounts.
+     * Accounts without splits are left out
+     */
+    Map<String, BigDecimal> computeBalances(){
+        return computeSplitBalances(null, null);
+    }
+
+    /**
+     * Recomputes the cached balances of all accounts from the splits in the database
+     */
+    public void rebuildBalances(){
+        Log.i(TAG, "Rebuilding the cached account balances");
+        Map<String, BigDecimal> balances = computeSplitBalances(null, null);
+
+        mDb.beginTransaction();
+        try {
+            deleteAllRecords();
+            writeBalances(balances);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Recomputes the cached total balances of all accounts from the cached balances of the accounts.
+     * This is necessary when the account hierarchy or the currency of accounts changes
+     */
+    void updateTotalBalances(){
+        Cursor cursor = mDb.query(AccountBalanceEntry.TABLE_NAME,
+                new String[]{AccountBalanceEntry.COLUMN_ACCOUNT_UID, AccountBalanceEntry.COLUMN_BALANCE},
+                null, null, null, null, null);
+        Map<String, BigDecimal> balances = new HashMap<String, BigDecimal>();
+        if (cursor != null){
+            while (cursor.moveToNext()){
+                balances.put(cursor.getString(0), new BigDecimal(cursor.getString(1)));
+            }
+            cursor.close();
+        }
+
+        mDb.beginTransaction();
+        try {
+            deleteAllRecords();
+            writeBalances(balances);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Computes the total balances and writes the balances of all accounts to the database.
+     * Accounts without any balance are not written
+     * @param balances Map of account unique identifiers to the balances of the account splits
+     */
+    private void writeBalances(Map<String, BigDecimal> balances){
+        Map<String, BigDecimal> totalBalances = computeTotalBalances(balances, loadAccountTree());
+        for (Map.Entry<String, BigDecimal> entry : totalBalances.entrySet()) {
+            String accountUID = entry.getKey();
+            BigDecimal balance = balances.get(accountUID);
+            if ((balance == null || balance.signum() == 0) && entry.getValue().signum() == 0)
+                continue;
+
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(AccountBalanceEntry.COLUMN_ACCOUNT_UID, accountUID);
+            contentValues.put(AccountBalanceEntry.COLUMN_BALANCE,
+                    balance == null ? "0" : balance.toPlainString());
+            contentValues.put(AccountBalanceEntry.COLUMN_TOTAL_BALANCE, entry.getValue().toPlainString());
+            mDb.insert(AccountBalanceEntry.TABLE_NAME, null, contentValues);
+        }
+    }
+
+    /**
+     * Computes the balances of all accounts directly from the splits in the database, bypassing the cache.
+     * <p>The splits are summed up per account in one aggregation query and rolled up through the account
+     * hierarchy in memory. The balance of a sub-account is only added to its parent if both have the same currency</p>
+     * @param includeSubAccounts If <code>true</code>, the balances include the sub-accounts
+     * @return Balances of all accounts keyed by the database record ID of the account
+     */
+    public SparseArray<Money> computeAccountBalances(boolean includeSubAccounts){
+        Map<String, BigDecimal> balances = computeSplitBalances(null, null);
+        AccountTree accountTree = loadAccountTree();
+        Map<String, BigDecimal> totalBalances = includeSubAccounts
+                ? computeTotalBalances(balances, accountTree) : balances;
+
+        SparseArray<Money> accountBalances = new SparseArray<Money>(accountTree.ids.size());
+        for (Map.Entry<String, Long> entry : accountTree.ids.entrySet()) {
+            String accountUID = entry.getKey();
+            BigDecimal balance = totalBalances.get(accountUID);
+            Currency currency = Currency.getInstance(accountTree.currencies.get(accountUID));
+            accountBalances.put(entry.getValue().intValue(),
+                    new Money(balance == null ? BigDecimal.ZERO.setScale(ZERO_BALANCE_SCALE) : balance, currency));
+        }
+        return accountBalances;
+    }
+
+    /**
+     * Parent-child relationships, currencies and record IDs of all accounts
+     */
+    private static class AccountTree {
+        final Map<String, Long> ids = new HashMap<String, Long>();
+        final Map<String, String> currencies = new HashMap<String, String>();
+        final Map<String, List<String>> children = new HashMap<String, List<String>>();
+    }
+
+    /**
+     * Loads the account hierarchy from the database in one query
+     * @return Account tree
+     */
+    private AccountTree loadAccountTree(){
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
+                new String[]{AccountEntry._ID, AccountEntry.COLUMN_UID,
+                        AccountEntry.COLUMN_PARENT_ACCOUNT_UID, AccountEntry.COLUMN_CURRENCY},
+                null, null, null, null, null);
+
+        AccountTree accountTree = new AccountTree();
+        if (cursor != null){
+            while (cursor.moveToNext()){
+                String accountUID = cursor.getString(1);
+                String parentUID = cursor.getString(2);
+                accountTree.ids.put(accountUID, cursor.getLong(0));
+                accountTree.currencies.put(accountUID, cursor.getString(3));
+                if (parentUID != null){
+                    List<String> siblings = accountTree.children.get(parentUID);
+                    if (siblings == null){
+                        siblings = new ArrayList<String>();
+                        accountTree.children.put(parentUID, siblings);
+                    }
+                    siblings.add(accountUID);
+                }
+            }
+            cursor.close();
+        }
+        return accountTree;
+    }
+
+    /**
+     * Rolls up the balances of the accounts through the account hierarchy.
+     * The balance of a sub-account is only added to the parent if both have the same currency
+     * @param balances Map of account unique identifiers to the balances of the account splits
+     * @param accountTree Account hierarchy
+     * @return Map of the unique identifiers of all accounts to their total balances
+     */
+    private Map<String, BigDecimal> computeTotalBalances(Map<String, BigDecimal> balances, AccountTree accountTree){
+        Map<String, BigDecimal> totalBalances = new HashMap<String, BigDecimal>();
+        for (String accountUID : accountTree.ids.keySet()) {
+            computeTotalBalance(accountUID, balances, accountTree, totalBalances);
+        }
+        return totalBalances;
+    }
+
+    /**
+     * Computes the total balance of an account, memoizing the results in <code>totalBalances</code>
+     */
+    private BigDecimal computeTotalBalance(String accountUID, Map<String, BigDecimal> balances,
+                                           AccountTree accountTree, Map<String, BigDecimal> totalBalances){
+        BigDecimal total = totalBalances.get(accountUID);
+        if (total != null)
+            return total;
+
+        total = balances.containsKey(accountUID) ? balances.get(accountUID) : BigDecimal.ZERO;
+        List<String> subAccounts = accountTree.children.get(accountUID);
+        if (subAccounts != null){
+            String currencyCode = accountTree.currencies.get(accountUID);
+            for (String subAccountUID : subAccounts) {
+                BigDecimal subTotal = computeTotalBalance(subAccountUID, balances, accountTree, totalBalances);
+                if (currencyCode != null && currencyCode.equals(accountTree.currencies.get(subAccountUID)))
+                    total = total.add(subTotal);
+            }
+        }
+        totalBalances.put(accountUID, total);
+        return total;
+    }
+
+    /**
+     * Checks the cached balances of all accounts against the balances computed from the splits.
+     * Any accounts with differing balances are logged
+     * @return <code>true</code> if all cached balances are correct, <code>false</code> otherwise
+     */
+    public boolean verifyBalances(){
+        Map<String, BigDecimal> balances = computeSplitBalances(null, null);
+        Map<String, BigDecimal> totalBalances = computeTotalBalances(balances, loadAccountTree());
+
+        Map<String, BigDecimal[]> cachedBalances = new HashMap<String, BigDecimal[]>();
+        Cursor cursor = mDb.query(AccountBalanceEntry.TABLE_NAME,
+                new String[]{AccountBalanceEntry.COLUMN_ACCOUNT_UID,
+                        AccountBalanceEntry.COLUMN_BALANCE, AccountBalanceEntry.COLUMN_TOTAL_BALANCE},
+                null, null, null, null, null);
+        if (cursor != null){
+            while (cursor.moveToNext()){
+                cachedBalances.put(cursor.getString(0), new BigDecimal[]{
+                        new BigDecimal(cursor.getString(1)), new BigDecimal(cursor.getString(2))});
+            }
+            cursor.close();
+        }
+
+        boolean consistent = true;
+        for (Map.Entry<String, BigDecimal> entry : totalBalances.entrySet()) {
+            String accountUID = entry.getKey();
+            BigDecimal balance = balances.containsKey(accountUID) ? balances.get(accountUID) : BigDecimal.ZERO;
+            BigDecimal[] cached = cachedBalances.remove(accountUID);
+            BigDecimal cachedBalance = cached == null ? BigDecimal.ZERO : cached[0];
+            BigDecimal cachedTotal = cached == null ? BigDecimal.ZERO : cached[1];
+
+            if (balance.compareTo(cachedBalance) != 0 || entry.getValue().compareTo(cachedTotal) != 0){
+                Log.w(TAG, "Cached balance of account " + accountUID + " is " + cachedBalance + "/" + cachedTotal
+                        + " but should be " + balance + "/" + entry.getValue());
+                consistent = false;
+            }
+        }
+
+        //balances of accounts which do not exist anymore
+        for (Map.Entry<String, BigDecimal[]> entry : cachedBalances.entrySet()) {
+            if (entry.getValue()[0].signum() != 0 || entry.getValue()[1].signum() != 0){
+                Log.w(TAG, "Found cached balance for missing account " + entry.getKey());
+                consistent = false;
+            }
+        }
+        return consistent;
+    }
+
+    /**
+     * Deletes the cached balance of an account.
+     * The total balances of the parent accounts are not updated, see {@link #updateTotalBalances()}
+     * @param accountUID Unique identifier of the account
+     * @return <code>true</code> if a record was deleted, <code>false</code> otherwise
+     */
+    boolean deleteBalance(String accountUID){
+        return mDb.delete(AccountBalanceEntry.TABLE_NAME,
+                AccountBalanceEntry.COLUMN_ACCOUNT_UID + " = ?", new String[]{accountUID}) > 0;
+    }
+
+    @Override
+    public Cursor fetchRecord(long rowId) {
+        return fetchRecord(AccountBalanceEntry.TABLE_NAME, rowId);
+    }
+
+    @Override
+    public Cursor fetchAllRecords() {
+        return fetchAllRecords(AccountBalanceEntry.TABLE_NAME);
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        return deleteRecord(AccountBalanceEntry.TABLE_NAME, rowId);
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        return deleteAllRecords(AccountBalanceEntry.TABLE_NAME);
+    }
+}
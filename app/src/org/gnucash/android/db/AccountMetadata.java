@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import org.gnucash.android.model.AccountType;
+
+/**
+ * Immutable description of an account record, without its transactions.
+ * <p>Instances are held by the {@link AccountMetadataCache}, so that looking up the identifiers, names,
+ * type or currency of an account does not need a database query</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class AccountMetadata {
+    private final long mId;
+    private final String mUID;
+    private final String mName;
+    private final String mFullName;
+    private final AccountType mAccountType;
+    private final String mCurrencyCode;
+    private final String mParentUID;
+    private final boolean mPlaceholder;
+    private final String mColorCode;
+
+    public AccountMetadata(long id, String uid, String name, String fullName, AccountType accountType,
+                           String currencyCode, String parentUID, boolean placeholder, String colorCode){
+        mId = id;
+        mUID = uid;
+        mName = name;
+        mFullName = fullName;
+        mAccountType = accountType;
+        mCurrencyCode = currencyCode;
+        mParentUID = parentUID;
+        mPlaceholder = placeholder;
+        mColorCode = colorCode;
+    }
+
+    /**
+     * Returns the database record ID of the account
+     * @return Record ID
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public String getUID() {
+        return mUID;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the fully qualified name of the account as saved in the database
+     * @return Full name of the account, may be <code>null</code> for accounts saved by older versions
+     */
+    public String getFullName() {
+        return mFullName;
+    }
+
+    public AccountType getAccountType() {
+        return mAccountType;
+    }
+
+    /**
+     * Returns the ISO 4217 currency code of the account
+     * @return Currency code
+     */
+    public String getCurrencyCode() {
+        return mCurrencyCode;
+    }
+
+    /**
+     * Returns the unique ID of the parent account
+     * @return Parent account UID, <code>null</code> for top level accounts
+     */
+    public String getParentUID() {
+        return mParentUID;
+    }
+
+    public boolean isPlaceholder() {
+        return mPlaceholder;
+    }
+
+    /**
+     * Returns the color code of the account in the format #rrggbb
+     * @return Color code or <code>null</code> if none is set
+     */
+    public String getColorCode() {
+        return mColorCode;
+    }
+
+    @Override
+    public String toString() {
+        return mUID + " (" + mName + ")";
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import org.gnucash.android.model.AccountType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Cache of the {@link AccountMetadata} of the accounts in a database, by unique ID and by record ID.
+ * <p>There is one cache per database object, shared by all adapters using that database.
+ * Accounts are read from the database individually when they are first looked up, so that adding
+ * accounts one by one does not reload all accounts. Accounts which do not exist are not cached.</p>
+ * <p>{@link AccountsDbAdapter} invalidates the cache on every write to the accounts table.
+ * If that happens inside a database transaction, the entries read after the write may not be committed,
+ * so the whole cache is cleared when the writing thread reports the end of the transaction with
+ * {@link #transactionEnded()}, or at its first lookup after the transaction has ended.
+ * Until then, other threads read the accounts from the database without caching them: they do not see the
+ * uncommitted writes, so what they would cache could be outdated once the transaction commits</p>
+ * <p>Instances are thread-safe</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class AccountMetadataCache {
+
+    /**
+     * Caches by database. The databases are weakly referenced, so the caches of closed databases can be collected
+     */
+    private static final Map<SQLiteDatabase, AccountMetadataCache> sCaches = new WeakHashMap<SQLiteDatabase, AccountMetadataCache>();
+
+    private static final String[] METADATA_COLUMNS = new String[]{
+            AccountEntry._ID,
+            AccountEntry.COLUMN_UID,
+            AccountEntry.COLUMN_NAME,
+            AccountEntry.COLUMN_FULL_NAME,
+            AccountEntry.COLUMN_TYPE,
+            AccountEntry.COLUMN_CURRENCY,
+            AccountEntry.COLUMN_PARENT_ACCOUNT_UID,
+            AccountEntry.COLUMN_PLACEHOLDER,
+            AccountEntry.COLUMN_COLOR_CODE
+    };
+
+    private final SQLiteDatabase mDb;
+    private final Map<String, AccountMetadata> mAccountsByUID = new HashMap<String, AccountMetadata>();
+    private final Map<Long, AccountMetadata> mAccountsById = new HashMap<Long, AccountMetadata>();
+
+    /**
+     * Unique ID of the GnuCash root account, valid if {@link #mRootAccountLoaded} is set
+     */
+    private String mRootAccountUID;
+    private boolean mRootAccountLoaded = false;
+
+    /**
+     * Thread which invalidated the cache inside a database transaction which has not ended yet, or <code>null</code>
+     */
+    private Thread mInvalidatingThread = null;
+
+    private AccountMetadataCache(SQLiteDatabase db){
+        mDb = db;
+    }
+
+    /**
+     * Returns the account metadata cache of the database
+     * @param db SQLite database
+     * @return Cache shared by all users of <code>db</code>
+     */
+    public static AccountMetadataCache getInstance(SQLiteDatabase db){
+        synchronized (sCaches) {
+            AccountMetadataCache cache = sCaches.get(db);
+            if (cache == null){
+                cache = new AccountMetadataCache(db);
+                sCaches.put(db, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the metadata of the account with the unique ID
+     * @param accountUID Unique ID of the account
+     * @return Account metadata, or <code>null</code> if there is no such account
+     */
+    public synchronized AccountMetadata get(String accountUID){
+        if (accountUID == null)
+            return null;
+        if (!isCacheUsable())
+            return load(AccountEntry.COLUMN_UID + " = ?", new String[]{accountUID}, false);
+        AccountMetadata metadata = mAccountsByUID.get(accountUID);
+        if (metadata == null){
+            metadata = load(AccountEntry.COLUMN_UID + " = ?", new String[]{accountUID}, true);
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the metadata of the account with the record ID
+     * @param accountId Database record ID of the account
+     * @return Account metadata, or <code>null</code> if there is no such account
+     */
+    public synchronized AccountMetadata get(long accountId){
+        if (!isCacheUsable())
+            return load(AccountEntry._ID + " = " + accountId, null, false);
+        AccountMetadata metadata = mAccountsById.get(accountId);
+        if (metadata == null){
+            metadata = load(AccountEntry._ID + " = " + accountId, null, true);
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the unique ID of the GnuCash root account
+     * @return Unique ID of the root account, or <code>null</code> if there is none
+     * @see AccountsDbAdapter#getGnuCashRootAccountUID()
+     */
+    public synchronized String getRootAccountUID(){
+        boolean cacheUsable = isCacheUsable();
+        if (cacheUsable && mRootAccountLoaded)
+            return mRootAccountUID;
+
+        String rootAccountUID;
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                AccountEntry.COLUMN_TYPE + " = ?", new String[]{AccountType.ROOT.name()},
+                null, null, null, "1");
+        try {
+            rootAccountUID = cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+        if (cacheUsable){
+            mRootAccountUID = rootAccountUID;
+            mRootAccountLoaded = true;
+        }
+        return rootAccountUID;
+    }
+
+    /**
+     * Removes the account with the unique ID from the cache, after it has been modified
+     * @param accountUID Unique ID of the account
+     */
+    public synchronized void invalidate(String accountUID){
+        AccountMetadata metadata = mAccountsByUID.remove(accountUID);
+        if (metadata != null)
+            mAccountsById.remove(metadata.getId());
+        invalidated();
+    }
+
+    /**
+     * Removes the account with the record ID from the cache, after it has been modified
+     * @param accountId Database record ID of the account
+     */
+    public synchronized void invalidate(long accountId){
+        AccountMetadata metadata = mAccountsById.remove(accountId);
+        if (metadata != null)
+            mAccountsByUID.remove(metadata.getUID());
+        invalidated();
+    }
+
+    /**
+     * Clears the cache, after accounts have been modified in bulk
+     */
+    public synchronized void invalidateAll(){
+        clear();
+        invalidated();
+    }
+
+    /**
+     * Clears the cache if the calling thread invalidated it inside a database transaction which has ended since.
+     * Writers call this after ending a database transaction, so that entries read by other threads
+     * before the transaction was committed are not kept
+     */
+    public synchronized void transactionEnded(){
+        if (mInvalidatingThread == Thread.currentThread() && !mDb.inTransaction()){
+            clear();
+            mInvalidatingThread = null;
+        }
+    }
+
+    /**
+     * Forgets the root account, since any modified account may have become or stopped being the root account,
+     * and marks the cache for clearing after the current database transaction
+     */
+    private void invalidated(){
+        mRootAccountLoaded = false;
+        mRootAccountUID = null;
+        if (mDb.inTransaction())
+            mInvalidatingThread = Thread.currentThread();
+    }
+
+    /**
+     * Checks whether the calling thread may read from and add to the cache.
+     * This is not the case while another thread has invalidated the cache in a database transaction
+     * which has not ended yet
+     */
+    private boolean isCacheUsable(){
+        transactionEnded();
+        return mInvalidatingThread == null || mInvalidatingThread == Thread.currentThread();
+    }
+
+    private void clear(){
+        mAccountsByUID.clear();
+        mAccountsById.clear();
+        mRootAccountLoaded = false;
+        mRootAccountUID = null;
+    }
+
+    /**
+     * Reads one account from the database and optionally caches it
+     * @return Metadata of the account, or <code>null</code> if no account matches
+     */
+    private AccountMetadata load(String selection, String[] selectionArgs, boolean cache){
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, METADATA_COLUMNS, selection, selectionArgs,
+                null, null, null);
+        AccountMetadata metadata = null;
+        try {
+            if (cursor.moveToFirst()){
+                metadata = new AccountMetadata(
+                        cursor.getLong(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        AccountType.valueOf(cursor.getString(4)),
+                        cursor.getString(5),
+                        cursor.getString(6),
+                        cursor.getInt(7) == 1,
+                        cursor.getString(8));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (metadata != null && cache){
+            mAccountsByUID.put(metadata.getUID(), metadata);
+            mAccountsById.put(metadata.getId(), metadata);
+        }
+        return metadata;
+    }
+}
@@ -19,9 +19,12 @@ package org.gnucash.android.db;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
+import android.util.SparseArray;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.*;
@@ -43,10 +46,77 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      */
     public static final String ACCOUNT_NAME_SEPARATOR = ":";
 
+    /**
+     * Number of steps reported by {@link #closeBooks(boolean, ProgressListener)}
+     */
+    public static final int CLOSE_BOOKS_STEP_COUNT = 3;
+
+    /**
+     * Listener for the progress of long running operations
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each step of the operation
+         * @param step Number of steps completed
+         * @param stepCount Total number of steps
+         */
+        public void onProgress(int step, int stepCount);
+    }
+
+    /**
+     * Number of records removed by {@link #recursiveDestructiveDelete(long)}
+     */
+    public static class DeletionResult {
+        private final int mAccountCount;
+        private final int mSplitCount;
+        private final int mTransactionCount;
+
+        DeletionResult(int accountCount, int splitCount, int transactionCount){
+            mAccountCount = accountCount;
+            mSplitCount = splitCount;
+            mTransactionCount = transactionCount;
+        }
+
+        /**
+         * Returns the number of deleted accounts, including the sub-accounts
+         * @return Number of deleted accounts, 0 if the account did not exist
+         */
+        public int getAccountCount(){
+            return mAccountCount;
+        }
+
+        /**
+         * Returns the number of deleted splits
+         * @return Number of splits which belonged to the deleted accounts
+         */
+        public int getSplitCount(){
+            return mSplitCount;
+        }
+
+        /**
+         * Returns the number of transactions which were deleted because they had no splits left
+         * @return Number of deleted transactions
+         */
+        public int getTransactionCount(){
+            return mTransactionCount;
+        }
+    }
+
 	/**
 	 * Transactions database adapter for manipulating transactions associated with accounts
 	 */
 	private TransactionsDbAdapter mTransactionsAdapter;
+
+    /**
+     * Adapter for the cached account balances
+     */
+    private AccountBalancesDbAdapter mBalancesDbAdapter;
+
+    /**
+     * Compiled statement for inserting accounts without lookups, see {@link #insertAccount(Account)}.
+     * It is compiled when first used
+     */
+    private SQLiteStatement mInsertAccountStatement;
 	
 	/**
 	 * Constructor. Creates a new adapter instance using the application context
@@ -54,7 +124,9 @@ public class AccountsDbAdapter extends DatabaseAdapter {
 	 */
 	public AccountsDbAdapter(Context context) {
 		super(context);
-		mTransactionsAdapter = new TransactionsDbAdapter(context);
+        //share the database connection, so that account changes and balances are written in one database transaction
+		mTransactionsAdapter = new TransactionsDbAdapter(mDb);
+        mBalancesDbAdapter = new AccountBalancesDbAdapter(mDb);
 	}
 
     /**
@@ -64,6 +136,7 @@ public class AccountsDbAdapter extends DatabaseAdapter {
     public AccountsDbAdapter(SQLiteDatabase db) {
         super(db);
         mTransactionsAdapter = new TransactionsDbAdapter(db);
+        mBalancesDbAdapter = new AccountBalancesDbAdapter(db);
     }
 
     /**
@@ -86,52 +159,269 @@ public class AccountsDbAdapter extends DatabaseAdapter {
         contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID,           account.getParentUID());
         contentValues.put(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID, account.getDefaultTransferAccountUID());
 
+        String accountUID = account.getUID();
         long rowId = -1;
-		if ((rowId = getAccountID(account.getUID())) > 0){
-			//if account already exists, then just update
-			Log.d(TAG, "Updating existing account");
-			mDb.update(AccountEntry.TABLE_NAME, contentValues,
-                    AccountEntry._ID + " = " + rowId, null);
-		} else {
-			Log.d(TAG, "Adding new account to db");
-			rowId = mDb.insert(AccountEntry.TABLE_NAME, null, contentValues);
-		}
-		
-		//now add transactions if there are any
-		if (rowId > 0){
-            //update the fully qualified account name
-            updateAccount(rowId, AccountEntry.COLUMN_FULL_NAME, getFullyQualifiedAccountName(rowId));
-			for (Transaction t : account.getTransactions()) {
-		        mTransactionsAdapter.addTransaction(t);
-			}
-		}
+        mDb.beginTransaction();
+        try {
+            if ((rowId = getAccountID(accountUID)) > 0){
+                //if account already exists, then just update
+                Log.d(TAG, "Updating existing account");
+                Account oldAccount = getSimpleAccount(rowId);
+                mDb.update(AccountEntry.TABLE_NAME, contentValues,
+                        AccountEntry._ID + " = " + rowId, null);
+                mAccountMetadataCache.invalidate(rowId);
+                String oldParentUID = oldAccount == null ? null : oldAccount.getParentUID();
+                String newParentUID = account.getParentUID();
+                if (oldParentUID == null ? newParentUID != null : !oldParentUID.equals(newParentUID)){
+                    detachSubtree(accountUID);
+                    attachSubtree(accountUID, newParentUID);
+                }
+                updateCachedBalances(oldAccount, account);
+            } else {
+                Log.d(TAG, "Adding new account to db");
+                rowId = mDb.insert(AccountEntry.TABLE_NAME, null, contentValues);
+                mAccountMetadataCache.invalidate(accountUID);
+                if (rowId > 0)
+                    addToAccountHierarchy(accountUID, account.getParentUID());
+            }
+
+            //now add transactions if there are any
+            if (rowId > 0){
+                //update the fully qualified names of the account and its sub-accounts, which may have been renamed or moved
+                updateFullNames(accountUID);
+                //transactions which were never loaded from the database are unchanged
+                if (account.isTransactionsLoaded()) {
+                    for (Transaction t : account.getTransactions()) {
+                        mTransactionsAdapter.addTransaction(t);
+                    }
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
 		return rowId;
 	}
 
     /**
-     * Marks all transactions for a given account as exported
+     * Inserts an account into the database without checking for an existing account with the same unique ID.
+     * <p>This is meant for bulk imports into an empty database. The fully qualified name is written as set in
+     * the account and the transactions of the account are not saved. The caller should wrap the inserts
+     * in a database transaction</p>
+     * <p>The account hierarchy is not updated, {@link #rebuildAccountHierarchy()} must be called
+     * after all accounts have been inserted</p>
+     * @param account {@link Account} to be inserted
+     * @return Database row ID of the inserted account
+     */
+    public long insertAccount(Account account){
+        if (mInsertAccountStatement == null) {
+            mInsertAccountStatement = mDb.compileStatement("INSERT INTO " + AccountEntry.TABLE_NAME + " ( "
+                    + AccountEntry.COLUMN_NAME          + " , "
+                    + AccountEntry.COLUMN_TYPE          + " , "
+                    + AccountEntry.COLUMN_UID           + " , "
+                    + AccountEntry.COLUMN_CURRENCY      + " , "
+                    + AccountEntry.COLUMN_PLACEHOLDER   + " , "
+                    + AccountEntry.COLUMN_COLOR_CODE    + " , "
+                    + AccountEntry.COLUMN_FAVORITE      + " , "
+                    + AccountEntry.COLUMN_FULL_NAME     + " , "
+                    + AccountEntry.COLUMN_PARENT_ACCOUNT_UID            + " , "
+                    + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID  + " ) VALUES ( ? , ? , ? , ? , ? , ? , ? , ? , ? , ? )");
+        }
+        mInsertAccountStatement.clearBindings();
+        mInsertAccountStatement.bindString(1, account.getName());
+        mInsertAccountStatement.bindString(2, account.getAccountType().name());
+        mInsertAccountStatement.bindString(3, account.getUID());
+        mInsertAccountStatement.bindString(4, account.getCurrency().getCurrencyCode());
+        mInsertAccountStatement.bindLong(5, account.isPlaceholderAccount() ? 1 : 0);
+        bindNullableString(mInsertAccountStatement, 6, account.getColorHexCode());
+        mInsertAccountStatement.bindLong(7, account.isFavorite() ? 1 : 0);
+        bindNullableString(mInsertAccountStatement, 8, account.getFullName());
+        bindNullableString(mInsertAccountStatement, 9, account.getParentUID());
+        bindNullableString(mInsertAccountStatement, 10, account.getDefaultTransferAccountUID());
+        long rowId = mInsertAccountStatement.executeInsert();
+        mAccountMetadataCache.invalidate(account.getUID());
+        return rowId;
+    }
+
+    @Override
+    public void close() {
+        if (mInsertAccountStatement != null) {
+            mInsertAccountStatement.close();
+            mInsertAccountStatement = null;
+        }
+        super.close();
+        mTransactionsAdapter.close();
+    }
+
+    /**
+     * Adds a new account to the account hierarchy below its parent account.
+     * Sub-accounts which were saved before the account are moved below it
+     * @param accountUID Unique ID of the new account
+     * @param parentUID Unique ID of the parent account, may be <code>null</code>
+     */
+    private void addToAccountHierarchy(String accountUID, String parentUID){
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(AccountHierarchyEntry.COLUMN_ANCESTOR_UID,    accountUID);
+        contentValues.put(AccountHierarchyEntry.COLUMN_DESCENDANT_UID,  accountUID);
+        contentValues.put(AccountHierarchyEntry.COLUMN_DEPTH,           0);
+        mDb.insertWithOnConflict(AccountHierarchyEntry.TABLE_NAME, null, contentValues, SQLiteDatabase.CONFLICT_IGNORE);
+
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?", new String[]{accountUID},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()){
+                attachSubtree(cursor.getString(0), accountUID);
+            }
+        } finally {
+            cursor.close();
+        }
+        attachSubtree(accountUID, parentUID);
+    }
+
+    /**
+     * Links the account and its sub-accounts in the account hierarchy to a parent account and all its ancestors.
+     * The sub-tree must have been detached from any previous parent with {@link #detachSubtree(String)}
+     * @param accountUID Unique ID of the account at the top of the sub-tree
+     * @param parentUID Unique ID of the new parent account. Nothing is linked if it is <code>null</code>
+     *                  or not in the account hierarchy
+     */
+    private void attachSubtree(String accountUID, String parentUID){
+        if (parentUID == null)
+            return;
+        mDb.execSQL("INSERT OR IGNORE INTO " + AccountHierarchyEntry.TABLE_NAME + " ( "
+                + AccountHierarchyEntry.COLUMN_ANCESTOR_UID     + " , "
+                + AccountHierarchyEntry.COLUMN_DESCENDANT_UID   + " , "
+                + AccountHierarchyEntry.COLUMN_DEPTH            + " ) "
+                + "SELECT a." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID
+                + " , d." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                + " , a." + AccountHierarchyEntry.COLUMN_DEPTH + " + d." + AccountHierarchyEntry.COLUMN_DEPTH + " + 1"
+                + " FROM " + AccountHierarchyEntry.TABLE_NAME + " a , " + AccountHierarchyEntry.TABLE_NAME + " d"
+                + " WHERE a." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " = ?"
+                + " AND d." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ?",
+                new Object[]{parentUID, accountUID});
+    }
+
+    /**
+     * Removes the links between the account and its sub-accounts and the ancestors of the account
+     * from the account hierarchy. The links within the sub-tree are kept
+     * @param accountUID Unique ID of the account at the top of the sub-tree
+     */
+    private void detachSubtree(String accountUID){
+        mDb.delete(AccountHierarchyEntry.TABLE_NAME,
+                AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " IN ( SELECT " + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                        + " FROM " + AccountHierarchyEntry.TABLE_NAME
+                        + " WHERE " + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ? )"
+                + " AND " + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " IN ( SELECT " + AccountHierarchyEntry.COLUMN_ANCESTOR_UID
+                        + " FROM " + AccountHierarchyEntry.TABLE_NAME
+                        + " WHERE " + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " = ?"
+                        + " AND " + AccountHierarchyEntry.COLUMN_DEPTH + " > 0 )",
+                new String[]{accountUID, accountUID});
+    }
+
+    /**
+     * Rebuilds the account hierarchy table from the parent account of every account.
+     * <p>This is needed after accounts were inserted with {@link #insertAccount(Account)} and when upgrading the database.
+     * The hierarchy is built one level at a time, so it takes as many statements as the accounts tree is deep</p>
+     */
+    public void rebuildAccountHierarchy(){
+        mDb.beginTransaction();
+        try {
+            mDb.delete(AccountHierarchyEntry.TABLE_NAME, null, null);
+            mDb.execSQL("INSERT INTO " + AccountHierarchyEntry.TABLE_NAME + " ( "
+                    + AccountHierarchyEntry.COLUMN_ANCESTOR_UID     + " , "
+                    + AccountHierarchyEntry.COLUMN_DESCENDANT_UID   + " , "
+                    + AccountHierarchyEntry.COLUMN_DEPTH            + " ) "
+                    + "SELECT " + AccountEntry.COLUMN_UID + " , " + AccountEntry.COLUMN_UID + " , 0"
+                    + " FROM " + AccountEntry.TABLE_NAME);
+
+            //a cycle in the parent accounts would never end, so stop at the greatest possible depth
+            long accountCount = DatabaseUtils.queryNumEntries(mDb, AccountEntry.TABLE_NAME);
+            for (int depth = 1; depth <= accountCount; depth++) {
+                mDb.execSQL("INSERT OR IGNORE INTO " + AccountHierarchyEntry.TABLE_NAME + " ( "
+                        + AccountHierarchyEntry.COLUMN_ANCESTOR_UID     + " , "
+                        + AccountHierarchyEntry.COLUMN_DESCENDANT_UID   + " , "
+                        + AccountHierarchyEntry.COLUMN_DEPTH            + " ) "
+                        + "SELECT parent." + AccountEntry.COLUMN_UID
+                        + " , h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " , " + depth
+                        + " FROM " + AccountHierarchyEntry.TABLE_NAME + " h , "
+                        + AccountEntry.TABLE_NAME + " child , " + AccountEntry.TABLE_NAME + " parent"
+                        + " WHERE h." + AccountHierarchyEntry.COLUMN_DEPTH + " = " + (depth - 1)
+                        + " AND child." + AccountEntry.COLUMN_UID + " = h." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID
+                        + " AND parent." + AccountEntry.COLUMN_UID + " = child." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID);
+                long added = DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM " + AccountHierarchyEntry.TABLE_NAME
+                        + " WHERE " + AccountHierarchyEntry.COLUMN_DEPTH + " = " + depth, null);
+                if (added == 0)
+                    break;
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * Updates the cached account balances after an existing account has been modified.
+     * The balance of the account changes sign if the account type changes, and the total balances
+     * of the parent accounts change if the parent or currency of the account changes
+     * @param oldAccount Account as it was stored before the modification
+     * @param newAccount Modified account
+     */
+    private void updateCachedBalances(Account oldAccount, Account newAccount){
+        if (oldAccount == null)
+            return;
+
+        if (oldAccount.getAccountType() != newAccount.getAccountType()){
+            mBalancesDbAdapter.recomputeBalance(newAccount.getUID());
+        }
+
+        String oldParentUID = oldAccount.getParentUID();
+        String newParentUID = newAccount.getParentUID();
+        boolean parentChanged = oldParentUID == null ? newParentUID != null : !oldParentUID.equals(newParentUID);
+        if (parentChanged || !oldAccount.getCurrency().equals(newAccount.getCurrency())){
+            mBalancesDbAdapter.updateTotalBalances();
+        }
+    }
+
+    /**
+     * Returns the account with database record ID <code>rowId</code> without loading its transactions
+     * @param rowId Database record ID of the account
+     * @return {@link Account} object, or <code>null</code> if the account does not exist
+     */
+    private Account getSimpleAccount(long rowId){
+        Account account = null;
+        Cursor c = fetchRecord(AccountEntry.TABLE_NAME, rowId);
+        if (c != null) {
+            if (c.moveToFirst()) {
+                account = buildSimpleAccountInstance(c);
+            }
+            c.close();
+        }
+        return account;
+    }
+
+    /**
+     * Marks all transactions for a given account as exported.
+     * <p>The transactions are updated with a single statement. As with {@link TransactionsDbAdapter#fetchAllTransactionsForAccount(String)},
+     * recurring transaction templates are not marked</p>
      * @param accountUID Unique ID of the record to be marked as exported
      * @return Number of records marked as exported
      */
     public int markAsExported(String accountUID){
         ContentValues contentValues = new ContentValues();
         contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
-        Cursor cursor = mTransactionsAdapter.fetchAllTransactionsForAccount(accountUID);
-        List<Long> transactionIdList = new ArrayList<Long>();
-        if (cursor != null){
-            while(cursor.moveToNext()){
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(TransactionEntry._ID));
-                transactionIdList.add(id);
-            }
-            cursor.close();
-        }
-        int recordsTouched = 0;
-        for (long id : transactionIdList) {
-            recordsTouched += mDb.update(TransactionEntry.TABLE_NAME,
-                    contentValues,
-                    TransactionEntry._ID + "=" + id, null);
+        if (mDb.getVersion() < DatabaseSchema.SPLITS_DB_VERSION){ //legacy from previous database format
+            return mDb.update(TransactionEntry.TABLE_NAME, contentValues,
+                    "(" + SplitEntry.COLUMN_ACCOUNT_UID + " = ? OR " + DatabaseHelper.KEY_DOUBLE_ENTRY_ACCOUNT_UID + " = ?)"
+                            + " AND " + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0",
+                    new String[]{accountUID, accountUID});
         }
-        return recordsTouched;
+        return mDb.update(TransactionEntry.TABLE_NAME, contentValues,
+                TransactionEntry.COLUMN_UID + " IN (SELECT " + SplitEntry.COLUMN_TRANSACTION_UID
+                        + " FROM " + SplitEntry.TABLE_NAME
+                        + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)"
+                        + " AND " + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0",
+                new String[]{accountUID});
     }
 
     /**
@@ -146,7 +436,9 @@ public class AccountsDbAdapter extends DatabaseAdapter {
         ContentValues contentValues = new ContentValues();
         contentValues.put(columnKey, newValue);
 
-        return mDb.update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        int count = mDb.update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        mAccountMetadataCache.invalidateAll();
+        return count;
     }
 
     /**
@@ -157,24 +449,48 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      * @return Number of records affected
      */
     public int updateAccount(long accountId, String columnKey, String newValue){
-        return updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        int count = updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        mAccountMetadataCache.invalidate(accountId);
+        return count;
     }
 
 	/**
 	 * Deletes an account with database id <code>rowId</code>
-	 * All the transactions in the account will also be deleted
+	 * All the splits in the account will also be deleted, and the transactions which are left without splits
 	 * @param rowId Database id of the account record to be deleted
 	 * @return <code>true</code> if deletion was successful, <code>false</code> otherwise.
 	 */
 	public boolean destructiveDeleteAccount(long rowId){
 		Log.d(TAG, "Delete account with rowId and all its associated splits: " + rowId);
-
-        //delete splits in this account
-        mDb.delete(SplitEntry.TABLE_NAME,
-               SplitEntry.COLUMN_ACCOUNT_UID + "=?",
-                new String[]{getAccountUID(rowId)});
-
-		return deleteRecord(AccountEntry.TABLE_NAME, rowId);
+        String accountUID = getAccountUID(rowId);
+
+        boolean result;
+        mDb.beginTransaction();
+        try {
+            if (accountUID != null)
+                deleteTransactionsOnlyIn(" = ?", accountUID);
+            //delete splits in this account
+            mDb.delete(SplitEntry.TABLE_NAME,
+                   SplitEntry.COLUMN_ACCOUNT_UID + "=?",
+                    new String[]{accountUID});
+
+            result = deleteRecord(AccountEntry.TABLE_NAME, rowId);
+            mAccountMetadataCache.invalidate(rowId);
+            if (accountUID != null) {
+                //the sub-accounts of this account become top level accounts in the hierarchy
+                detachSubtree(accountUID);
+                mDb.delete(AccountHierarchyEntry.TABLE_NAME,
+                        AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ? OR " + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " = ?",
+                        new String[]{accountUID, accountUID});
+                //the sub-accounts of this account do not count towards the parents anymore
+                mBalancesDbAdapter.deleteBalance(accountUID);
+                mBalancesDbAdapter.updateTotalBalances();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+		return result;
 	}
 
     /**
@@ -190,73 +506,163 @@ public class AccountsDbAdapter extends DatabaseAdapter {
         else
             contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, newParentUID);
 
-        return mDb.update(AccountEntry.TABLE_NAME,
-                contentValues,
-                AccountEntry.COLUMN_PARENT_ACCOUNT_UID + "= '" + oldParentUID + "' ",
-                null);
+        int count;
+        mDb.beginTransaction();
+        try {
+            List<String> childUIDs = new ArrayList<String>();
+            Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                    AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?", new String[]{oldParentUID},
+                    null, null, null);
+            try {
+                while (cursor.moveToNext()){
+                    childUIDs.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            count = mDb.update(AccountEntry.TABLE_NAME,
+                    contentValues,
+                    AccountEntry.COLUMN_PARENT_ACCOUNT_UID + "= '" + oldParentUID + "' ",
+                    null);
+            mAccountMetadataCache.invalidateAll();
+            for (String childUID : childUIDs) {
+                detachSubtree(childUID);
+                attachSubtree(childUID, newParentUID);
+                updateFullNames(childUID);
+            }
+            if (count > 0)
+                mBalancesDbAdapter.updateTotalBalances();
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return count;
     }
 
 	/**
 	 * Deletes an account while preserving the linked transactions
 	 * Reassigns all transactions belonging to the account with id <code>rowId</code> to 
 	 * the account with id <code>accountReassignId</code> before deleting the account.
+	 * <p>The splits are moved with a single statement and the account is deleted in the same database transaction</p>
 	 * @param accountId Database record ID of the account to be deleted
 	 * @param accountReassignId Record ID of the account to which to reassign the transactions from the previous
-	 * @return <code>true</code> if deletion was successful, <code>false</code> otherwise.
+	 * @return Number of splits which were reassigned, or -1 if the account was not deleted
 	 */
-	public boolean transactionPreservingDelete(long accountId, long accountReassignId){
+	public int transactionPreservingDelete(long accountId, long accountReassignId){
         Log.d(TAG, "Migrating transaction splits to new account");
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, accountReassignId);
-        mDb.update(SplitEntry.TABLE_NAME,
-                contentValues,
-                SplitEntry.COLUMN_ACCOUNT_UID + "=?",
-                new String[]{getAccountUID(accountId)});
-        return destructiveDeleteAccount(accountId);
+        String accountUID = getAccountUID(accountId);
+        String reassignAccountUID = getAccountUID(accountReassignId);
+        if (accountUID == null || reassignAccountUID == null)
+            return -1;
+        String splitsCondition = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?";
+
+        int count = -1;
+        mDb.beginTransaction();
+        try {
+            //the balance of the deleted account is discarded with it, only the receiving account needs updating
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, reassignAccountUID);
+            int reassigned = mDb.update(SplitEntry.TABLE_NAME,
+                    contentValues,
+                    SplitEntry.COLUMN_ACCOUNT_UID + "=?",
+                    new String[]{accountUID});
+            if (reassigned > 0)
+                mBalancesDbAdapter.recomputeBalance(reassignAccountUID);
+            if (destructiveDeleteAccount(accountId))
+                count = reassigned;
+            mDb.setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return count;
     }
 
     /**
      * Deletes an account and all its sub-accounts and transactions with it
+     * <p>The sub-tree is selected from the account hierarchy, so the splits, balances and accounts of the whole
+     * sub-tree are each deleted with one statement, in a single database transaction.
+     * Transactions which only have splits in the sub-tree are deleted as well</p>
      * @param accountId Database record ID of account
-     * @return <code>true</code> if the account and subaccounts were all successfully deleted, <code>false</code> if
-     * even one was not deleted
+     * @return Number of deleted accounts, splits and transactions. No records are deleted if the account does not exist
      */
-    public boolean recursiveDestructiveDelete(long accountId){
+    public DeletionResult recursiveDestructiveDelete(long accountId){
         Log.d(TAG, "Delete account with rowId with its transactions and sub-accounts: " + accountId);
-        boolean result = false;
-
-        List<Long> subAccountIds = getSubAccountIds(accountId);
-        for (long subAccountId : subAccountIds) {
-            result |= recursiveDestructiveDelete(subAccountId);
+        String accountUID = getAccountUID(accountId);
+        if (accountUID == null)
+            return new DeletionResult(0, 0, 0);
+
+        String subtreeCondition = " IN ( SELECT " + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                + " FROM " + AccountHierarchyEntry.TABLE_NAME
+                + " WHERE " + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ? )";
+        String[] subtreeArgs = new String[]{accountUID};
+        DeletionResult result;
+        mDb.beginTransaction();
+        try {
+            int transactionCount = deleteTransactionsOnlyIn(subtreeCondition, accountUID);
+            int splitCount = mDb.delete(SplitEntry.TABLE_NAME, SplitEntry.COLUMN_ACCOUNT_UID + subtreeCondition, subtreeArgs);
+            mDb.delete(AccountBalanceEntry.TABLE_NAME, AccountBalanceEntry.COLUMN_ACCOUNT_UID + subtreeCondition, subtreeArgs);
+            int count = mDb.delete(AccountEntry.TABLE_NAME, AccountEntry.COLUMN_UID + subtreeCondition, subtreeArgs);
+            detachSubtree(accountUID);
+            mDb.delete(AccountHierarchyEntry.TABLE_NAME,
+                    AccountHierarchyEntry.COLUMN_DESCENDANT_UID + subtreeCondition, subtreeArgs);
+            mAccountMetadataCache.invalidateAll();
+            mBalancesDbAdapter.updateTotalBalances();
+            mDb.setTransactionSuccessful();
+            Log.d(TAG, "Deleted " + count + " accounts with " + splitCount + " splits and "
+                    + transactionCount + " transactions");
+            result = new DeletionResult(count, splitCount, transactionCount);
+        } finally {
+            endTransaction();
         }
-        result |= destructiveDeleteAccount(accountId);
-
         return result;
     }
 
+    /**
+     * Deletes the transactions whose splits all belong to the accounts selected by <code>accountCondition</code>.
+     * <p>These transactions are left without splits when the accounts are deleted, so this must be called
+     * before their splits are deleted</p>
+     * @param accountCondition Condition on the account UID of a split with one parameter, e.g. <code>" = ?"</code>
+     * @param accountUID Unique ID of the account which is bound to the parameter of the condition
+     * @return Number of deleted transactions
+     */
+    private int deleteTransactionsOnlyIn(String accountCondition, String accountUID){
+        String splitsOutsideAccounts = "SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " = " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                + " AND NOT ( " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + accountCondition + " )";
+        return mDb.delete(TransactionEntry.TABLE_NAME, TransactionEntry.COLUMN_UID
+                + " IN ( SELECT " + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + accountCondition + " )"
+                + " AND NOT EXISTS ( " + splitsOutsideAccounts + " )", new String[]{accountUID, accountUID});
+    }
+
 	/**
-	 * Builds an account instance with the provided cursor and loads its corresponding transactions.
+	 * Builds an account instance with the provided cursor, whose transactions are loaded when they are first accessed.
+	 * <p>Building the account does not read any transactions, so this is as cheap as
+	 * {@link #buildSimpleAccountInstance(android.database.Cursor)} for callers which only use the account metadata</p>
 	 *
 	 * @param c Cursor pointing to account record in database
 	 * @return {@link Account} object constructed from database record
 	 */
 	public Account buildAccountInstance(Cursor c){
         Account account = buildSimpleAccountInstance(c);
-        account.setTransactions(mTransactionsAdapter.getAllTransactionsForAccount(account.getUID()));
+        account.setTransactionsLoader(mTransactionsAdapter.getTransactionsLoader());
 
         return account;
 	}
 
     /**
-     * Builds an account instance with the provided cursor and loads its corresponding transactions.
+     * Builds an account instance with the provided cursor, without any transactions.
      * <p>The method will not move the cursor position, so the cursor should already be pointing
      * to the account record in the database<br/>
-     * <b>Note</b> Unlike {@link  #buildAccountInstance(android.database.Cursor)} this method will not load transactions</p>
+     * <b>Note</b> Unlike {@link  #buildAccountInstance(android.database.Cursor)} the transactions of the account
+     * can not be loaded from the returned instance</p>
      *
      * @param c Cursor pointing to account record in database
      * @return {@link Account} object constructed from database record
      */
-    private Account buildSimpleAccountInstance(Cursor c) {
+    public Account buildSimpleAccountInstance(Cursor c) {
         Account account = new Account(c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_NAME)));
         String uid = c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
         account.setUID(uid);
@@ -279,20 +685,8 @@ public class AccountsDbAdapter extends DatabaseAdapter {
 	 * @return DB record UID of the parent account, null if the account has no parent
 	 */
 	public String getParentAccountUID(String uid){
-		Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
-				new String[] {AccountEntry._ID, AccountEntry.COLUMN_PARENT_ACCOUNT_UID},
-                AccountEntry.COLUMN_UID + " = ?",
-                new String[]{uid},
-                null, null, null, null);
-		String result = null;
-		if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                Log.d(TAG, "Account already exists. Returning existing id");
-                result = cursor.getString(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_PARENT_ACCOUNT_UID));
-            }
-            cursor.close();
-        }
-		return result;
+        AccountMetadata metadata = mAccountMetadataCache.get(uid);
+        return metadata == null ? null : metadata.getParentUID();
 	}
 
     /**
@@ -340,18 +734,8 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      * @return String color code of account or null if none
      */
     public String getAccountColorCode(long accountId){
-        String colorCode = null;
-        Cursor c = mDb.query(AccountEntry.TABLE_NAME,
-                new String[]{AccountEntry._ID, AccountEntry.COLUMN_COLOR_CODE},
-                AccountEntry._ID + "=" + accountId,
-                null, null, null, null);
-        if (c != null) {
-            if (c.moveToFirst()) {
-                colorCode = c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_COLOR_CODE));
-            }
-            c.close();
-        }
-        return colorCode;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountId);
+        return metadata == null ? null : metadata.getColorCode();
     }
 
     /**
@@ -369,15 +753,8 @@ public class AccountsDbAdapter extends DatabaseAdapter {
 	 * @return Name of the account 
 	 */
 	public String getName(long accountID) {
-		String name = null;
-		Cursor c = fetchRecord(AccountEntry.TABLE_NAME, accountID);
-		if (c != null) {
-            if (c.moveToFirst()) {
-                name = c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_NAME));
-            }
-            c.close();
-        }
-		return name;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountID);
+        return metadata == null ? null : metadata.getName();
 	}
 	
 	/**
@@ -418,23 +795,59 @@ public class AccountsDbAdapter extends DatabaseAdapter {
     }
 
 	/**
-	 * Returns a list of accounts which have transactions that have not been exported yet
+	 * Returns a list of accounts which have transactions that have not been exported yet.
+	 * <p>Only the transactions of these accounts are loaded</p>
 	 * @return List of {@link Account}s with unexported transactions
+	 * @see #fetchExportableAccounts()
 	 */
 	public List<Account> getExportableAccounts(){
-        //TODO: Optimize to use SQL DISTINCT and load only necessary accounts from db
-		List<Account> accountsList = getAllAccounts();
-		Iterator<Account> it = accountsList.iterator();
-		
-		while (it.hasNext()){
-			Account account = it.next();
-			
-			if (!account.hasUnexportedTransactions())
-				it.remove();
-		}
+        List<Account> accountsList = new LinkedList<Account>();
+        Cursor c = fetchExportableAccounts();
+        try {
+            while (c.moveToNext()){
+                accountsList.add(buildAccountInstance(c));
+            }
+        } finally {
+            c.close();
+        }
 		return accountsList;
 	}
 
+    /**
+     * Returns a cursor to the accounts which have transactions that have not been exported yet.
+     * <p>The accounts are selected in the database with an <code>EXISTS</code> subquery.
+     * Recurring transaction templates are not taken into account, as they are never exported</p>
+     * @return Cursor to the account records with unexported transactions
+     */
+    public Cursor fetchExportableAccounts(){
+        return mDb.rawQuery(buildExportableAccountsQuery(), null);
+    }
+
+    /**
+     * Builds the query of {@link #fetchExportableAccounts()}, which has no arguments
+     * @return SQL query
+     */
+    public String buildExportableAccountsQuery(){
+        String accountUID = AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID;
+        String unexportedTransactions;
+        if (mDb.getVersion() < DatabaseSchema.SPLITS_DB_VERSION){ //legacy from previous database format
+            unexportedTransactions = "SELECT 1 FROM " + TransactionEntry.TABLE_NAME
+                    + " WHERE (" + TransactionEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = " + accountUID
+                    + " OR " + TransactionEntry.TABLE_NAME + "." + DatabaseHelper.KEY_DOUBLE_ENTRY_ACCOUNT_UID + " = " + accountUID + ")";
+        } else {
+            unexportedTransactions = "SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                    + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+                    + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                    + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = " + accountUID;
+        }
+        unexportedTransactions += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_EXPORTED + " = 0"
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0";
+
+        return SQLiteQueryBuilder.buildQueryString(false, AccountEntry.TABLE_NAME, null,
+                "EXISTS (" + unexportedTransactions + ")", null, null, null, null);
+    }
+
     /**
      * Retrieves the unique ID of the imbalance account for a particular currency (creates the imbalance account
      * on demand if necessary)
@@ -591,30 +1004,36 @@ public class AccountsDbAdapter extends DatabaseAdapter {
                 AccountEntry.COLUMN_FULL_NAME + " ASC");
     }
     /**
-     * Returns the balance of an account while taking sub-accounts into consideration
+     * Returns the balance of an account while taking sub-accounts into consideration.
+     * Only sub-accounts with the same currency are considered, just like GnuCash desktop does.
+     * <p>The balance is read from the balances cache which is updated whenever splits are written</p>
      * @return Account Balance of an account including sub-accounts
+     * @see AccountBalancesDbAdapter
      */
     public Money getAccountBalance(long accountId){
-        Log.d(TAG, "Computing account balance for account ID " + accountId);
-        String currencyCode = getCurrencyCode(accountId);
-        currencyCode = currencyCode == null ? Money.DEFAULT_CURRENCY_CODE : currencyCode;
-        Money balance = Money.createZeroInstance(currencyCode);
-
-        List<Long> subAccounts = getSubAccountIds(accountId);
-        for (long id : subAccounts){
-            //recurse because arbitrary nesting depth is allowed
-            Money subBalance = getAccountBalance(id);
-            if (subBalance.getCurrency().equals(balance.getCurrency())){
-                //only add the balances if they are of the same currency
-                //ignore sub accounts of different currency just like GnuCash desktop does
-                balance = balance.add(subBalance);
-            }
-        }
+        return mBalancesDbAdapter.getTotalBalance(accountId);
+    }
+
+    /**
+     * Returns the balances of several accounts including their sub-accounts, read from the balances cache at once
+     * @param accountIds Database record IDs of the accounts
+     * @return Balances keyed by the record ID of the account. Accounts which do not exist are left out
+     * @see #getAccountBalance(long)
+     */
+    public SparseArray<Money> getAccountBalances(long[] accountIds){
+        return mBalancesDbAdapter.getTotalBalances(accountIds);
+    }
 
-        SplitsDbAdapter splitsDbAdapter = new SplitsDbAdapter(getContext());
-        Money splitSum = splitsDbAdapter.computeSplitBalance(getAccountUID(accountId));
-        splitsDbAdapter.close();
-        return balance.add(splitSum);
+    /**
+     * Computes the balances of all accounts at once.
+     * <p>The splits are aggregated per account in a single query and the balances are rolled up through
+     * the account hierarchy in memory, observing the same currency rule of {@link #getAccountBalance(long)}.
+     * This is meant for displaying the balances of many accounts without querying the database per account</p>
+     * @param includeSubAccounts If <code>true</code>, the balance of each account includes its sub-accounts
+     * @return Balances keyed by the database record ID of the accounts
+     */
+    public SparseArray<Money> getAccountBalances(boolean includeSubAccounts){
+        return mBalancesDbAdapter.computeAccountBalances(includeSubAccounts);
     }
 
     /**
@@ -644,6 +1063,74 @@ public class AccountsDbAdapter extends DatabaseAdapter {
         return subAccounts;
     }
 
+    /**
+     * Returns the IDs of all accounts below the account <code>accountId</code> in the account hierarchy,
+     * that is its sub-accounts, their sub-accounts and so on
+     * @param accountId Record ID of the account whose descendants are to be retrieved
+     * @return List of record IDs of the descendant accounts, nearest first
+     */
+    public List<Long> getDescendantIds(long accountId){
+        List<Long> descendantIds = new ArrayList<Long>();
+        String accountUID = getAccountUID(accountId);
+        if (accountUID == null)
+            return descendantIds;
+
+        Cursor cursor = mDb.rawQuery(buildDescendantIdsQuery(), new String[]{accountUID});
+        try {
+            while (cursor.moveToNext()){
+                descendantIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return descendantIds;
+    }
+
+    /**
+     * Builds the query of {@link #getDescendantIds(long)}, which looks up the descendants in the account hierarchy.
+     * The argument is the account UID
+     * @return SQL query
+     */
+    public String buildDescendantIdsQuery(){
+        return "SELECT a." + AccountEntry._ID
+                + " FROM " + AccountHierarchyEntry.TABLE_NAME + " h , " + AccountEntry.TABLE_NAME + " a"
+                + " WHERE h." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ?"
+                + " AND h." + AccountHierarchyEntry.COLUMN_DEPTH + " > 0"
+                + " AND a." + AccountEntry.COLUMN_UID + " = h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                + " ORDER BY h." + AccountHierarchyEntry.COLUMN_DEPTH + " ASC";
+    }
+
+    /**
+     * Returns the unique IDs of all accounts below the account <code>accountUID</code> in the account hierarchy
+     * @param accountUID Unique ID of the account whose descendants are to be retrieved
+     * @return List of unique IDs of the descendant accounts, nearest first
+     * @see #getDescendantIds(long)
+     */
+    public List<String> getDescendantAccountUIDs(String accountUID){
+        List<String> descendantUIDs = new ArrayList<String>();
+        Cursor cursor = mDb.rawQuery(buildDescendantUIDsQuery(), new String[]{accountUID});
+        try {
+            while (cursor.moveToNext()){
+                descendantUIDs.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return descendantUIDs;
+    }
+
+    /**
+     * Builds the query of {@link #getDescendantAccountUIDs(String)}, which reads the descendants from
+     * the account hierarchy only. The argument is the account UID
+     * @return SQL query
+     */
+    public String buildDescendantUIDsQuery(){
+        return SQLiteQueryBuilder.buildQueryString(false, AccountHierarchyEntry.TABLE_NAME,
+                new String[]{AccountHierarchyEntry.COLUMN_DESCENDANT_UID},
+                AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ? AND " + AccountHierarchyEntry.COLUMN_DEPTH + " > 0",
+                null, null, AccountHierarchyEntry.COLUMN_DEPTH + " ASC", null);
+    }
+
     /**
      * Returns a cursor to the dataset containing sub-accounts of the account with record ID <code>accoundId</code>
      * @param accountId Record ID of the parent account
@@ -652,10 +1139,17 @@ public class AccountsDbAdapter extends DatabaseAdapter {
     public Cursor fetchSubAccounts(long accountId){
         Log.v(TAG, "Fetching sub accounts for account id " + accountId);
         String accountUID = getAccountUID(accountId);
-        return mDb.query(AccountEntry.TABLE_NAME,
-                null,
-                AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = '" + accountUID + "'",
-                null, null, null, AccountEntry.COLUMN_NAME + " ASC");
+        //an account which does not exist has no sub-accounts, and no account has an empty parent UID
+        return mDb.rawQuery(buildSubAccountsQuery(), new String[]{accountUID == null ? "" : accountUID});
+    }
+
+    /**
+     * Builds the query of {@link #fetchSubAccounts(long)}. The argument is the UID of the parent account
+     * @return SQL query
+     */
+    public String buildSubAccountsQuery(){
+        return SQLiteQueryBuilder.buildQueryString(false, AccountEntry.TABLE_NAME, null,
+                AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = ?", null, null, AccountEntry.COLUMN_NAME + " ASC", null);
     }
 
     /**
@@ -733,16 +1227,7 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      * @return Unique ID of the GnuCash root account.
      */
     public String getGnuCashRootAccountUID(){
-        String condition = AccountEntry.COLUMN_TYPE + "= '" + AccountType.ROOT.name() + "'";
-        Cursor cursor =  fetchAccounts(condition);
-        String rootUID = null;
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                rootUID = cursor.getString(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
-            }
-            cursor.close();
-        }
-        return rootUID;
+        return mAccountMetadataCache.getRootAccountUID();
     }
 
     /**
@@ -787,18 +1272,7 @@ public class AccountsDbAdapter extends DatabaseAdapter {
 	 * @return Record ID belonging to account UID
 	 */
 	public long getId(String accountUID){
-		long id = -1;
-		Cursor c = mDb.query(AccountEntry.TABLE_NAME,
-				new String[]{AccountEntry._ID},
-				AccountEntry.COLUMN_UID + "='" + accountUID + "'",
-				null, null, null, null);
-		if (c != null) {
-            if (c.moveToFirst()) {
-                id = c.getLong(c.getColumnIndexOrThrow(AccountEntry._ID));
-            }
-            c.close();
-        }
-		return id;
+		return getAccountID(accountUID);
 	}
 	
 	/**
@@ -817,27 +1291,8 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      * @see #getFullyQualifiedAccountName(String)
      */
     public String getAccountName(String accountUID){
-        if (accountUID == null)
-            return null;
-
-        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
-                new String[]{AccountEntry._ID, AccountEntry.COLUMN_NAME},
-                AccountEntry.COLUMN_UID + " = ?",
-                new String[]{accountUID}, null, null, null);
-
-        if (cursor == null) {
-            return null;
-        } else if ( cursor.getCount() < 1) {
-            cursor.close();
-            return null;
-        } else {  //account UIDs should be unique
-            cursor.moveToFirst();
-        }
-
-        String accountName = cursor.getString(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_NAME));
-        cursor.close();
-
-        return accountName;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountUID);
+        return metadata == null ? null : metadata.getName();
     }
 
     /**
@@ -868,21 +1323,89 @@ public class AccountsDbAdapter extends DatabaseAdapter {
     }
 
     /**
-     * Returns the full account name including the account hierarchy (parent accounts)
+     * Returns the full account name including the account hierarchy (parent accounts).
+     * The names of all ancestors are read with one query from the account hierarchy
      * @param accountUID Unique ID of account
      * @return Fully qualified (with parent hierarchy) account name
      */
     public String getFullyQualifiedAccountName(String accountUID){
-        String accountName = getAccountName(accountUID);
-        String parentAccountUID = getParentAccountUID(accountUID);
-
-        if (parentAccountUID == null || parentAccountUID.equalsIgnoreCase(getGnuCashRootAccountUID())){
-            return accountName;
+        Cursor cursor = mDb.rawQuery(buildAncestorNamesQuery(), new String[]{accountUID});
+        StringBuilder fullName = new StringBuilder();
+        try {
+            while (cursor.moveToNext()){
+                //the GnuCash ROOT account is not part of the names
+                if (AccountType.ROOT.name().equals(cursor.getString(1)))
+                    continue;
+                if (fullName.length() > 0)
+                    fullName.append(ACCOUNT_NAME_SEPARATOR);
+                fullName.append(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
         }
+        return fullName.length() > 0 ? fullName.toString() : getAccountName(accountUID);
+    }
+
+    /**
+     * Builds the query of {@link #getFullyQualifiedAccountName(String)}, which looks up the names of the ancestors
+     * of an account in the account hierarchy, from the top. The argument is the account UID
+     * @return SQL query
+     */
+    public String buildAncestorNamesQuery(){
+        return "SELECT a." + AccountEntry.COLUMN_NAME + " , a." + AccountEntry.COLUMN_TYPE
+                + " FROM " + AccountHierarchyEntry.TABLE_NAME + " h , " + AccountEntry.TABLE_NAME + " a"
+                + " WHERE h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " = ?"
+                + " AND a." + AccountEntry.COLUMN_UID + " = h." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID
+                + " ORDER BY h." + AccountHierarchyEntry.COLUMN_DEPTH + " DESC";
+    }
 
-        String parentAccountName = getFullyQualifiedAccountName(parentAccountUID);
+    /**
+     * Updates the saved fully qualified names of the account and of all its descendant accounts,
+     * after the account has been renamed or moved
+     * @param accountUID Unique ID of the account at the top of the sub-tree
+     */
+    private void updateFullNames(String accountUID){
+        //names of all ancestors of all accounts in the sub-tree, grouped by account, from the top
+        Cursor cursor = mDb.rawQuery("SELECT h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                + " , a." + AccountEntry.COLUMN_NAME + " , a." + AccountEntry.COLUMN_TYPE
+                + " FROM " + AccountHierarchyEntry.TABLE_NAME + " s , "
+                + AccountHierarchyEntry.TABLE_NAME + " h , " + AccountEntry.TABLE_NAME + " a"
+                + " WHERE s." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + " = ?"
+                + " AND h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " = s." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID
+                + " AND a." + AccountEntry.COLUMN_UID + " = h." + AccountHierarchyEntry.COLUMN_ANCESTOR_UID
+                + " ORDER BY h." + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + " , h." + AccountHierarchyEntry.COLUMN_DEPTH + " DESC",
+                new String[]{accountUID});
+        Map<String, String> fullNames = new HashMap<String, String>();
+        try {
+            String currentUID = null;
+            StringBuilder fullName = new StringBuilder();
+            while (cursor.moveToNext()){
+                String descendantUID = cursor.getString(0);
+                if (!descendantUID.equals(currentUID)){
+                    if (currentUID != null)
+                        fullNames.put(currentUID, fullName.toString());
+                    currentUID = descendantUID;
+                    fullName.setLength(0);
+                }
+                if (AccountType.ROOT.name().equals(cursor.getString(2)))
+                    continue;
+                if (fullName.length() > 0)
+                    fullName.append(ACCOUNT_NAME_SEPARATOR);
+                fullName.append(cursor.getString(1));
+            }
+            if (currentUID != null)
+                fullNames.put(currentUID, fullName.toString());
+        } finally {
+            cursor.close();
+        }
 
-        return parentAccountName + ACCOUNT_NAME_SEPARATOR + accountName;
+        ContentValues contentValues = new ContentValues();
+        for (Map.Entry<String, String> entry : fullNames.entrySet()) {
+            contentValues.put(AccountEntry.COLUMN_FULL_NAME, entry.getValue());
+            mDb.update(AccountEntry.TABLE_NAME, contentValues, AccountEntry.COLUMN_UID + " = ?",
+                    new String[]{entry.getKey()});
+            mAccountMetadataCache.invalidate(entry.getKey());
+        }
     }
 
     /**
@@ -901,23 +1424,8 @@ public class AccountsDbAdapter extends DatabaseAdapter {
      * @return <code>true</code> if the account is a placeholder account, <code>false</code> otherwise
      */
     public boolean isPlaceholderAccount(String accountUID){
-        if (accountUID == null)
-            return false;
-
-        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
-                new String[]{AccountEntry.COLUMN_PLACEHOLDER},
-                AccountEntry.COLUMN_UID + " = ?",
-                new String[]{accountUID}, null, null, null);
-
-        boolean isPlaceholder = false;
-        if (cursor != null){
-            if (cursor.moveToFirst()){
-                isPlaceholder = cursor.getInt(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_PLACEHOLDER)) == 1;
-            }
-            cursor.close();
-        }
-
-        return isPlaceholder;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountUID);
+        return metadata != null && metadata.isPlaceholder();
     }
 
     /**
@@ -951,38 +1459,106 @@ public class AccountsDbAdapter extends DatabaseAdapter {
     }
 
     /**
-     * Updates all opening balances to the current account balances
+     * Returns transactions which set the opening balances of all accounts to their current balances.
+     * <p>The balances of all accounts are computed with one aggregation query over the splits.
+     * Accounts with a zero balance get no opening balance transaction</p>
+     * @return List of opening balance transactions, which are not saved yet
+     * @see #closeBooks(boolean, ProgressListener)
      */
     public List<Transaction> getAllOpeningBalanceTransactions(){
-        Cursor cursor = fetchAccounts(null);
+        Map<String, BigDecimal> balances = mBalancesDbAdapter.computeBalances();
         List<Transaction> openingTransactions = new ArrayList<Transaction>();
-        if (cursor != null){
-            SplitsDbAdapter splitsDbAdapter = new SplitsDbAdapter(mDb);
-            while(cursor.moveToNext()){
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(AccountEntry._ID));
-                String accountUID = getAccountUID(id);
-                String currencyCode = getCurrencyCode(id);
-                Money balance = splitsDbAdapter.computeSplitBalance(accountUID);
-                if (balance.asBigDecimal().compareTo(new BigDecimal(0)) == 0)
+        boolean hasBalances = false;
+        for (BigDecimal balance : balances.values()) {
+            if (balance.signum() != 0) {
+                hasBalances = true;
+                break;
+            }
+        }
+        if (!hasBalances)
+            return openingTransactions;
+
+        String openingBalanceAccountUID = getOrCreateOpeningBalanceAccountUID();
+        String openingBalanceDescription = mContext.getString(R.string.account_name_opening_balances);
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID, AccountEntry.COLUMN_NAME,
+                        AccountEntry.COLUMN_TYPE, AccountEntry.COLUMN_CURRENCY},
+                null, null, null, null, AccountEntry.COLUMN_NAME + " ASC");
+        try {
+            while (cursor.moveToNext()){
+                String accountUID = cursor.getString(0);
+                BigDecimal balance = balances.get(accountUID);
+                if (balance == null || balance.signum() == 0)
                     continue;
 
-                Transaction transaction = new Transaction(mContext.getString(R.string.account_name_opening_balances));
-                transaction.setNote(getName(id));
+                String currencyCode = cursor.getString(3);
+                Transaction transaction = new Transaction(openingBalanceDescription);
+                transaction.setNote(cursor.getString(1));
                 transaction.setCurrencyCode(currencyCode);
-                TransactionType transactionType = Transaction.getTypeForBalance(getAccountType(accountUID),
-                        balance.isNegative());
-                Split split = new Split(balance.absolute(), accountUID);
+                TransactionType transactionType = Transaction.getTypeForBalance(
+                        AccountType.valueOf(cursor.getString(2)), balance.signum() < 0);
+                Split split = new Split(new Money(balance.abs(), Currency.getInstance(currencyCode)), accountUID);
                 split.setType(transactionType);
                 transaction.addSplit(split);
-                transaction.addSplit(split.createPair(getOrCreateOpeningBalanceAccountUID()));
+                transaction.addSplit(split.createPair(openingBalanceAccountUID));
                 transaction.setExported(true);
                 openingTransactions.add(transaction);
             }
+        } finally {
             cursor.close();
         }
         return openingTransactions;
     }
 
+    /**
+     * Closes the books: deletes all transactions and, if requested, replaces them with opening balance transactions
+     * which carry the current balances of the accounts over.
+     * <p>The balances are computed with one aggregation query, all transactions and splits are deleted with
+     * one statement each and the opening balance transactions are written in bulk with
+     * {@link TransactionsDbAdapter#addTransactions(java.util.Collection)}, all in one database transaction.
+     * If anything fails, the database is left unchanged</p>
+     * @param preserveOpeningBalances Flag to create opening balance transactions for the current balances
+     * @param listener Listener which is notified after each of the {@link #CLOSE_BOOKS_STEP_COUNT} steps, may be <code>null</code>
+     * @return Number of opening balance transactions created
+     */
+    public int closeBooks(boolean preserveOpeningBalances, ProgressListener listener){
+        int step = 0;
+        int openingBalancesCount = 0;
+        mDb.beginTransaction();
+        try {
+            List<Transaction> openingBalances = preserveOpeningBalances ?
+                    getAllOpeningBalanceTransactions() : new ArrayList<Transaction>();
+            notifyProgress(listener, ++step);
+
+            mTransactionsAdapter.deleteAllRecords();
+            int splitCount = mDb.delete(SplitEntry.TABLE_NAME, null, null);
+            notifyProgress(listener, ++step);
+
+            if (!openingBalances.isEmpty())
+                openingBalancesCount = mTransactionsAdapter.addTransactions(openingBalances);
+            mDb.setTransactionSuccessful();
+            Log.i(TAG, "Closed the books: deleted " + splitCount + " splits, created "
+                    + openingBalancesCount + " opening balance transactions");
+        } finally {
+            endTransaction();
+        }
+        notifyProgress(listener, ++step);
+        return openingBalancesCount;
+    }
+
+    /**
+     * Ends the current database transaction and lets the account metadata cache drop the entries
+     * which other threads may have read before the writes of the transaction were committed
+     * @see AccountMetadataCache#transactionEnded()
+     */
+    private void endTransaction(){
+        mDb.endTransaction();
+        mAccountMetadataCache.transactionEnded();
+    }
+
+    private static void notifyProgress(ProgressListener listener, int step){
+        if (listener != null)
+            listener.onProgress(step, CLOSE_BOOKS_STEP_COUNT);
+    }
 
     /**
      * Returns the imbalance account where to store transactions which are not double entry
@@ -1027,12 +1603,6 @@ public class AccountsDbAdapter extends DatabaseAdapter {
         return currencyList;
     }
 
-    @Override
-    public void close() {
-        super.close();
-        mTransactionsAdapter.close();
-    }
-
     /**
 	 * Deletes all accounts and their transactions (and their splits) from the database.
      * Basically empties all 3 tables, so use with care ;)
@@ -1041,7 +1611,11 @@ public class AccountsDbAdapter extends DatabaseAdapter {
 	public int deleteAllRecords(){
 		mDb.delete(TransactionEntry.TABLE_NAME, null, null);
         mDb.delete(SplitEntry.TABLE_NAME, null, null);
-        return mDb.delete(AccountEntry.TABLE_NAME, null, null);
+        mDb.delete(AccountBalanceEntry.TABLE_NAME, null, null);
+        mDb.delete(AccountHierarchyEntry.TABLE_NAME, null, null);
+        int count = mDb.delete(AccountEntry.TABLE_NAME, null, null);
+        mAccountMetadataCache.invalidateAll();
+        return count;
 	}
 
 }
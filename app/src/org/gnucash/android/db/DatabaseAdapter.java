@@ -19,9 +19,8 @@ package org.gnucash.android.db;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
+import android.database.sqlite.SQLiteStatement;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.AccountType;
 
@@ -39,9 +38,15 @@ public abstract class DatabaseAdapter {
 	protected static final String TAG = DatabaseAdapter.class.getName();
 
 	/**
-	 * {@link DatabaseHelper} for creating and opening the database
+	 * Maximum number of arguments bound to a single SQL statement, well below the SQLite limit of 999
 	 */
-	protected DatabaseHelper mDbHelper;
+	protected static final int MAX_SQL_ARGUMENTS = 500;
+
+	/**
+	 * Shared database connection, if this adapter acquired the database from it.
+	 * <code>null</code> if the adapter was created for an already open database
+	 */
+	private DatabaseConnection mDbConnection;
 	
 	/**
 	 * SQLite database
@@ -52,15 +57,22 @@ public abstract class DatabaseAdapter {
 	 * Application context
 	 */
 	protected Context mContext;
+
+	/**
+	 * Cache of the account metadata, shared by all adapters of the database
+	 */
+	protected AccountMetadataCache mAccountMetadataCache;
 	
 	/**
-	 * Opens (or creates if it doesn't exist) the database for reading and writing
+	 * Acquires the database connection shared by all adapters, which opens (or creates if it doesn't exist)
+	 * the database for reading and writing when it is first used
 	 * @param context Application context to be used for opening database
 	 */
 	public DatabaseAdapter(Context context) {
-		mDbHelper = new DatabaseHelper(context);
+		mDbConnection = GnuCashApplication.getDatabaseConnection(context);
 		mContext = context.getApplicationContext();
-		open();
+		mDb = mDbConnection.acquire();
+		mAccountMetadataCache = AccountMetadataCache.getInstance(mDb);
 	}
 
     /**
@@ -72,32 +84,18 @@ public abstract class DatabaseAdapter {
         this.mContext = GnuCashApplication.getAppContext();
         if (!db.isOpen() || db.isReadOnly())
             throw new IllegalArgumentException("Database not open or is read-only. Require writeable database");
+        mAccountMetadataCache = AccountMetadataCache.getInstance(db);
     }
 
 	/**
-	 * Opens/creates database to be used for reading or writing. 
-	 * @return Reference to self for database manipulation
-	 */
-	public DatabaseAdapter open(){
-		try {
-			mDb = mDbHelper.getWritableDatabase();
-		} catch (SQLException e) {
-			Log.e(TAG, "Error getting database: " + e.getMessage());
-			mDb = mDbHelper.getReadableDatabase();
-		}
-		
-		return this;
-	}
-	
-	/**
-	 * Close the database
+	 * Releases the shared database connection.
+	 * The database itself stays open for the other adapters, so this is cheap.
+	 * Adapters which received the database object (during migrations) leave it alone
 	 */
 	public void close(){
-        //only close if we opened the db ourselves (through the helper)
-        //if we received the database object (during migrations) leave it alone
-		if (mDbHelper != null) {
-            mDbHelper.close();
-            mDb.close();
+		if (mDbConnection != null) {
+            mDbConnection.release();
+            mDbConnection = null;
         }
 	}
 
@@ -109,6 +107,14 @@ public abstract class DatabaseAdapter {
         return mDb.isOpen();
     }
 
+    /**
+     * Checks if the adapter uses the shared database connection, as opposed to a database object it was created for
+     * @return <code>true</code> if the adapter was created with a context, <code>false</code> otherwise
+     */
+    protected boolean usesSharedConnection(){
+        return mDbConnection != null;
+    }
+
     /**
      * Returns the context used to create this adapter
      * @return Android application context
@@ -190,42 +196,21 @@ public abstract class DatabaseAdapter {
      * @return Currency code of the account
      */
     public String getCurrencyCode(String accountUID) {
-        Cursor cursor = mDb.query(DatabaseSchema.AccountEntry.TABLE_NAME,
-                new String[] {DatabaseSchema.AccountEntry.COLUMN_CURRENCY},
-                DatabaseSchema.AccountEntry.COLUMN_UID + "= ?",
-                new String[]{accountUID}, null, null, null);
-
-        if (cursor == null)
-            return null;
-        if (cursor.getCount() <= 0) {
-            cursor.close();
-            return null;
-        }
-
-        cursor.moveToFirst();
-        String currencyCode = cursor.getString(0);
-        cursor.close();
-        return currencyCode;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountUID);
+        return metadata == null ? null : metadata.getCurrencyCode();
     }
 
     /**
      * Returns the {@link org.gnucash.android.model.AccountType} of the account with unique ID <code>uid</code>
      * @param accountUID Unique ID of the account
      * @return {@link org.gnucash.android.model.AccountType} of the account
+     * @throws IllegalArgumentException if there is no account with the unique ID
      */
     public AccountType getAccountType(String accountUID){
-        String type = null;
-        Cursor c = mDb.query(DatabaseSchema.AccountEntry.TABLE_NAME,
-                new String[]{DatabaseSchema.AccountEntry.COLUMN_TYPE},
-                DatabaseSchema.AccountEntry.COLUMN_UID + "=?",
-                new String[]{accountUID}, null, null, null);
-        if (c != null) {
-            if (c.moveToFirst()) {
-                type = c.getString(c.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_TYPE));
-            }
-            c.close();
-        }
-        return AccountType.valueOf(type);
+        AccountMetadata metadata = mAccountMetadataCache.get(accountUID);
+        if (metadata == null)
+            throw new IllegalArgumentException("Account not found: " + accountUID);
+        return metadata.getAccountType();
     }
 
     /**
@@ -234,18 +219,8 @@ public abstract class DatabaseAdapter {
      * @return String containing UID of account
      */
     public String getAccountUID(long accountRowID){
-        String uid = null;
-        Cursor c = mDb.query(DatabaseSchema.AccountEntry.TABLE_NAME,
-                new String[]{DatabaseSchema.AccountEntry.COLUMN_UID},
-                DatabaseSchema.CommonColumns._ID + "=" + accountRowID,
-                null, null, null, null);
-        if (c != null) {
-            if (c.moveToFirst()) {
-                uid = c.getString(0);
-            }
-            c.close();
-        }
-        return uid;
+        AccountMetadata metadata = mAccountMetadataCache.get(accountRowID);
+        return metadata == null ? null : metadata.getUID();
     }
 
     /**
@@ -254,20 +229,35 @@ public abstract class DatabaseAdapter {
      * @return Database row ID of the account
      */
     public long getAccountID(String accountUID){
-        long id = -1;
-        if (accountUID == null)
-            return id;
-        Cursor c = mDb.query(DatabaseSchema.AccountEntry.TABLE_NAME,
-                new String[]{DatabaseSchema.AccountEntry._ID},
-                DatabaseSchema.AccountEntry.COLUMN_UID + "= ?",
-                new String[]{accountUID}, null, null, null);
-        if (c != null) {
-            if (c.moveToFirst()) {
-                id = c.getLong(0);
-            }
-            c.close();
+        AccountMetadata metadata = mAccountMetadataCache.get(accountUID);
+        return metadata == null ? -1 : metadata.getId();
+    }
+
+    /**
+     * Binds a string which may be <code>null</code> to a compiled statement
+     * @param statement Compiled SQLite statement
+     * @param index 1-based index of the parameter to bind
+     * @param value Value to bind, or <code>null</code> to bind SQL NULL
+     */
+    protected static void bindNullableString(SQLiteStatement statement, int index, String value){
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    /**
+     * Builds a condition which matches a column against a list of bound arguments
+     * @param column Name of the column, may be qualified with the table name
+     * @param argumentCount Number of arguments in the list, at most {@link #MAX_SQL_ARGUMENTS}
+     * @return SQL condition of the form <code>column IN ( ? , ? )</code>
+     */
+    protected static String buildInCondition(String column, int argumentCount){
+        StringBuilder condition = new StringBuilder(column).append(" IN ( ");
+        for (int i = 0; i < argumentCount; i++) {
+            condition.append(i == 0 ? "?" : " , ?");
         }
-        return id;
+        return condition.append(" )").toString();
     }
 
     /**
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Owner of the database connection which is shared by all database adapters of the process.
+ * <p>The database is opened when it is first acquired and stays open for the lifetime of the process,
+ * so constructing adapters does not open connections or check the schema version again.
+ * Adapters acquire the connection when they are created and release it when they are closed.
+ * The reference count only tracks the adapters in use; releasing the last reference does not close the database</p>
+ * <p>Write-ahead logging is enabled where available (API level 11), so that reads from other threads
+ * are not blocked by long write transactions such as imports</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see org.gnucash.android.app.GnuCashApplication#getDatabaseConnection(android.content.Context)
+ */
+public class DatabaseConnection {
+
+    private static final String LOG_TAG = "DatabaseConnection";
+
+    /**
+     * {@link DatabaseHelper} for creating, upgrading and opening the database
+     */
+    private final DatabaseHelper mDbHelper;
+
+    /**
+     * Shared database, <code>null</code> until it is first acquired
+     */
+    private SQLiteDatabase mDb;
+
+    /**
+     * Number of adapters which currently use the database
+     */
+    private int mReferenceCount = 0;
+
+    /**
+     * Creates the connection owner. The database is not opened until it is acquired
+     * @param context Application context
+     */
+    public DatabaseConnection(Context context){
+        mDbHelper = new DatabaseHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Returns the shared database and increments the reference count.
+     * Every call should be matched by a call to {@link #release()}
+     * @return Shared SQLite database
+     */
+    public synchronized SQLiteDatabase acquire(){
+        if (mDb == null || !mDb.isOpen()){
+            mDb = open();
+        }
+        mReferenceCount++;
+        return mDb;
+    }
+
+    /**
+     * Decrements the reference count. The database stays open
+     */
+    public synchronized void release(){
+        if (mReferenceCount == 0){
+            Log.w(LOG_TAG, "Database connection released more often than it was acquired");
+            return;
+        }
+        mReferenceCount--;
+    }
+
+    /**
+     * Returns the number of adapters which currently use the database
+     * @return Reference count of the shared database
+     */
+    public synchronized int getReferenceCount(){
+        return mReferenceCount;
+    }
+
+    /**
+     * Opens the database for writing, or for reading if it cannot be written
+     * @return Opened database
+     */
+    private SQLiteDatabase open(){
+        SQLiteDatabase db;
+        try {
+            db = mDbHelper.getWritableDatabase();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error getting database: " + e.getMessage());
+            return mDbHelper.getReadableDatabase();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !db.enableWriteAheadLogging()){
+            Log.w(LOG_TAG, "Write-ahead logging could not be enabled");
+        }
+        return db;
+    }
+}
@@ -95,7 +95,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + SplitEntry.COLUMN_UID             + " varchar(255) not null, "
             + SplitEntry.COLUMN_MEMO 	        + " text, "
             + SplitEntry.COLUMN_TYPE            + " varchar(255) not null, "
-            + SplitEntry.COLUMN_AMOUNT          + " varchar(255) not null, "
+            + SplitEntry.COLUMN_AMOUNT_NUM      + " integer not null, "
+            + SplitEntry.COLUMN_AMOUNT_DENOM    + " integer not null, "
             + SplitEntry.COLUMN_ACCOUNT_UID 	+ " varchar(255) not null, "
             + SplitEntry.COLUMN_TRANSACTION_UID + " varchar(255) not null, "
             + "FOREIGN KEY (" 	+ SplitEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + "), "
@@ -103,6 +104,70 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + "UNIQUE (" 		+ SplitEntry.COLUMN_UID + ") "
             + ");";
 
+    /**
+     * SQL statement to create the index on the unique identifiers of splits
+     */
+    private static final String SPLIT_UID_INDEX_CREATE = "CREATE UNIQUE INDEX '" + SplitEntry.INDEX_UID + "' ON "
+            + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_UID + ")";
+
+    /**
+     * SQL statements to create the indexes for looking up splits by account and by transaction,
+     * transactions by time and accounts by parent account.
+     * The account index includes the transaction UID, so that joins of the splits of an account
+     * with their transactions are resolved from the index
+     */
+    private static final String[] SECONDARY_INDEXES_CREATE = new String[]{
+            "CREATE INDEX '" + SplitEntry.INDEX_ACCOUNT_UID + "' ON " + SplitEntry.TABLE_NAME
+                    + "(" + SplitEntry.COLUMN_ACCOUNT_UID + ", " + SplitEntry.COLUMN_TRANSACTION_UID + ")",
+            "CREATE INDEX '" + SplitEntry.INDEX_TRANSACTION_UID + "' ON " + SplitEntry.TABLE_NAME
+                    + "(" + SplitEntry.COLUMN_TRANSACTION_UID + ")",
+            "CREATE INDEX '" + TransactionEntry.INDEX_TIMESTAMP + "' ON " + TransactionEntry.TABLE_NAME
+                    + "(" + TransactionEntry.COLUMN_TIMESTAMP + ")",
+            "CREATE INDEX '" + AccountEntry.INDEX_PARENT_ACCOUNT_UID + "' ON " + AccountEntry.TABLE_NAME
+                    + "(" + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + ")"
+    };
+
+    /**
+     * SQL statement to create the table which caches the account balances
+     */
+    private static final String ACCOUNT_BALANCES_TABLE_CREATE = "CREATE TABLE " + AccountBalanceEntry.TABLE_NAME + " ("
+            + AccountBalanceEntry._ID                   + " integer primary key autoincrement, "
+            + AccountBalanceEntry.COLUMN_ACCOUNT_UID    + " varchar(255) not null, "
+            + AccountBalanceEntry.COLUMN_BALANCE        + " varchar(255) not null default '0', "
+            + AccountBalanceEntry.COLUMN_TOTAL_BALANCE  + " varchar(255) not null default '0', "
+            + "FOREIGN KEY (" 	+ AccountBalanceEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + "), "
+            + "UNIQUE (" 		+ AccountBalanceEntry.COLUMN_ACCOUNT_UID + ") "
+            + ");";
+
+    /**
+     * SQL statements to create the account hierarchy closure table and its index for looking up ancestors
+     */
+    private static final String[] ACCOUNT_HIERARCHY_TABLE_CREATE = new String[]{
+            "CREATE TABLE " + AccountHierarchyEntry.TABLE_NAME + " ("
+                    + AccountHierarchyEntry.COLUMN_ANCESTOR_UID    + " varchar(255) not null, "
+                    + AccountHierarchyEntry.COLUMN_DESCENDANT_UID  + " varchar(255) not null, "
+                    + AccountHierarchyEntry.COLUMN_DEPTH           + " integer not null, "
+                    + "PRIMARY KEY (" + AccountHierarchyEntry.COLUMN_ANCESTOR_UID + ", "
+                    + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + ")"
+                    + ");",
+            "CREATE INDEX '" + AccountHierarchyEntry.INDEX_DESCENDANT_UID + "' ON " + AccountHierarchyEntry.TABLE_NAME
+                    + "(" + AccountHierarchyEntry.COLUMN_DESCENDANT_UID + ", " + AccountHierarchyEntry.COLUMN_DEPTH + ")"
+    };
+
+    /**
+     * SQL statement to create the queue of transactions received through intents
+     */
+    private static final String TRANSACTION_QUEUE_TABLE_CREATE = "CREATE TABLE " + TransactionQueueEntry.TABLE_NAME + " ("
+            + TransactionQueueEntry._ID                 + " integer primary key autoincrement, "
+            + TransactionQueueEntry.COLUMN_UID          + " varchar(255) not null, "
+            + TransactionQueueEntry.COLUMN_DESCRIPTION  + " varchar(255), "
+            + TransactionQueueEntry.COLUMN_NOTES        + " text, "
+            + TransactionQueueEntry.COLUMN_CURRENCY     + " varchar(255) not null, "
+            + TransactionQueueEntry.COLUMN_TIMESTAMP    + " integer not null, "
+            + TransactionQueueEntry.COLUMN_SPLITS       + " text, "
+            + "UNIQUE (" + TransactionQueueEntry.COLUMN_UID + ")"
+            + ");";
+
     /**
      * Context passed in for database upgrade. Keep reference so as to be able to display UI dialogs
      */
@@ -244,7 +309,61 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     Toast.makeText(mContext, "Error upgrading database.\n" + e.getMessage(), Toast.LENGTH_LONG).show();
                     throw new RuntimeException(e);
                 }
-                oldVersion = DatabaseSchema.SPLITS_DB_VERSION;
+                //the tables were recreated with the latest schema
+                oldVersion = DatabaseSchema.DATABASE_VERSION;
+            }
+
+            if (oldVersion == 7 && newVersion >= DatabaseSchema.ACCOUNT_BALANCES_DB_VERSION){
+                Log.i(LOG_TAG, "Upgrading database to version 8");
+
+                //the balances are computed after the split amounts have been converted in version 9
+                db.execSQL(ACCOUNT_BALANCES_TABLE_CREATE);
+
+                oldVersion = DatabaseSchema.ACCOUNT_BALANCES_DB_VERSION;
+            }
+
+            if (oldVersion == 8 && newVersion >= DatabaseSchema.RATIONAL_AMOUNTS_DB_VERSION){
+                Log.i(LOG_TAG, "Upgrading database to version 9");
+
+                //SQLite cannot drop columns, so the splits table is recreated with the new amount columns
+                String oldSplitsTable = SplitEntry.TABLE_NAME + "_old";
+                db.execSQL("ALTER TABLE " + SplitEntry.TABLE_NAME + " RENAME TO " + oldSplitsTable);
+                db.execSQL("DROP INDEX IF EXISTS '" + SplitEntry.INDEX_UID + "'");
+                db.execSQL(SPLITS_TABLE_CREATE);
+                db.execSQL(SPLIT_UID_INDEX_CREATE);
+
+                Log.i(LOG_TAG, "Converting split amounts to numerator and denominator");
+                MigrationHelper.copySplitsWithRationalAmounts(db, oldSplitsTable);
+                db.execSQL("DROP TABLE " + oldSplitsTable);
+
+                Log.i(LOG_TAG, "Computing the balances of all accounts");
+                new AccountBalancesDbAdapter(db).rebuildBalances();
+
+                oldVersion = DatabaseSchema.RATIONAL_AMOUNTS_DB_VERSION;
+            }
+
+            if (oldVersion == 9 && newVersion >= DatabaseSchema.SECONDARY_INDEXES_DB_VERSION){
+                Log.i(LOG_TAG, "Upgrading database to version 10");
+                createSecondaryIndexes(db);
+
+                oldVersion = DatabaseSchema.SECONDARY_INDEXES_DB_VERSION;
+            }
+
+            if (oldVersion == 10 && newVersion >= DatabaseSchema.ACCOUNT_HIERARCHY_DB_VERSION){
+                Log.i(LOG_TAG, "Upgrading database to version 11");
+                createAccountHierarchyTable(db);
+
+                Log.i(LOG_TAG, "Building the account hierarchy");
+                new AccountsDbAdapter(db).rebuildAccountHierarchy();
+
+                oldVersion = DatabaseSchema.ACCOUNT_HIERARCHY_DB_VERSION;
+            }
+
+            if (oldVersion == 11 && newVersion >= DatabaseSchema.TRANSACTION_QUEUE_DB_VERSION){
+                Log.i(LOG_TAG, "Upgrading database to version 12");
+                db.execSQL(TRANSACTION_QUEUE_TABLE_CREATE);
+
+                oldVersion = DatabaseSchema.TRANSACTION_QUEUE_DB_VERSION;
             }
 		}
 
@@ -262,6 +381,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(ACCOUNTS_TABLE_CREATE);
         db.execSQL(TRANSACTIONS_TABLE_CREATE);
         db.execSQL(SPLITS_TABLE_CREATE);
+        db.execSQL(ACCOUNT_BALANCES_TABLE_CREATE);
+        createAccountHierarchyTable(db);
+        db.execSQL(TRANSACTION_QUEUE_TABLE_CREATE);
 
         String createAccountUidIndex = "CREATE UNIQUE INDEX '" + AccountEntry.INDEX_UID + "' ON "
                 + AccountEntry.TABLE_NAME + "(" + AccountEntry.COLUMN_UID + ")";
@@ -269,12 +391,30 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         String createTransactionUidIndex = "CREATE UNIQUE INDEX '"+ TransactionEntry.INDEX_UID +"' ON "
                 + TransactionEntry.TABLE_NAME + "(" + TransactionEntry.COLUMN_UID + ")";
 
-        String createSplitUidIndex = "CREATE UNIQUE INDEX '" + SplitEntry.INDEX_UID +"' ON "
-                + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_UID + ")";
-
         db.execSQL(createAccountUidIndex);
         db.execSQL(createTransactionUidIndex);
-        db.execSQL(createSplitUidIndex);
+        db.execSQL(SPLIT_UID_INDEX_CREATE);
+        createSecondaryIndexes(db);
+    }
+
+    /**
+     * Creates the indexes on the columns used for looking up splits, transactions and accounts
+     * @param db Database instance
+     */
+    private void createSecondaryIndexes(SQLiteDatabase db) {
+        for (String createIndex : SECONDARY_INDEXES_CREATE) {
+            db.execSQL(createIndex);
+        }
+    }
+
+    /**
+     * Creates the account hierarchy closure table with its index
+     * @param db Database instance
+     */
+    private void createAccountHierarchyTable(SQLiteDatabase db) {
+        for (String statement : ACCOUNT_HIERARCHY_TABLE_CREATE) {
+            db.execSQL(statement);
+        }
     }
 
     /**
@@ -286,6 +426,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("DROP TABLE IF EXISTS " + AccountEntry.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + TransactionEntry.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + SplitEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + AccountBalanceEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + AccountHierarchyEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + TransactionQueueEntry.TABLE_NAME);
     }
 
 
@@ -28,13 +28,38 @@ public class DatabaseSchema {
      * Database version.
      * With any change to the database schema, this number must increase
      */
-    static final int DATABASE_VERSION = 7;
+    static final int DATABASE_VERSION = 12;
 
     /**
      * Database version where Splits were introduced
      */
     public static final int SPLITS_DB_VERSION = 7;
 
+    /**
+     * Database version where the account balances cache was introduced
+     */
+    public static final int ACCOUNT_BALANCES_DB_VERSION = 8;
+
+    /**
+     * Database version where split amounts are stored as integer numerator and denominator
+     */
+    public static final int RATIONAL_AMOUNTS_DB_VERSION = 9;
+
+    /**
+     * Database version where indexes for the account, transaction and parent account lookups were introduced
+     */
+    public static final int SECONDARY_INDEXES_DB_VERSION = 10;
+
+    /**
+     * Database version where the account hierarchy closure table was introduced
+     */
+    public static final int ACCOUNT_HIERARCHY_DB_VERSION = 11;
+
+    /**
+     * Database version where the queue of transactions received through intents was introduced
+     */
+    public static final int TRANSACTION_QUEUE_DB_VERSION = 12;
+
     //no instances are to be instantiated
     private DatabaseSchema(){}
 
@@ -60,6 +85,7 @@ public class DatabaseSchema {
         public static final String COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID = "default_transfer_account_uid";
 
         public static final String INDEX_UID                    = "account_uid_index";
+        public static final String INDEX_PARENT_ACCOUNT_UID     = "account_parent_account_uid_index";
     }
 
     /**
@@ -78,6 +104,7 @@ public class DatabaseSchema {
         public static final String COLUMN_RECURRENCE_PERIOD     = "recurrence_period";
 
         public static final String INDEX_UID                    = "transaction_uid_index";
+        public static final String INDEX_TIMESTAMP              = "transaction_timestamp_index";
     }
 
     /**
@@ -88,11 +115,88 @@ public class DatabaseSchema {
         public static final String TABLE_NAME                   = "splits";
 
         public static final String COLUMN_TYPE                  = "type";
+        /**
+         * Decimal string amount of the split, which was replaced by {@link #COLUMN_AMOUNT_NUM}
+         * and {@link #COLUMN_AMOUNT_DENOM} in database version {@link DatabaseSchema#RATIONAL_AMOUNTS_DB_VERSION}.
+         * Only used for reading older databases during migrations
+         */
+        @Deprecated
         public static final String COLUMN_AMOUNT                = "amount";
+        /**
+         * Numerator of the (absolute) split amount
+         */
+        public static final String COLUMN_AMOUNT_NUM            = "amount_num";
+        /**
+         * Denominator of the split amount, which is always a power of 10.
+         * Queries rely on this to sum up splits with different denominators
+         */
+        public static final String COLUMN_AMOUNT_DENOM          = "amount_denom";
         public static final String COLUMN_MEMO                  = "memo";
         public static final String COLUMN_ACCOUNT_UID           = "account_uid";
         public static final String COLUMN_TRANSACTION_UID       = "transaction_uid";
 
         public static final String INDEX_UID                    = "split_uid_index";
+        public static final String INDEX_ACCOUNT_UID            = "split_account_uid_index";
+        public static final String INDEX_TRANSACTION_UID        = "split_transaction_uid_index";
+    }
+
+    /**
+     * Column schema for the account balances table in the database.
+     * <p>This table caches the balance of each account and is updated whenever splits are written</p>
+     */
+    public static abstract class AccountBalanceEntry implements BaseColumns {
+
+        public static final String TABLE_NAME                   = "account_balances";
+
+        public static final String COLUMN_ACCOUNT_UID           = "account_uid";
+        /**
+         * Balance of the splits in the account itself
+         */
+        public static final String COLUMN_BALANCE               = "balance";
+        /**
+         * Balance of the account including all its sub-accounts of the same currency
+         */
+        public static final String COLUMN_TOTAL_BALANCE         = "total_balance";
+    }
+
+    /**
+     * Column schema for the account hierarchy table in the database.
+     * <p>This is a closure table of the account tree: it holds a row for every account and each of its ancestors,
+     * including a row with depth 0 for the account itself, so that sub-trees and ancestries are selected
+     * by a single query. It is derived from {@link AccountEntry#COLUMN_PARENT_ACCOUNT_UID} and
+     * maintained by the {@link AccountsDbAdapter}</p>
+     */
+    public static abstract class AccountHierarchyEntry {
+
+        public static final String TABLE_NAME                   = "account_hierarchy";
+
+        public static final String COLUMN_ANCESTOR_UID          = "ancestor_uid";
+        public static final String COLUMN_DESCENDANT_UID        = "descendant_uid";
+        /**
+         * Number of levels between the ancestor and the descendant, 1 for the parent of an account
+         */
+        public static final String COLUMN_DEPTH                 = "depth";
+
+        public static final String INDEX_DESCENDANT_UID         = "account_hierarchy_descendant_uid_index";
+    }
+
+    /**
+     * Column schema for the queue of transactions received through intents, which have not been recorded yet.
+     * The splits of a transaction are stored together, one split per line in the format of
+     * {@link org.gnucash.android.model.Split#toCsv()}
+     * @see TransactionQueueDbAdapter
+     */
+    public static abstract class TransactionQueueEntry implements CommonColumns {
+
+        public static final String TABLE_NAME                   = "transaction_queue";
+
+        public static final String COLUMN_DESCRIPTION           = "description";
+        public static final String COLUMN_NOTES                 = "notes";
+        public static final String COLUMN_CURRENCY              = "currency_code";
+        public static final String COLUMN_TIMESTAMP             = "timestamp";
+        /**
+         * Splits of the queued transaction, one split per line in a locale independent encoding
+         */
+        public static final String COLUMN_SPLITS                = "splits";
     }
 }
@@ -16,21 +16,28 @@
 
 package org.gnucash.android.db;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Environment;
 import android.util.Log;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.ExportSink;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.export.qif.QifExporter;
 import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.importer.GncXmlImporter;
 import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
 
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
 
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 
 /**
  * Date: 23.03.2014
@@ -112,7 +119,7 @@ public class MigrationHelper {
      * Exports the database to a GnuCash XML file and returns the path to the file
      * @return String with exported GnuCash XML
      */
-    static String exportDatabase(SQLiteDatabase db, ExportFormat format) throws IOException {
+    static String exportDatabase(SQLiteDatabase db, ExportFormat format) {
         Log.i(LOG_TAG, "Exporting database to GnuCash XML");
         ExportParams exportParams = new ExportParams(format);
         exportParams.setExportAllTransactions(true);
@@ -134,12 +141,7 @@ public class MigrationHelper {
                 exporter = new GncXmlExporter(exportParams, db);
         }
 
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
-                new FileOutputStream(exportParams.getTargetFilepath()), "UTF-8"));
-        writer.write(exporter.generateExport());
-
-        writer.flush();
-        writer.close();
+        exporter.generateExport(ExportSink.toFileAtomically(new File(exportParams.getTargetFilepath())));
         return exportParams.getTargetFilepath();
     }
 
@@ -152,4 +154,49 @@ public class MigrationHelper {
         FileInputStream inputStream = new FileInputStream(filepath);
         GncXmlImporter.parse(db, inputStream);
     }
+
+    /**
+     * Copies the splits from a splits table with decimal string amounts to the current splits table,
+     * converting the amounts to numerator and denominator
+     * @param db SQLite database
+     * @param oldSplitsTable Name of the table containing the splits with decimal string amounts
+     */
+    @SuppressWarnings("deprecation")
+    static void copySplitsWithRationalAmounts(SQLiteDatabase db, String oldSplitsTable){
+        Cursor cursor = db.rawQuery("SELECT " + oldSplitsTable + ".*, " + AccountEntry.TABLE_NAME + "."
+                + AccountEntry.COLUMN_CURRENCY + " AS account_currency FROM " + oldSplitsTable
+                + " LEFT OUTER JOIN " + AccountEntry.TABLE_NAME + " ON " + oldSplitsTable + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " = " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID, null);
+        if (cursor == null)
+            return;
+
+        while (cursor.moveToNext()){
+            String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow("account_currency"));
+            Currency currency = Currency.getInstance(currencyCode == null ? Money.DEFAULT_CURRENCY_CODE : currencyCode);
+            BigDecimal decimal = new BigDecimal(cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_AMOUNT)));
+            Money amount = new Money(decimal, currency);
+            try {
+                amount.getNumerator();
+                amount.getDenominator();
+            } catch (ArithmeticException e) {
+                //too many digits to be stored as a rational amount, so the amount is rounded like GnuCash would
+                Log.w(LOG_TAG, "Rounding split amount " + decimal.toPlainString() + " to the fraction digits of "
+                        + currency.getCurrencyCode());
+                amount = new Money(decimal.setScale(Math.max(currency.getDefaultFractionDigits(), 0),
+                        RoundingMode.HALF_EVEN), currency);
+            }
+
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(SplitEntry._ID,               cursor.getLong(cursor.getColumnIndexOrThrow(SplitEntry._ID)));
+            contentValues.put(SplitEntry.COLUMN_UID,        cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_UID)));
+            contentValues.put(SplitEntry.COLUMN_MEMO,       cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_MEMO)));
+            contentValues.put(SplitEntry.COLUMN_TYPE,       cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TYPE)));
+            contentValues.put(SplitEntry.COLUMN_AMOUNT_NUM,     amount.getNumerator());
+            contentValues.put(SplitEntry.COLUMN_AMOUNT_DENOM,   SplitsDbAdapter.getDecimalDenominator(amount));
+            contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID,    cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_ACCOUNT_UID)));
+            contentValues.put(SplitEntry.COLUMN_TRANSACTION_UID,cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TRANSACTION_UID)));
+            db.insert(SplitEntry.TABLE_NAME, null, contentValues);
+        }
+        cursor.close();
+    }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Cursor to the transactions of an account with their balances, which reads the transactions page by page.
+ * <p>The rows are those of {@link TransactionsDbAdapter#fetchTransactionsWithBalanceForAccount(String)}.
+ * Only the number of transactions and the first page are read when the cursor is created.
+ * The other pages are read when the cursor is moved onto them, selecting each page by the timestamp and
+ * record ID of the last transaction of the previous page (keyset pagination), so reading a page does not
+ * depend on how far down the list it is.
+ * At most {@link #MAX_RESIDENT_PAGES} pages are held in memory, the least recently used page is closed
+ * when another one is read</p>
+ * <p>Moving directly to a page whose previous pages were never read reads those pages first,
+ * because their keys are needed. The keys are kept for all pages read, so this happens only once per page</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see TransactionsDbAdapter#fetchTransactionsWithBalanceForAccount(String, long, long, int)
+ */
+public class PagedTransactionsCursor extends AbstractCursor {
+
+    /**
+     * Default number of transactions per page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Maximum number of pages which are held in memory at the same time
+     */
+    static final int MAX_RESIDENT_PAGES = 4;
+
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final String mAccountUID;
+    private final int mPageSize;
+    private final int mCount;
+    private final String[] mColumnNames;
+
+    /**
+     * Pages in memory by page index, in the order of last access
+     */
+    private final LinkedHashMap<Integer, Cursor> mPages = new LinkedHashMap<Integer, Cursor>(MAX_RESIDENT_PAGES + 1, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Cursor> eldest) {
+            if (size() > MAX_RESIDENT_PAGES){
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Timestamp and record ID of the last transaction of each page read so far, by page index
+     */
+    private final List<long[]> mPageKeys = new ArrayList<long[]>();
+
+    /**
+     * Page holding the row at the current position
+     */
+    private Cursor mCurrentPage;
+
+    /**
+     * Creates the cursor and reads the first page of transactions
+     * @param transactionsDbAdapter Adapter for reading the pages. It must stay open as long as the cursor is used
+     * @param accountUID Unique ID of the account
+     * @param pageSize Number of transactions per page
+     */
+    public PagedTransactionsCursor(TransactionsDbAdapter transactionsDbAdapter, String accountUID, int pageSize){
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be positive");
+        mTransactionsDbAdapter = transactionsDbAdapter;
+        mAccountUID = accountUID;
+        mPageSize = pageSize;
+        mCount = transactionsDbAdapter.getTransactionsCount(accountUID);
+
+        Cursor firstPage = transactionsDbAdapter.fetchTransactionsWithBalanceForAccount(accountUID, pageSize);
+        mColumnNames = firstPage.getColumnNames();
+        addPage(0, firstPage);
+    }
+
+    /**
+     * Returns the number of transactions per page
+     * @return Page size
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns the number of pages currently held in memory
+     * @return Number of resident pages
+     */
+    public int getResidentPageCount(){
+        return mPages.size();
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        Cursor page = getPage(newPosition / mPageSize);
+        mCurrentPage = page;
+        return page != null && page.moveToPosition(newPosition % mPageSize);
+    }
+
+    /**
+     * Returns the page with the index, reading it and any unread previous pages from the database if needed
+     * @return Cursor to the page, or <code>null</code> if there are fewer pages
+     */
+    private Cursor getPage(int pageIndex){
+        Cursor page = mPages.get(pageIndex);
+        if (page != null)
+            return page;
+
+        //the key of the previous page is needed, so pages can only be read in order the first time
+        while (mPageKeys.size() < pageIndex){
+            if (readPage(mPageKeys.size()) == null)
+                return null;
+        }
+        return readPage(pageIndex);
+    }
+
+    /**
+     * Reads the page from the database. The key of the previous page must be known
+     */
+    private Cursor readPage(int pageIndex){
+        Cursor page = mPages.get(pageIndex);
+        if (page != null)
+            return page;
+
+        if (pageIndex == 0) {
+            page = mTransactionsDbAdapter.fetchTransactionsWithBalanceForAccount(mAccountUID, mPageSize);
+        } else {
+            long[] previousKey = mPageKeys.get(pageIndex - 1);
+            if (previousKey == null)
+                return null;
+            page = mTransactionsDbAdapter.fetchTransactionsWithBalanceForAccount(mAccountUID,
+                    previousKey[0], previousKey[1], mPageSize);
+        }
+        addPage(pageIndex, page);
+        return page;
+    }
+
+    /**
+     * Adds a page which was read to the resident pages and records its key
+     */
+    private void addPage(int pageIndex, Cursor page){
+        if (pageIndex == mPageKeys.size()){
+            long[] key = null;
+            //a short page is the last one, so there is no key for reading further
+            if (page.getCount() == mPageSize && page.moveToLast()){
+                key = new long[]{
+                        page.getLong(page.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP)),
+                        page.getLong(page.getColumnIndexOrThrow(TransactionEntry._ID))
+                };
+            }
+            mPageKeys.add(key);
+        }
+        mPages.put(pageIndex, page);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrentPage.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrentPage.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrentPage.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrentPage.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrentPage.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrentPage.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrentPage.getBlob(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrentPage.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        Iterator<Cursor> pages = mPages.values().iterator();
+        while (pages.hasNext()){
+            pages.next().close();
+            pages.remove();
+        }
+        mCurrentPage = null;
+    }
+}
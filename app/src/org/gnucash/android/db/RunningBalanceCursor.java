@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cursor to the transactions of an account which provides the running balance of the account after each transaction.
+ * <p>The wrapped cursor must be sorted with the most recent transaction first and hold the balance columns of
+ * {@link TransactionsDbAdapter#fetchTransactionsWithBalanceForAccount(String)}.
+ * The running balance of the first row is the balance of the account, and every following row is
+ * the running balance of the previous row minus the balance of the previous transaction.</p>
+ * <p>Running balances are checkpointed every {@link #CHECKPOINT_INTERVAL} rows as they are computed,
+ * so reading the running balance of any row reads at most {@link #CHECKPOINT_INTERVAL} rows,
+ * once the checkpoints up to that row exist</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see TransactionsDbAdapter#fetchTransactionsWithRunningBalanceForAccount(String)
+ */
+public class RunningBalanceCursor extends CursorWrapper {
+
+    /**
+     * Number of rows between two checkpoints of the running balance
+     */
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    /**
+     * Balance of the account after the most recent transaction
+     */
+    private final Money mAccountBalance;
+
+    /**
+     * Running balances of the rows at multiples of {@link #CHECKPOINT_INTERVAL}
+     */
+    private final List<BigDecimal> mCheckpoints = new ArrayList<BigDecimal>();
+
+    /**
+     * Position and value of the running balance computed last, which makes reading consecutive rows
+     * cost a single row step
+     */
+    private int mLastPosition = -1;
+    private BigDecimal mLastBalance;
+
+    private final int mAmountNumColumn;
+    private final int mAmountDenomColumn;
+
+    /**
+     * Creates a running balance cursor
+     * @param cursor Transactions of the account with their balances, most recent first
+     * @param accountBalance Balance of the account including all transactions of the cursor
+     */
+    public RunningBalanceCursor(Cursor cursor, Money accountBalance) {
+        super(cursor);
+        mAccountBalance = accountBalance;
+        mAmountNumColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM);
+        mAmountDenomColumn = cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_DENOM);
+        mCheckpoints.add(accountBalance.asBigDecimal());
+    }
+
+    /**
+     * Returns the balance of the account after the transaction at the current position
+     * @return Running balance of the account
+     * @throws IllegalStateException if the cursor is not positioned on a row
+     */
+    public Money getRunningBalance(){
+        int position = getPosition();
+        if (isBeforeFirst() || isAfterLast())
+            throw new IllegalStateException("Cursor is not positioned on a transaction");
+
+        BigDecimal balance;
+        if (position == mLastPosition){
+            balance = mLastBalance;
+        } else if (position == mLastPosition + 1 && position % CHECKPOINT_INTERVAL != 0){
+            balance = step(mLastBalance, mLastPosition, position);
+        } else {
+            int checkpoint = Math.min(position / CHECKPOINT_INTERVAL, mCheckpoints.size() - 1);
+            balance = step(mCheckpoints.get(checkpoint), checkpoint * CHECKPOINT_INTERVAL, position);
+        }
+        moveToPosition(position);
+
+        mLastPosition = position;
+        mLastBalance = balance;
+        return new Money(balance, mAccountBalance.getCurrency());
+    }
+
+    /**
+     * Computes the running balance of row <code>to</code> from the running balance of the earlier row <code>from</code>,
+     * recording the checkpoints passed on the way. The cursor position is changed
+     */
+    private BigDecimal step(BigDecimal balance, int from, int to){
+        MoneyAccumulator accumulator = new MoneyAccumulator(mAccountBalance.getCurrency());
+        accumulator.add(new Money(balance, mAccountBalance.getCurrency()));
+        for (int row = from; row < to; row++) {
+            moveToPosition(row);
+            accumulator.subtract(getLong(mAmountNumColumn), getLong(mAmountDenomColumn));
+            int next = row + 1;
+            if (next % CHECKPOINT_INTERVAL == 0 && next / CHECKPOINT_INTERVAL == mCheckpoints.size())
+                mCheckpoints.add(accumulator.toBigDecimal());
+        }
+        return accumulator.toBigDecimal();
+    }
+}
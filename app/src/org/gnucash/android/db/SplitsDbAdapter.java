@@ -21,14 +21,20 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
 import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
 import org.gnucash.android.model.TransactionType;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.gnucash.android.db.DatabaseSchema.*;
 
@@ -41,46 +47,236 @@ public class SplitsDbAdapter extends DatabaseAdapter {
 
     protected static final String TAG = "SplitsDbAdapter";
 
+    /**
+     * Adapter for the cached account balances which are updated whenever splits are written
+     */
+    private AccountBalancesDbAdapter mBalancesDbAdapter;
+
+    /**
+     * Column list and parameters of the statements which insert splits
+     */
+    private static final String SPLIT_INSERT_COLUMNS = SplitEntry.TABLE_NAME + " ( "
+            + SplitEntry.COLUMN_UID             + " , "
+            + SplitEntry.COLUMN_AMOUNT_NUM      + " , "
+            + SplitEntry.COLUMN_AMOUNT_DENOM    + " , "
+            + SplitEntry.COLUMN_TYPE            + " , "
+            + SplitEntry.COLUMN_MEMO            + " , "
+            + SplitEntry.COLUMN_ACCOUNT_UID     + " , "
+            + SplitEntry.COLUMN_TRANSACTION_UID + " ) VALUES ( ? , ? , ? , ? , ? , ? , ? )";
+
+    /**
+     * Compiled statement for inserting splits without lookups, see {@link #insertSplit(Split)}.
+     * It is compiled when first used
+     */
+    private SQLiteStatement mInsertSplitStatement;
+
+    /**
+     * Compiled statement for inserting or replacing splits by unique ID, see {@link #addSplits(java.util.Collection)}.
+     * It is compiled when first used
+     */
+    private SQLiteStatement mReplaceSplitStatement;
+
     public SplitsDbAdapter(Context context){
         super(context);
+        mBalancesDbAdapter = new AccountBalancesDbAdapter(mDb);
     }
 
     public SplitsDbAdapter(SQLiteDatabase db) {
         super(db);
+        mBalancesDbAdapter = new AccountBalancesDbAdapter(db);
+    }
+
+    /**
+     * Returns the adapter for the cached account balances, which shares the database of this adapter
+     * @return Account balances adapter
+     */
+    AccountBalancesDbAdapter getBalancesDbAdapter(){
+        return mBalancesDbAdapter;
     }
 
     /**
      * Adds a split to the database.
-     * If the split (with same unique ID) already exists, then it is simply updated
+     * If the split (with same unique ID) already exists, then it is simply updated.
+     * The cached balances of the affected accounts are updated in the same database transaction
      * @param split {@link org.gnucash.android.model.Split} to be recorded in DB
      * @return Record ID of the newly saved split
      */
     public long addSplit(Split split){
         ContentValues contentValues = new ContentValues();
         contentValues.put(SplitEntry.COLUMN_UID,        split.getUID());
-        contentValues.put(SplitEntry.COLUMN_AMOUNT,     split.getAmount().absolute().toPlainString());
+        Money amount = split.getAmount().absolute();
+        contentValues.put(SplitEntry.COLUMN_AMOUNT_NUM,     amount.getNumerator());
+        contentValues.put(SplitEntry.COLUMN_AMOUNT_DENOM,   getDecimalDenominator(amount));
         contentValues.put(SplitEntry.COLUMN_TYPE,       split.getType().name());
         contentValues.put(SplitEntry.COLUMN_MEMO,       split.getMemo());
         contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, split.getAccountUID());
         contentValues.put(SplitEntry.COLUMN_TRANSACTION_UID, split.getTransactionUID());
 
         long rowId = -1;
-        if ((rowId = getID(split.getUID())) > 0){
-            //if split already exists, then just update
-            Log.d(TAG, "Updating existing transaction split");
-            mDb.update(SplitEntry.TABLE_NAME, contentValues,
-                    SplitEntry._ID + " = " + rowId, null);
-        } else {
-            Log.d(TAG, "Adding new transaction split to db");
-            rowId = mDb.insert(SplitEntry.TABLE_NAME, null, contentValues);
-        }
+        mDb.beginTransaction();
+        try {
+            if ((rowId = getID(split.getUID())) > 0){
+                //if split already exists, then just update
+                Log.d(TAG, "Updating existing transaction split");
+                //the old amount no longer counts towards the balance of the (old) account
+                mBalancesDbAdapter.updateBalancesForSplits(
+                        SplitEntry.TABLE_NAME + "." + SplitEntry._ID + " = " + rowId, null, true);
+                mDb.update(SplitEntry.TABLE_NAME, contentValues,
+                        SplitEntry._ID + " = " + rowId, null);
+            } else {
+                Log.d(TAG, "Adding new transaction split to db");
+                rowId = mDb.insert(SplitEntry.TABLE_NAME, null, contentValues);
+            }
+
+            if (rowId > 0) {
+                mBalancesDbAdapter.updateBalancesForSplits(
+                        SplitEntry.TABLE_NAME + "." + SplitEntry._ID + " = " + rowId, null, false);
+            }
 
-        //when a split is updated, we want mark the transaction as not exported
-        updateRecord(TransactionEntry.TABLE_NAME, getTransactionID(split.getTransactionUID()),
-                TransactionEntry.COLUMN_EXPORTED, String.valueOf(rowId > 0 ? 0 : 1));
+            //when a split is updated, we want mark the transaction as not exported
+            updateRecord(TransactionEntry.TABLE_NAME, getTransactionID(split.getTransactionUID()),
+                    TransactionEntry.COLUMN_EXPORTED, String.valueOf(rowId > 0 ? 0 : 1));
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
         return rowId;
     }
 
+    /**
+     * Inserts a split into the database without checking for an existing split with the same unique ID.
+     * <p>This is meant for bulk imports into an empty database. The cached account balances are not updated,
+     * so the caller should wrap the inserts in a database transaction and rebuild the balances when done,
+     * see {@link AccountBalancesDbAdapter#rebuildBalances()}</p>
+     * @param split {@link org.gnucash.android.model.Split} to be inserted
+     * @return Record ID of the inserted split
+     */
+    public long insertSplit(Split split){
+        if (mInsertSplitStatement == null) {
+            mInsertSplitStatement = mDb.compileStatement("INSERT INTO " + SPLIT_INSERT_COLUMNS);
+        }
+        bindSplit(mInsertSplitStatement, split);
+        return mInsertSplitStatement.executeInsert();
+    }
+
+    /**
+     * Adds or replaces many splits in one database transaction.
+     * <p>Splits are written with a compiled <code>INSERT OR REPLACE</code> statement keyed on the unique ID,
+     * so an existing split with the same unique ID is replaced and gets a new record ID.
+     * The cached balances of the affected accounts are updated once for the whole collection and
+     * the transactions of the splits are marked as not exported</p>
+     * @param splits Splits to be written
+     * @return Number of splits written
+     */
+    public int addSplits(Collection<Split> splits){
+        List<String> splitUIDs = new ArrayList<String>(splits.size());
+        Set<String> transactionUIDs = new HashSet<String>();
+        for (Split split : splits) {
+            splitUIDs.add(split.getUID());
+            transactionUIDs.add(split.getTransactionUID());
+        }
+
+        int count = 0;
+        mDb.beginTransaction();
+        try {
+            //the old amounts no longer count towards the balances
+            mBalancesDbAdapter.updateBalancesForSplits(SplitEntry.COLUMN_UID, splitUIDs, true);
+            for (Split split : splits) {
+                if (replaceSplit(split) > 0)
+                    count++;
+            }
+            mBalancesDbAdapter.updateBalancesForSplits(SplitEntry.COLUMN_UID, splitUIDs, false);
+            markAsNotExported(new ArrayList<String>(transactionUIDs));
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Inserts the split, or replaces the split with the same unique ID, without updating the cached balances
+     * @param split Split to be written
+     * @return Record ID of the written split
+     */
+    long replaceSplit(Split split){
+        if (mReplaceSplitStatement == null) {
+            mReplaceSplitStatement = mDb.compileStatement("INSERT OR REPLACE INTO " + SPLIT_INSERT_COLUMNS);
+        }
+        bindSplit(mReplaceSplitStatement, split);
+        return mReplaceSplitStatement.executeInsert();
+    }
+
+    /**
+     * Deletes the splits with the given unique IDs without updating the cached balances
+     * @param splitUIDs Unique IDs of the splits
+     */
+    void deleteSplitRecords(List<String> splitUIDs){
+        for (int start = 0; start < splitUIDs.size(); start += MAX_SQL_ARGUMENTS) {
+            List<String> chunk = splitUIDs.subList(start, Math.min(start + MAX_SQL_ARGUMENTS, splitUIDs.size()));
+            mDb.delete(SplitEntry.TABLE_NAME, buildInCondition(SplitEntry.COLUMN_UID, chunk.size()),
+                    chunk.toArray(new String[chunk.size()]));
+        }
+    }
+
+    /**
+     * Returns the denominator under which an amount is stored in the splits table
+     * @param amount Amount of a split
+     * @return Denominator of the amount, a power of 10
+     * @throws IllegalArgumentException if the denominator is not a power of 10
+     * @see SplitEntry#COLUMN_AMOUNT_DENOM
+     */
+    static long getDecimalDenominator(Money amount){
+        long denominator = amount.getDenominator();
+        if (!Money.isDecimalDenominator(denominator))
+            throw new IllegalArgumentException("Split amounts must have a power of 10 denominator, got " + denominator);
+        return denominator;
+    }
+
+    /**
+     * Binds the attributes of the split to a statement compiled with {@link #SPLIT_INSERT_COLUMNS}
+     * @param statement Compiled insert statement
+     * @param split Split to be bound
+     */
+    private static void bindSplit(SQLiteStatement statement, Split split){
+        Money amount = split.getAmount().absolute();
+        statement.clearBindings();
+        statement.bindString(1, split.getUID());
+        statement.bindLong(2, amount.getNumerator());
+        statement.bindLong(3, getDecimalDenominator(amount));
+        statement.bindString(4, split.getType().name());
+        bindNullableString(statement, 5, split.getMemo());
+        statement.bindString(6, split.getAccountUID());
+        statement.bindString(7, split.getTransactionUID());
+    }
+
+    /**
+     * Marks the transactions with the given unique IDs as not exported
+     * @param transactionUIDs Unique IDs of the transactions
+     */
+    private void markAsNotExported(List<String> transactionUIDs){
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionEntry.COLUMN_EXPORTED, 0);
+        for (int start = 0; start < transactionUIDs.size(); start += MAX_SQL_ARGUMENTS) {
+            List<String> chunk = transactionUIDs.subList(start, Math.min(start + MAX_SQL_ARGUMENTS, transactionUIDs.size()));
+            mDb.update(TransactionEntry.TABLE_NAME, contentValues,
+                    buildInCondition(TransactionEntry.COLUMN_UID, chunk.size()), chunk.toArray(new String[chunk.size()]));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mInsertSplitStatement != null) {
+            mInsertSplitStatement.close();
+            mInsertSplitStatement = null;
+        }
+        if (mReplaceSplitStatement != null) {
+            mReplaceSplitStatement.close();
+            mReplaceSplitStatement = null;
+        }
+        super.close();
+    }
+
     /**
      * Builds a split instance from the data pointed to by the cursor provided
      * <p>This method will not move the cursor in any way. So the cursor should already by pointing to the correct entry</p>
@@ -89,14 +285,15 @@ public class SplitsDbAdapter extends DatabaseAdapter {
      */
     public Split buildSplitInstance(Cursor cursor){
         String uid          = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_UID));
-        String amountString = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_AMOUNT));
+        long amountNum      = cursor.getLong(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_AMOUNT_NUM));
+        long amountDenom    = cursor.getLong(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_AMOUNT_DENOM));
         String typeName     = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TYPE));
         String accountUID   = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_ACCOUNT_UID));
         String transxUID    = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TRANSACTION_UID));
         String memo         = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_MEMO));
 
         String currencyCode = getCurrencyCode(accountUID);
-        Money amount = new Money(amountString, currencyCode);
+        Money amount = new Money(amountNum, amountDenom, currencyCode);
 
         Split split = new Split(amount, accountUID);
         split.setUID(uid);
@@ -138,46 +335,44 @@ public class SplitsDbAdapter extends DatabaseAdapter {
     /**
      * Returns the sum of the splits for a given account.
      * This takes into account the kind of movement caused by the split in the account (which also depends on account type)
+     * <p>The split amounts are summed up in the database, grouped by split type and denominator</p>
      * @param accountUID String unique ID of account
      * @return Balance of the splits for this account
      */
     public Money computeSplitBalance(String accountUID){
-        Cursor cursor = fetchSplitsForAccount(accountUID);
         String currencyCode = getCurrencyCode(accountUID);
-        Money splitSum = new Money("0", currencyCode);
         AccountType accountType = getAccountType(accountUID);
+        MoneyAccumulator splitSum = new MoneyAccumulator(currencyCode);
+
+        //splits of recurring transactions do not count towards the balance
+        Cursor cursor = mDb.rawQuery("SELECT "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + ", "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_DENOM + ", "
+                + "SUM(" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_NUM + ")"
+                + " FROM " + SplitEntry.TABLE_NAME
+                + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0"
+                + " GROUP BY " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + ", "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_DENOM,
+                new String[]{accountUID});
 
         if (cursor != null){
             while(cursor.moveToNext()){
-                String amountString = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_AMOUNT));
-                String typeString = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TYPE));
-
-                TransactionType transactionType = TransactionType.valueOf(typeString);
-                Money amount = new Money(amountString, currencyCode);
-
-                if (accountType.hasDebitNormalBalance()){
-                    switch (transactionType) {
-                        case DEBIT:
-                            splitSum = splitSum.add(amount);
-                            break;
-                        case CREDIT:
-                            splitSum = splitSum.subtract(amount);
-                            break;
-                    }
-                } else {
-                    switch (transactionType) {
-                        case DEBIT:
-                            splitSum = splitSum.subtract(amount);
-                            break;
-                        case CREDIT:
-                            splitSum = splitSum.add(amount);
-                            break;
-                    }
-                }
+                TransactionType transactionType = TransactionType.valueOf(cursor.getString(0));
+                long amountDenom = cursor.getLong(1);
+                long amountNum = cursor.getLong(2);
+
+                if (Transaction.shouldDecreaseBalance(accountType, transactionType))
+                    splitSum.subtract(amountNum, amountDenom);
+                else
+                    splitSum.add(amountNum, amountDenom);
             }
             cursor.close();
         }
-        return splitSum;
+        return splitSum.toMoney();
     }
 
     /**
@@ -290,10 +485,16 @@ public class SplitsDbAdapter extends DatabaseAdapter {
             throw new IllegalArgumentException("Transaction UID cannot be null");
 
         Log.v(TAG, "Fetching all splits for transaction UID " + transactionUID);
-        return mDb.query(SplitEntry.TABLE_NAME,
-                null, SplitEntry.COLUMN_TRANSACTION_UID + " = ?",
-                new String[]{transactionUID},
-                null, null, null);
+        return mDb.rawQuery(buildSplitsForTransactionQuery(), new String[]{transactionUID});
+    }
+
+    /**
+     * Builds the query of {@link #fetchSplitsForTransaction(String)}. The argument is the transaction UID
+     * @return SQL query
+     */
+    public String buildSplitsForTransactionQuery(){
+        return SQLiteQueryBuilder.buildQueryString(false, SplitEntry.TABLE_NAME, null,
+                SplitEntry.COLUMN_TRANSACTION_UID + " = ?", null, null, null, null);
     }
 
     /**
@@ -338,7 +539,7 @@ public class SplitsDbAdapter extends DatabaseAdapter {
                 null, SplitEntry.COLUMN_TRANSACTION_UID + " = ? AND "
                 + SplitEntry.COLUMN_ACCOUNT_UID + " = ?",
                 new String[]{transactionUID, accountUID},
-                null, null, SplitEntry.COLUMN_AMOUNT + " ASC");
+                null, null, SplitEntry.COLUMN_AMOUNT_NUM + " * 1.0 / " + SplitEntry.COLUMN_AMOUNT_DENOM + " ASC");
     }
 
     /**
@@ -376,19 +577,29 @@ public class SplitsDbAdapter extends DatabaseAdapter {
     @Override
     public boolean deleteRecord(long rowId) {
         Split split = getSplit(rowId);
-        String transactionUID = split == null ? null : split.getTransactionUID();
-        boolean result = deleteRecord(SplitEntry.TABLE_NAME, rowId);
-
-        if (!result) //we didn't delete for whatever reason, invalid rowId etc
+        if (split == null) //invalid rowId, nothing to delete
             return false;
-
-        //if we just deleted the last split, then remove the transaction from db
-        Cursor cursor = fetchSplitsForTransaction(transactionUID);
-        if (cursor != null){
-            if (cursor.getCount() > 0){
-                result &= deleteTransaction(getTransactionID(transactionUID));
+        String transactionUID = split.getTransactionUID();
+
+        boolean result;
+        mDb.beginTransaction();
+        try {
+            mBalancesDbAdapter.updateBalancesForSplits(
+                    SplitEntry.TABLE_NAME + "." + SplitEntry._ID + " = " + rowId, null, true);
+            result = deleteRecord(SplitEntry.TABLE_NAME, rowId);
+
+            //if we just deleted the last split, then remove the transaction from db
+            Cursor cursor = result ? fetchSplitsForTransaction(transactionUID) : null;
+            if (cursor != null){
+                if (cursor.getCount() == 0){
+                    result &= deleteTransaction(getTransactionID(transactionUID));
+                }
+                cursor.close();
             }
-            cursor.close();
+            //always commit, a failed nested transaction would roll back any enclosing transaction
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
         }
         return result;
     }
@@ -434,10 +645,19 @@ public class SplitsDbAdapter extends DatabaseAdapter {
      */
     public boolean deleteSplitsForTransaction(long transactionId){
         String trxUID = getTransactionUID(transactionId);
-        boolean result = mDb.delete(SplitEntry.TABLE_NAME,
-                SplitEntry.COLUMN_TRANSACTION_UID + "=?",
-                new String[]{trxUID}) > 0;
-        result &= deleteTransaction(transactionId);
+        boolean result;
+        mDb.beginTransaction();
+        try {
+            mBalancesDbAdapter.updateBalancesForSplits(
+                    SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = ?", new String[]{trxUID}, true);
+            result = mDb.delete(SplitEntry.TABLE_NAME,
+                    SplitEntry.COLUMN_TRANSACTION_UID + "=?",
+                    new String[]{trxUID}) > 0;
+            result &= deleteTransaction(transactionId);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
         return result;
     }
 
@@ -450,10 +670,20 @@ public class SplitsDbAdapter extends DatabaseAdapter {
     public int deleteSplitsForTransactionAndAccount(long transactionId, long accountId){
         String transactionUID  = getTransactionUID(transactionId);
         String accountUID      = getAccountUID(accountId);
-        int deletedCount = mDb.delete(SplitEntry.TABLE_NAME,
-                SplitEntry.COLUMN_TRANSACTION_UID + "= ? AND " + SplitEntry.COLUMN_ACCOUNT_UID + "= ?",
-                new String[]{transactionUID, accountUID});
-        deleteTransaction(transactionId);
+        int deletedCount;
+        mDb.beginTransaction();
+        try {
+            //the transaction is deleted as well, so none of its splits count towards the balances anymore
+            mBalancesDbAdapter.updateBalancesForSplits(
+                    SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = ?", new String[]{transactionUID}, true);
+            deletedCount = mDb.delete(SplitEntry.TABLE_NAME,
+                    SplitEntry.COLUMN_TRANSACTION_UID + "= ? AND " + SplitEntry.COLUMN_ACCOUNT_UID + "= ?",
+                    new String[]{transactionUID, accountUID});
+            deleteTransaction(transactionId);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
         return deletedCount;
     }
 
@@ -467,6 +697,7 @@ public class SplitsDbAdapter extends DatabaseAdapter {
 
     @Override
     public int deleteAllRecords() {
+        mBalancesDbAdapter.deleteAllRecords();
         return deleteAllRecords(SplitEntry.TABLE_NAME);
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Iterator over transactions together with their splits, which reads them from two cursors in the same order.
+ * <p>The transactions cursor holds one row per transaction, the splits cursor holds the splits of the same transactions
+ * sorted in the same order, so that the splits of each transaction are consecutive.
+ * Both cursors are read in a single pass and the splits are attached to their transaction as it is built,
+ * so iterating any number of transactions takes two queries</p>
+ * <p>Without a splits cursor, the transactions are built with {@link TransactionsDbAdapter#buildTransactionInstance(Cursor)}.
+ * This is used for databases in the legacy format, whose transaction rows hold the splits</p>
+ * <p>The iterator must be closed when it is no longer used</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see TransactionsDbAdapter#iterateTransactions(String, String[], String)
+ */
+public class TransactionIterator implements Iterator<Transaction> {
+
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final SplitsDbAdapter mSplitsDbAdapter;
+    private final Cursor mTransactionsCursor;
+
+    /**
+     * Cursor to the splits of the transactions, or <code>null</code> for the legacy database format
+     */
+    private final Cursor mSplitsCursor;
+
+    /**
+     * Set while the splits cursor points to a split which has not been attached to a transaction yet
+     */
+    private boolean mHasPendingSplit;
+
+    TransactionIterator(TransactionsDbAdapter transactionsDbAdapter, SplitsDbAdapter splitsDbAdapter,
+                        Cursor transactionsCursor, Cursor splitsCursor){
+        mTransactionsDbAdapter = transactionsDbAdapter;
+        mSplitsDbAdapter = splitsDbAdapter;
+        mTransactionsCursor = transactionsCursor;
+        mSplitsCursor = splitsCursor;
+        mHasPendingSplit = splitsCursor != null && splitsCursor.moveToFirst();
+    }
+
+    /**
+     * Returns the number of transactions the iterator returns in total
+     * @return Number of transactions
+     */
+    public int getCount(){
+        return mTransactionsCursor.getCount();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mTransactionsCursor.getPosition() < mTransactionsCursor.getCount() - 1;
+    }
+
+    @Override
+    public Transaction next() {
+        if (!mTransactionsCursor.moveToNext())
+            throw new NoSuchElementException();
+        if (mSplitsCursor == null)
+            return mTransactionsDbAdapter.buildTransactionInstance(mTransactionsCursor);
+
+        Transaction transaction = mTransactionsDbAdapter.buildSimpleTransactionInstance(mTransactionsCursor);
+        String transactionUID = transaction.getUID();
+        int transactionUIDColumn = mSplitsCursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TRANSACTION_UID);
+        List<Split> splits = new ArrayList<Split>();
+        while (mHasPendingSplit && transactionUID.equals(mSplitsCursor.getString(transactionUIDColumn))){
+            splits.add(mSplitsDbAdapter.buildSplitInstance(mSplitsCursor));
+            mHasPendingSplit = mSplitsCursor.moveToNext();
+        }
+        transaction.setSplits(splits);
+        return transaction;
+    }
+
+    /**
+     * Not supported, transactions are deleted through {@link TransactionsDbAdapter}
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Transactions cannot be removed through the iterator");
+    }
+
+    /**
+     * Closes the cursors of the iterator
+     */
+    public void close(){
+        mTransactionsCursor.close();
+        if (mSplitsCursor != null)
+            mSplitsCursor.close();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Database adapter for the queue of transactions received through intents.
+ * <p>Receiving a transaction only appends it to the queue, which is a single small insert. The queue is later
+ * drained in batches with {@link #recordBatch(int)}, which writes each batch of transactions and removes it from
+ * the queue in one database transaction, so a batch is either recorded and dequeued or left in the queue.</p>
+ * <p>Transactions are identified by their unique ID: a transaction which is already queued is not queued again,
+ * and a queued transaction which already exists in the database is dropped instead of being recorded.
+ * Receiving the same transaction several times therefore records it once</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class TransactionQueueDbAdapter extends DatabaseAdapter {
+
+    /**
+     * Default number of transactions recorded per database transaction
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+
+    public TransactionQueueDbAdapter(Context context) {
+        super(context);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(mDb);
+    }
+
+    public TransactionQueueDbAdapter(SQLiteDatabase db) {
+        super(db);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(db);
+    }
+
+    /**
+     * Appends a transaction to the queue. Nothing is queued if a transaction with the same unique ID is queued already
+     * @param transaction Transaction to be recorded later
+     * @return Record ID of the queue entry, or -1 if the transaction was already queued
+     */
+    public long enqueue(Transaction transaction){
+        StringBuilder splits = new StringBuilder();
+        for (Split split : transaction.getSplits()) {
+            splits.append(encodeSplit(split)).append("\n");
+        }
+
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionQueueEntry.COLUMN_UID,         transaction.getUID());
+        contentValues.put(TransactionQueueEntry.COLUMN_DESCRIPTION, transaction.getDescription());
+        contentValues.put(TransactionQueueEntry.COLUMN_NOTES,       transaction.getNote());
+        contentValues.put(TransactionQueueEntry.COLUMN_CURRENCY,    transaction.getCurrencyCode());
+        contentValues.put(TransactionQueueEntry.COLUMN_TIMESTAMP,   transaction.getTimeMillis());
+        contentValues.put(TransactionQueueEntry.COLUMN_SPLITS,      splits.toString());
+        return mDb.insertWithOnConflict(TransactionQueueEntry.TABLE_NAME, null, contentValues,
+                SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * Returns the number of transactions in the queue
+     * @return Number of queued transactions
+     */
+    public long getQueuedCount(){
+        Cursor cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + TransactionQueueEntry.TABLE_NAME, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the oldest transactions of the queue and removes them from the queue, in one database transaction.
+     * <p>Transactions which already exist in the database are removed from the queue without being recorded.
+     * Entries which cannot be read or written are logged and removed, so that they do not block the queue:
+     * if writing the batch fails, its transactions are recorded one at a time</p>
+     * @param batchSize Maximum number of queued transactions to process
+     * @return Number of queue entries processed, 0 if the queue is empty
+     */
+    public int recordBatch(int batchSize){
+        batchSize = Math.min(batchSize, MAX_SQL_ARGUMENTS);
+        List<Long> entryIds = new ArrayList<Long>(batchSize);
+        List<Transaction> transactions = new ArrayList<Transaction>(batchSize);
+        List<Long> droppedEntryIds = new ArrayList<Long>();
+        int entryCount = 0;
+
+        Cursor cursor = mDb.query(TransactionQueueEntry.TABLE_NAME, null, null, null, null, null,
+                TransactionQueueEntry._ID + " ASC", String.valueOf(batchSize));
+        try {
+            while (cursor.moveToNext()){
+                entryCount++;
+                long entryId = cursor.getLong(cursor.getColumnIndexOrThrow(TransactionQueueEntry._ID));
+                try {
+                    transactions.add(buildTransactionInstance(cursor));
+                    entryIds.add(entryId);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Dropping queued transaction which cannot be read: " + e.getMessage());
+                    droppedEntryIds.add(entryId);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        try {
+            recordEntries(entryIds, transactions);
+        } catch (SQLException e) {
+            Log.e(TAG, "Recording queued transactions failed, recording them one by one: " + e.getMessage());
+            for (int i = 0; i < entryIds.size(); i++) {
+                try {
+                    recordEntries(entryIds.subList(i, i + 1), transactions.subList(i, i + 1));
+                } catch (SQLException transactionException) {
+                    Log.e(TAG, "Dropping queued transaction which cannot be recorded: " + transactionException.getMessage());
+                    droppedEntryIds.add(entryIds.get(i));
+                }
+            }
+        }
+        recordEntries(droppedEntryIds, new ArrayList<Transaction>());
+        return entryCount;
+    }
+
+    /**
+     * Records the transactions which do not exist yet and removes the queue entries, in one database transaction
+     * @param entryIds Record IDs of the queue entries to be removed
+     * @param transactions Transactions of the queue entries
+     */
+    private void recordEntries(List<Long> entryIds, List<Transaction> transactions){
+        if (entryIds.isEmpty())
+            return;
+
+        mDb.beginTransaction();
+        try {
+            Set<String> existingUIDs = getExistingTransactionUIDs(transactions);
+            List<Transaction> newTransactions = new ArrayList<Transaction>(transactions.size());
+            for (Transaction transaction : transactions) {
+                if (existingUIDs.add(transaction.getUID()))
+                    newTransactions.add(transaction);
+            }
+            if (!newTransactions.isEmpty())
+                mTransactionsDbAdapter.addTransactions(newTransactions);
+
+            String[] idArgs = new String[entryIds.size()];
+            for (int i = 0; i < idArgs.length; i++) {
+                idArgs[i] = String.valueOf(entryIds.get(i));
+            }
+            mDb.delete(TransactionQueueEntry.TABLE_NAME,
+                    buildInCondition(TransactionQueueEntry._ID, idArgs.length), idArgs);
+            mDb.setTransactionSuccessful();
+            Log.d(TAG, "Recorded " + newTransactions.size() + " of " + entryIds.size() + " queued transactions");
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Returns which of the transactions already exist in the database
+     * @param transactions At most {@link #MAX_SQL_ARGUMENTS} transactions
+     * @return Unique IDs of the transactions which exist in the database
+     */
+    private Set<String> getExistingTransactionUIDs(List<Transaction> transactions){
+        Set<String> existingUIDs = new HashSet<String>();
+        if (transactions.isEmpty())
+            return existingUIDs;
+
+        String[] uidArgs = new String[transactions.size()];
+        for (int i = 0; i < uidArgs.length; i++) {
+            uidArgs[i] = transactions.get(i).getUID();
+        }
+        Cursor cursor = mDb.query(TransactionEntry.TABLE_NAME, new String[]{TransactionEntry.COLUMN_UID},
+                buildInCondition(TransactionEntry.COLUMN_UID, uidArgs.length), uidArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()){
+                existingUIDs.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return existingUIDs;
+    }
+
+    /**
+     * Builds a transaction from a queue entry
+     * @param c Cursor pointing to the queue entry
+     * @return Transaction with its splits
+     */
+    private Transaction buildTransactionInstance(Cursor c){
+        Transaction transaction = new Transaction(c.getString(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_DESCRIPTION)));
+        transaction.setUID(c.getString(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_UID)));
+        transaction.setNote(c.getString(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_NOTES)));
+        transaction.setCurrencyCode(c.getString(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_CURRENCY)));
+        transaction.setTime(c.getLong(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_TIMESTAMP)));
+
+        String splits = c.getString(c.getColumnIndexOrThrow(TransactionQueueEntry.COLUMN_SPLITS));
+        if (splits != null) {
+            for (String line : splits.split("\n")) {
+                if (line.length() > 0)
+                    transaction.addSplit(decodeSplit(line));
+            }
+        }
+        return transaction;
+    }
+
+    /**
+     * Encodes a split for the queue, independently of the locale.
+     * <p>The format is "&lt;numerator&gt;;&lt;denominator&gt;;&lt;currency_code&gt;;&lt;account_uid&gt;;&lt;type&gt;[;&lt;memo&gt;]".
+     * The amount is stored exactly as a rational number, and the account UID and memo are URI-encoded,
+     * so that they cannot contain the separators</p>
+     * @param split Split to be queued
+     * @return Single line of text, which is read with {@link #decodeSplit(String)}
+     */
+    private static String encodeSplit(Split split){
+        Money amount = split.getAmount();
+        StringBuilder splitString = new StringBuilder()
+                .append(amount.getNumerator()).append(';')
+                .append(amount.getDenominator()).append(';')
+                .append(amount.getCurrency().getCurrencyCode()).append(';')
+                .append(Uri.encode(split.getAccountUID())).append(';')
+                .append(split.getType().name());
+        if (split.getMemo() != null)
+            splitString.append(';').append(Uri.encode(split.getMemo()));
+        return splitString.toString();
+    }
+
+    /**
+     * Decodes a split written by {@link #encodeSplit(Split)}
+     * @param splitString Encoded split
+     * @return Split with the same amount, account, type and memo
+     */
+    private static Split decodeSplit(String splitString){
+        String[] tokens = splitString.split(";", -1);
+        Money amount = new Money(Money.rationalToDecimal(Long.parseLong(tokens[0]), Long.parseLong(tokens[1])),
+                Currency.getInstance(tokens[2]));
+        Split split = new Split(amount, Uri.decode(tokens[3]));
+        split.setType(TransactionType.valueOf(tokens[4]));
+        if (tokens.length > 5)
+            split.setMemo(Uri.decode(tokens[5]));
+        return split;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        mTransactionsDbAdapter.close();
+    }
+
+    @Override
+    public Cursor fetchRecord(long rowId) {
+        return fetchRecord(TransactionQueueEntry.TABLE_NAME, rowId);
+    }
+
+    @Override
+    public Cursor fetchAllRecords() {
+        return fetchAllRecords(TransactionQueueEntry.TABLE_NAME);
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        return deleteRecord(TransactionQueueEntry.TABLE_NAME, rowId);
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        return deleteAllRecords(TransactionQueueEntry.TABLE_NAME);
+    }
+}
@@ -25,10 +25,13 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
+import org.gnucash.android.export.ExportSink;
 import org.gnucash.android.model.*;
 import static org.gnucash.android.db.DatabaseSchema.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -39,7 +42,57 @@ import java.util.List;
  */
 public class TransactionsDbAdapter extends DatabaseAdapter {
 
+    /**
+     * Column of the cursor returned by {@link #fetchTransactionsWithBalanceForAccount(String)} which holds
+     * the numerator of the balance of the transaction for the account
+     */
+    public static final String COLUMN_BALANCE_AMOUNT_NUM    = "balance_amount_num";
+
+    /**
+     * Column of the cursor returned by {@link #fetchTransactionsWithBalanceForAccount(String)} which holds
+     * the denominator of the balance of the transaction for the account
+     */
+    public static final String COLUMN_BALANCE_AMOUNT_DENOM  = "balance_amount_denom";
+
+    /**
+     * Column of the cursor returned by {@link #fetchTransactionsWithBalanceForAccount(String)} which holds
+     * the currency code of the account
+     */
+    public static final String COLUMN_BALANCE_CURRENCY      = "balance_currency_code";
+
+    /**
+     * Sort order of the transactions of an account, with the most recent transactions first
+     * @see #iterateTransactionsForAccount(String, boolean)
+     */
+    public static final String ACCOUNT_TRANSACTIONS_SORT_ORDER =
+            TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC";
+
     SplitsDbAdapter mSplitsDbAdapter;
+
+    /**
+     * Column list and parameters of the statements which insert transactions
+     */
+    private static final String TRANSACTION_INSERT_COLUMNS = TransactionEntry.TABLE_NAME + " ( "
+            + TransactionEntry.COLUMN_DESCRIPTION   + " , "
+            + TransactionEntry.COLUMN_UID           + " , "
+            + TransactionEntry.COLUMN_TIMESTAMP     + " , "
+            + TransactionEntry.COLUMN_NOTES         + " , "
+            + TransactionEntry.COLUMN_EXPORTED      + " , "
+            + TransactionEntry.COLUMN_CURRENCY      + " , "
+            + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " ) VALUES ( ? , ? , ? , ? , ? , ? , ? )";
+
+    /**
+     * Compiled statement for inserting transactions without lookups, see {@link #insertTransaction(Transaction)}.
+     * It is compiled when first used
+     */
+    private SQLiteStatement mInsertTransactionStatement;
+
+    /**
+     * Compiled statement for inserting or replacing transactions by unique ID,
+     * see {@link #addTransactions(java.util.Collection)}. It is compiled when first used
+     */
+    private SQLiteStatement mReplaceTransactionStatement;
+
 	/**
 	 * Constructor. 
 	 * Calls to the base class to open the database
@@ -47,7 +100,8 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
 	 */
 	public TransactionsDbAdapter(Context context) {
 		super(context);
-        mSplitsDbAdapter = new SplitsDbAdapter(context);
+        //share the database connection, so that splits are written in the same database transaction
+        mSplitsDbAdapter = new SplitsDbAdapter(mDb);
 	}
 
     /**
@@ -61,6 +115,14 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
 
     @Override
     public void close() {
+        if (mInsertTransactionStatement != null) {
+            mInsertTransactionStatement.close();
+            mInsertTransactionStatement = null;
+        }
+        if (mReplaceTransactionStatement != null) {
+            mReplaceTransactionStatement.close();
+            mReplaceTransactionStatement = null;
+        }
         super.close();
         mSplitsDbAdapter.close();
     }
@@ -83,25 +145,147 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
         contentValues.put(TransactionEntry.COLUMN_RECURRENCE_PERIOD, transaction.getRecurrencePeriod());
 
 		long rowId = -1;
-		if ((rowId = fetchTransactionWithUID(transaction.getUID())) > 0){
-			//if transaction already exists, then just update
-			Log.d(TAG, "Updating existing transaction");
-			mDb.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry._ID + " = " + rowId, null);
-		} else {
-			Log.d(TAG, "Adding new transaction to db");
-			rowId = mDb.insert(TransactionEntry.TABLE_NAME, null, contentValues);
-		}	
-
-        if (rowId > 0){
-            Log.d(TAG, "Adding splits for transaction");
-            for (Split split : transaction.getSplits()) {
-                mSplitsDbAdapter.addSplit(split);
+        mDb.beginTransaction();
+        try {
+            if ((rowId = fetchTransactionWithUID(transaction.getUID())) > 0){
+                //if transaction already exists, then just update
+                Log.d(TAG, "Updating existing transaction");
+                boolean recurrenceChanged = getRecurrencePeriod(rowId) != transaction.getRecurrencePeriod();
+                String splitsCondition = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = ?";
+                String[] splitsArgs = new String[]{transaction.getUID()};
+                //recurring transactions do not count towards the account balances
+                if (recurrenceChanged)
+                    mSplitsDbAdapter.getBalancesDbAdapter().updateBalancesForSplits(splitsCondition, splitsArgs, true);
+                mDb.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry._ID + " = " + rowId, null);
+                if (recurrenceChanged)
+                    mSplitsDbAdapter.getBalancesDbAdapter().updateBalancesForSplits(splitsCondition, splitsArgs, false);
+            } else {
+                Log.d(TAG, "Adding new transaction to db");
+                rowId = mDb.insert(TransactionEntry.TABLE_NAME, null, contentValues);
             }
-            Log.d(TAG, transaction.getSplits().size() + " splits added");
+
+            if (rowId > 0){
+                Log.d(TAG, "Adding splits for transaction");
+                for (Split split : transaction.getSplits()) {
+                    mSplitsDbAdapter.addSplit(split);
+                }
+                Log.d(TAG, transaction.getSplits().size() + " splits added");
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
         }
 		return rowId;
 	}
 
+    /**
+     * Inserts a transaction and its splits into the database without checking for existing records
+     * with the same unique IDs.
+     * <p>This is meant for bulk imports into an empty database. The cached account balances are not updated,
+     * so the caller should wrap the inserts in a database transaction and rebuild the balances when done,
+     * see {@link AccountBalancesDbAdapter#rebuildBalances()}</p>
+     * @param transaction {@link Transaction} to be inserted
+     * @return Database row ID of the inserted transaction
+     */
+    public long insertTransaction(Transaction transaction){
+        if (mInsertTransactionStatement == null) {
+            mInsertTransactionStatement = mDb.compileStatement("INSERT INTO " + TRANSACTION_INSERT_COLUMNS);
+        }
+        bindTransaction(mInsertTransactionStatement, transaction);
+        long rowId = mInsertTransactionStatement.executeInsert();
+
+        for (Split split : transaction.getSplits()) {
+            mSplitsDbAdapter.insertSplit(split);
+        }
+        return rowId;
+    }
+
+    /**
+     * Adds or replaces many transactions and their splits in one database transaction.
+     * <p>Transactions and splits are written with compiled <code>INSERT OR REPLACE</code> statements keyed
+     * on the unique ID, so existing records with the same unique ID are replaced and get new record IDs.
+     * Splits of existing transactions which are not part of the new transactions are kept.
+     * The cached balances of the affected accounts are updated once for the whole collection</p>
+     * @param transactions Transactions to be written
+     * @return Number of transactions written
+     */
+    public int addTransactions(Collection<Transaction> transactions){
+        List<String> transactionUIDs = new ArrayList<String>(transactions.size());
+        List<String> splitUIDs = new ArrayList<String>();
+        for (Transaction transaction : transactions) {
+            transactionUIDs.add(transaction.getUID());
+            for (Split split : transaction.getSplits()) {
+                splitUIDs.add(split.getUID());
+            }
+        }
+
+        AccountBalancesDbAdapter balancesDbAdapter = mSplitsDbAdapter.getBalancesDbAdapter();
+        int count = 0;
+        mDb.beginTransaction();
+        try {
+            //remove the old splits which are replaced, wherever they are, and the remaining splits of the
+            //replaced transactions from the balances, since the recurrence of the transactions may change
+            balancesDbAdapter.updateBalancesForSplits(SplitEntry.COLUMN_UID, splitUIDs, true);
+            mSplitsDbAdapter.deleteSplitRecords(splitUIDs);
+            balancesDbAdapter.updateBalancesForSplits(SplitEntry.COLUMN_TRANSACTION_UID, transactionUIDs, true);
+
+            if (mReplaceTransactionStatement == null) {
+                mReplaceTransactionStatement = mDb.compileStatement("INSERT OR REPLACE INTO " + TRANSACTION_INSERT_COLUMNS);
+            }
+            for (Transaction transaction : transactions) {
+                bindTransaction(mReplaceTransactionStatement, transaction);
+                if (mReplaceTransactionStatement.executeInsert() > 0)
+                    count++;
+                for (Split split : transaction.getSplits()) {
+                    mSplitsDbAdapter.replaceSplit(split);
+                }
+            }
+
+            balancesDbAdapter.updateBalancesForSplits(SplitEntry.COLUMN_TRANSACTION_UID, transactionUIDs, false);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Binds the attributes of the transaction to a statement compiled with {@link #TRANSACTION_INSERT_COLUMNS}
+     * @param statement Compiled insert statement
+     * @param transaction Transaction to be bound
+     */
+    private static void bindTransaction(SQLiteStatement statement, Transaction transaction){
+        //adding splits marks the transaction as not exported, see SplitsDbAdapter#addSplit(Split)
+        boolean exported = transaction.isExported() && transaction.getSplits().isEmpty();
+        statement.clearBindings();
+        bindNullableString(statement, 1, transaction.getDescription());
+        statement.bindString(2, transaction.getUID());
+        statement.bindLong(3, transaction.getTimeMillis());
+        bindNullableString(statement, 4, transaction.getNote());
+        statement.bindLong(5, exported ? 1 : 0);
+        statement.bindString(6, transaction.getCurrencyCode());
+        statement.bindLong(7, transaction.getRecurrencePeriod());
+    }
+
+    /**
+     * Returns the recurrence period of the transaction
+     * @param rowId Database record ID of the transaction
+     * @return Recurrence period in milliseconds, 0 if the transaction is not recurring
+     */
+    private long getRecurrencePeriod(long rowId){
+        Cursor cursor = mDb.query(TransactionEntry.TABLE_NAME,
+                new String[]{TransactionEntry.COLUMN_RECURRENCE_PERIOD},
+                TransactionEntry._ID + " = " + rowId, null, null, null, null);
+        long recurrencePeriod = 0;
+        if (cursor != null){
+            if (cursor.moveToFirst()){
+                recurrencePeriod = cursor.getLong(0);
+            }
+            cursor.close();
+        }
+        return recurrencePeriod;
+    }
+
     /**
 	 * Fetch a transaction from the database which has a unique ID <code>uid</code>
 	 * @param uid Unique Identifier of transaction to be retrieved
@@ -163,22 +347,185 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
                             + " AND " + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0",
                     null, null, null, TransactionEntry.COLUMN_TIMESTAMP + " DESC");
         } else {
-            SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
-            queryBuilder.setTables(TransactionEntry.TABLE_NAME
-                    + " INNER JOIN " + SplitEntry.TABLE_NAME + " ON "
-                    + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
-                    + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID);
-            queryBuilder.setDistinct(true);
-            String[] projectionIn = new String[]{TransactionEntry.TABLE_NAME + ".*"};
-            String selection = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
-                    + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0";
-            String[] selectionArgs = new String[]{accountUID};
-            String sortOrder = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " DESC";
-
-            return queryBuilder.query(mDb, projectionIn, selection, selectionArgs, null, null, sortOrder);
+            return mDb.rawQuery(buildTransactionsForAccountQuery(), new String[]{accountUID});
         }
 	}
 
+    /**
+     * Builds the query of {@link #fetchAllTransactionsForAccount(String)}, which joins the splits of the account
+     * with their transactions. The argument is the account UID
+     * @return SQL query
+     */
+    public String buildTransactionsForAccountQuery(){
+        return SQLiteQueryBuilder.buildQueryString(true,
+                TransactionEntry.TABLE_NAME + " INNER JOIN " + SplitEntry.TABLE_NAME + " ON "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID,
+                new String[]{TransactionEntry.TABLE_NAME + ".*"},
+                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                        + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0",
+                null, null, ACCOUNT_TRANSACTIONS_SORT_ORDER, null);
+    }
+
+    /**
+     * Returns a cursor to the transactions of an account, together with the balance of each transaction
+     * for the account, sorted by time with the most recent first and then by record ID.
+     * <p>The balance is the sum of the splits of the transaction in the account, computed in the query and
+     * signed as in {@link Transaction#computeBalance(String, java.util.List)}. It is held in the columns
+     * {@link #COLUMN_BALANCE_AMOUNT_NUM}, {@link #COLUMN_BALANCE_AMOUNT_DENOM} and {@link #COLUMN_BALANCE_CURRENCY},
+     * so that lists can display the balances without querying the database per transaction.
+     * Recurring transactions are excluded</p>
+     * @param accountUID Unique ID of the account
+     * @return Cursor to the transactions with their balances
+     */
+    public Cursor fetchTransactionsWithBalanceForAccount(String accountUID){
+        if (accountUID == null)
+            throw new IllegalArgumentException("Unique ID of the account cannot be null");
+
+        return mDb.rawQuery(buildBalanceQuery(false, 0), new String[]{accountUID, accountUID, accountUID, accountUID});
+    }
+
+    /**
+     * Returns one page of the transactions of an account with their balances, in the order of
+     * {@link #fetchTransactionsWithBalanceForAccount(String)}.
+     * <p>Pages are selected by the key (timestamp and record ID) of the last transaction of the previous page,
+     * so that every page is read from the timestamp index without skipping the earlier pages</p>
+     * @param accountUID Unique ID of the account
+     * @param afterTimestamp Timestamp of the last transaction of the previous page
+     * @param afterId Database record ID of the last transaction of the previous page
+     * @param limit Maximum number of transactions in the page
+     * @return Cursor to the transactions of the page with their balances
+     * @see #fetchTransactionsWithBalanceForAccount(String, int)
+     */
+    public Cursor fetchTransactionsWithBalanceForAccount(String accountUID, long afterTimestamp, long afterId, int limit){
+        if (accountUID == null)
+            throw new IllegalArgumentException("Unique ID of the account cannot be null");
+
+        String timestamp = Long.toString(afterTimestamp);
+        return mDb.rawQuery(buildBalanceQuery(true, limit), new String[]{accountUID, accountUID,
+                timestamp, timestamp, Long.toString(afterId), accountUID, accountUID});
+    }
+
+    /**
+     * Returns the first page of the transactions of an account with their balances
+     * @param accountUID Unique ID of the account
+     * @param limit Maximum number of transactions in the page
+     * @return Cursor to the most recent transactions with their balances
+     * @see #fetchTransactionsWithBalanceForAccount(String, long, long, int)
+     */
+    public Cursor fetchTransactionsWithBalanceForAccount(String accountUID, int limit){
+        if (accountUID == null)
+            throw new IllegalArgumentException("Unique ID of the account cannot be null");
+
+        return mDb.rawQuery(buildBalanceQuery(false, limit), new String[]{accountUID, accountUID, accountUID, accountUID});
+    }
+
+    /**
+     * Builds the query for the transactions of an account with their balances.
+     * <p>The inner query selects the transactions, optionally after a key and limited to a page,
+     * together with the largest denominator of their splits in the account. The stored denominators are powers of 10
+     * (see {@link SplitsDbAdapter#getDecimalDenominator(Money)}), so the largest one is a multiple of all others
+     * and serves as common denominator for summing up the splits in the outer query.
+     * The joins are forced into this order, so that the splits are looked up per selected transaction</p>
+     * <p>The arguments are the account UID twice, the timestamp twice and record ID of the key if <code>afterKey</code>
+     * is set, and the account UID twice again</p>
+     * @param afterKey Whether to select only transactions after a timestamp and record ID
+     * @param limit Maximum number of transactions, or 0 for all transactions
+     * @return SQL query
+     */
+    public String buildBalanceQuery(boolean afterKey, int limit){
+        StringBuilder debitNormalTypes = new StringBuilder();
+        for (AccountType accountType : AccountType.values()) {
+            if (accountType.hasDebitNormalBalance()){
+                debitNormalTypes.append(debitNormalTypes.length() == 0 ? "'" : ", '").append(accountType.name()).append("'");
+            }
+        }
+
+        String transactionUID = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID;
+        String timestamp = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP;
+        String transactionId = TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID;
+        String pageQuery = "SELECT " + TransactionEntry.TABLE_NAME + ".*, "
+                + "(SELECT MAX(" + SplitEntry.COLUMN_AMOUNT_DENOM + ") FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_TRANSACTION_UID + " = " + transactionUID
+                + " AND " + SplitEntry.COLUMN_ACCOUNT_UID + " = ?) AS " + COLUMN_BALANCE_AMOUNT_DENOM
+                + " FROM " + TransactionEntry.TABLE_NAME
+                + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0"
+                + " AND EXISTS (SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_TRANSACTION_UID + " = " + transactionUID
+                + " AND " + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)";
+        if (afterKey){
+            //written as a range on the timestamp, so that the timestamp index can be used
+            pageQuery += " AND " + timestamp + " <= ? AND (" + timestamp + " < ? OR " + transactionId + " < ?)";
+        }
+        pageQuery += " ORDER BY " + timestamp + " DESC, " + transactionId + " DESC";
+        if (limit > 0){
+            pageQuery += " LIMIT " + limit;
+        }
+
+        String splitSum = "SUM(CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = '" + TransactionType.DEBIT.name() + "'"
+                + " THEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_NUM
+                + " ELSE -" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_NUM + " END"
+                + " * (page." + COLUMN_BALANCE_AMOUNT_DENOM + " / " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_AMOUNT_DENOM + "))";
+
+        return "SELECT page.*, "
+                + "CASE WHEN " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_TYPE + " IN (" + debitNormalTypes + ")"
+                + " THEN " + splitSum + " ELSE -" + splitSum + " END AS " + COLUMN_BALANCE_AMOUNT_NUM + ", "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS " + COLUMN_BALANCE_CURRENCY
+                + " FROM (" + pageQuery + ") page"
+                + " CROSS JOIN " + SplitEntry.TABLE_NAME + " ON "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = page." + TransactionEntry.COLUMN_UID
+                + " AND " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                + " CROSS JOIN " + AccountEntry.TABLE_NAME + " ON "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = ?"
+                + " GROUP BY page." + TransactionEntry._ID
+                + " ORDER BY page." + TransactionEntry.COLUMN_TIMESTAMP + " DESC, page." + TransactionEntry._ID + " DESC";
+    }
+
+    /**
+     * Returns the number of transactions of an account, excluding recurring transactions.
+     * <p>This is the number of rows of {@link #fetchTransactionsWithBalanceForAccount(String)}</p>
+     * @param accountUID Unique ID of the account
+     * @return Number of transactions in the account
+     */
+    public int getTransactionsCount(String accountUID){
+        Cursor cursor = mDb.rawQuery(buildTransactionsCountQuery(), new String[]{accountUID});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Builds the query of {@link #getTransactionsCount(String)}. The argument is the account UID.
+     * <p>The count starts from the splits of the account, so that only the transactions of the account are read</p>
+     * @return SQL query
+     */
+    public String buildTransactionsCountQuery(){
+        return "SELECT COUNT(DISTINCT " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + ")"
+                + " FROM " + SplitEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " WHERE " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                + " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0";
+    }
+
+    /**
+     * Returns a cursor to the transactions of an account with their balances, which also provides the running
+     * balance of the account after each transaction.
+     * <p>The transactions are read page by page as the cursor is moved, see {@link PagedTransactionsCursor},
+     * and the running balances are accumulated from the balance of the account while the cursor is read,
+     * see {@link RunningBalanceCursor}. Recurring transactions are excluded</p>
+     * @param accountUID Unique ID of the account
+     * @return Cursor to the transactions with their balances and running balances
+     * @see #fetchTransactionsWithBalanceForAccount(String)
+     */
+    public RunningBalanceCursor fetchTransactionsWithRunningBalanceForAccount(String accountUID){
+        Cursor cursor = new PagedTransactionsCursor(this, accountUID, PagedTransactionsCursor.DEFAULT_PAGE_SIZE);
+        return new RunningBalanceCursor(cursor, mSplitsDbAdapter.computeSplitBalance(accountUID));
+    }
+
     /**
      * Fetches all recurring transactions from the database.
      * <p>These transactions are not considered "normal" transactions, but only serve to note recurring transactions.
@@ -205,22 +552,37 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
 		return fetchAllTransactionsForAccount(getAccountUID(accountID));
 	}
 	
+    /**
+     * Returns a loader of the transactions of accounts, for accounts whose transactions are loaded on first access.
+     * <p>The loader opens its own adapter on the same database whenever it is used,
+     * so it remains usable after this adapter has been closed</p>
+     * @return Transactions loader
+     * @see Account#setTransactionsLoader(Account.TransactionsLoader)
+     */
+    public Account.TransactionsLoader getTransactionsLoader(){
+        final Context context = mContext;
+        final SQLiteDatabase db = usesSharedConnection() ? null : mDb;
+        return new Account.TransactionsLoader() {
+            @Override
+            public List<Transaction> loadTransactions(String accountUID) {
+                TransactionsDbAdapter transactionsDbAdapter = db == null ?
+                        new TransactionsDbAdapter(context) : new TransactionsDbAdapter(db);
+                try {
+                    return transactionsDbAdapter.getAllTransactionsForAccount(accountUID);
+                } finally {
+                    transactionsDbAdapter.close();
+                }
+            }
+        };
+    }
+
 	/**
 	 * Returns list of all transactions for account with UID <code>accountUID</code>
 	 * @param accountUID UID of account whose transactions are to be retrieved
 	 * @return List of {@link Transaction}s for account with UID <code>accountUID</code>
 	 */
 	public List<Transaction> getAllTransactionsForAccount(String accountUID){
-		Cursor c = fetchAllTransactionsForAccount(accountUID);
-		ArrayList<Transaction> transactionsList = new ArrayList<Transaction>();
-		if (c == null)
-			return transactionsList;
-
-		while (c.moveToNext()) {
-            transactionsList.add(buildTransactionInstance(c));
-		}
-		c.close();
-		return transactionsList;
+		return toList(iterateTransactionsForAccount(accountUID));
 	}
 
     /**
@@ -228,15 +590,24 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
      * @return List of all transactions
      */
     public List<Transaction> getAllTransactions(){
-        Cursor cursor = fetchAllRecords();
-        List<Transaction> transactions = new ArrayList<Transaction>();
-        if (cursor != null){
-            while(cursor.moveToNext()){
-                transactions.add(buildTransactionInstance(cursor));
+        return toList(iterateTransactions(null, null, null));
+    }
+
+    /**
+     * Reads all transactions of an iterator into a list and closes the iterator
+     * @param iterator Transaction iterator
+     * @return List of the transactions of the iterator
+     */
+    private static List<Transaction> toList(TransactionIterator iterator){
+        try {
+            List<Transaction> transactions = new ArrayList<Transaction>(iterator.getCount());
+            while (iterator.hasNext()){
+                transactions.add(iterator.next());
             }
-            cursor.close();
+            return transactions;
+        } finally {
+            iterator.close();
         }
-        return transactions;
     }
 
     /**
@@ -258,20 +629,14 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
 
 	/**
 	 * Builds a transaction instance with the provided cursor.
-	 * The cursor should already be pointing to the transaction record in the database
+	 * The cursor should already be pointing to the transaction record in the database.
+	 * <p>The splits of the transaction are read with one query. To build many transactions,
+	 * prefer {@link #iterateTransactions(String, String[], String)} which reads all their splits at once</p>
 	 * @param c Cursor pointing to transaction record in database
 	 * @return {@link Transaction} object constructed from database record
 	 */
 	public Transaction buildTransactionInstance(Cursor c){
-		String name   = c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_DESCRIPTION));
-		Transaction transaction = new Transaction(name);
-		transaction.setUID(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
-		transaction.setTime(c.getLong(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP)));
-		transaction.setNote(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_NOTES)));
-		transaction.setExported(c.getInt(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_EXPORTED)) == 1);
-
-        long recurrencePeriod = c.getLong(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_RECURRENCE_PERIOD));
-        transaction.setRecurrencePeriod(recurrencePeriod);
+		Transaction transaction = buildSimpleTransactionInstance(c);
 
         if (mDb.getVersion() < SPLITS_DB_VERSION){ //legacy, will be used once, when migrating the database
             String accountUID = c.getString(c.getColumnIndexOrThrow(SplitEntry.COLUMN_ACCOUNT_UID));
@@ -294,13 +659,154 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
             if (transferAccountUID != null)
                 transaction.addSplit(split.createPair(transferAccountUID));
         } else {
-            transaction.setCurrencyCode(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_CURRENCY)));
-            long transactionID = c.getLong(c.getColumnIndexOrThrow(TransactionEntry._ID));
-            transaction.setSplits(mSplitsDbAdapter.getSplitsForTransaction(transactionID));
+            transaction.setSplits(mSplitsDbAdapter.getSplitsForTransaction(transaction.getUID()));
         }
 		return transaction;
 	}
 
+    /**
+     * Builds a transaction instance with the provided cursor, without its splits
+     * @param c Cursor pointing to transaction record in database
+     * @return {@link Transaction} object constructed from database record, without splits
+     */
+    Transaction buildSimpleTransactionInstance(Cursor c){
+        String name   = c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_DESCRIPTION));
+        Transaction transaction = new Transaction(name);
+        transaction.setUID(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
+        transaction.setTime(c.getLong(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP)));
+        transaction.setNote(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_NOTES)));
+        transaction.setExported(c.getInt(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_EXPORTED)) == 1);
+
+        long recurrencePeriod = c.getLong(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_RECURRENCE_PERIOD));
+        transaction.setRecurrencePeriod(recurrencePeriod);
+
+        if (mDb.getVersion() >= SPLITS_DB_VERSION)
+            transaction.setCurrencyCode(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_CURRENCY)));
+        return transaction;
+    }
+
+    /**
+     * Returns an iterator over the transactions matching the selection, with their splits.
+     * <p>The transactions and their splits are read with one query each, ordered by <code>sortOrder</code>
+     * and then by unique ID, so that the splits can be attached to the transactions in a single pass</p>
+     * <p>In the legacy database format, the splits are read from the transaction rows and the selection
+     * must not refer to the splits table</p>
+     * @param selection SQL WHERE clause on the transactions table, without the WHERE keyword. Columns should be
+     *                  qualified with the table name. Passing <code>null</code> selects all transactions
+     * @param selectionArgs Arguments bound to the selection, may be <code>null</code>
+     * @param sortOrder SQL ORDER BY clause on the transactions table, without the ORDER BY keyword. May be <code>null</code>
+     * @return Iterator over the transactions, which must be closed after use
+     */
+    public TransactionIterator iterateTransactions(String selection, String[] selectionArgs, String sortOrder){
+        Cursor transactionsCursor = mDb.rawQuery(buildTransactionsQuery(selection, sortOrder), selectionArgs);
+        if (mDb.getVersion() < SPLITS_DB_VERSION)
+            return new TransactionIterator(this, mSplitsDbAdapter, transactionsCursor, null);
+
+        Cursor splitsCursor;
+        try {
+            splitsCursor = mDb.rawQuery(buildSplitsQuery(selection, sortOrder), selectionArgs);
+        } catch (RuntimeException e) {
+            transactionsCursor.close();
+            throw e;
+        }
+        return new TransactionIterator(this, mSplitsDbAdapter, transactionsCursor, splitsCursor);
+    }
+
+    /**
+     * Builds the query for the transactions read by {@link #iterateTransactions(String, String[], String)}
+     * @param selection SQL WHERE clause on the transactions table, may be <code>null</code>
+     * @param sortOrder SQL ORDER BY clause on the transactions table, may be <code>null</code>
+     * @return SQL query
+     */
+    public String buildTransactionsQuery(String selection, String sortOrder){
+        return "SELECT " + TransactionEntry.TABLE_NAME + ".*"
+                + " FROM " + TransactionEntry.TABLE_NAME + buildWhereClause(selection) + buildIterationOrder(sortOrder);
+    }
+
+    /**
+     * Builds the query for the splits read by {@link #iterateTransactions(String, String[], String)}, which joins
+     * the splits with their transactions, so that they are selected and sorted like the transactions
+     * @param selection SQL WHERE clause on the transactions table, may be <code>null</code>
+     * @param sortOrder SQL ORDER BY clause on the transactions table, may be <code>null</code>
+     * @return SQL query
+     */
+    public String buildSplitsQuery(String selection, String sortOrder){
+        return "SELECT " + SplitEntry.TABLE_NAME + ".*"
+                + " FROM " + SplitEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                + buildWhereClause(selection) + buildIterationOrder(sortOrder)
+                + ", " + SplitEntry.TABLE_NAME + "." + SplitEntry._ID;
+    }
+
+    /**
+     * Returns the WHERE clause of the iteration queries, which is empty if there is no selection
+     */
+    private static String buildWhereClause(String selection){
+        return selection == null ? "" : " WHERE " + selection;
+    }
+
+    /**
+     * Returns the ORDER BY clause of the iteration queries, which breaks ties by transaction UID
+     */
+    private static String buildIterationOrder(String sortOrder){
+        return " ORDER BY " + (sortOrder == null ? "" : sortOrder + ", ")
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID;
+    }
+
+    /**
+     * Returns an iterator over the non-recurring transactions of an account with their splits,
+     * with the most recent transactions first
+     * @param accountUID Unique ID of the account
+     * @return Iterator over the transactions of the account, which must be closed after use
+     * @see #fetchAllTransactionsForAccount(String)
+     */
+    public TransactionIterator iterateTransactionsForAccount(String accountUID){
+        return iterateTransactionsForAccount(accountUID, true);
+    }
+
+    /**
+     * Returns an iterator over the non-recurring transactions of an account with their splits,
+     * with the most recent transactions first.
+     * <p>Exported transactions can be left out, which is done in the query, so that they are not built</p>
+     * @param accountUID Unique ID of the account
+     * @param includeExported Flag to include transactions which were already exported
+     * @return Iterator over the transactions of the account, which must be closed after use
+     */
+    public TransactionIterator iterateTransactionsForAccount(String accountUID, boolean includeExported){
+        if (accountUID == null)
+            throw new IllegalArgumentException("Unique ID of the account cannot be null");
+
+        String[] accountArgs = mDb.getVersion() < SPLITS_DB_VERSION
+                ? new String[]{accountUID, accountUID} : new String[]{accountUID};
+        return iterateTransactions(buildAccountTransactionsSelection(includeExported), accountArgs,
+                ACCOUNT_TRANSACTIONS_SORT_ORDER);
+    }
+
+    /**
+     * Builds the selection of {@link #iterateTransactionsForAccount(String, boolean)}.
+     * <p>The transactions are selected from the splits of the account, so that only the transactions of the account
+     * are read. The argument is the account UID, which is passed twice in the legacy database format</p>
+     * @param includeExported Flag to include transactions which were already exported
+     * @return SQL WHERE clause on the transactions table
+     */
+    public String buildAccountTransactionsSelection(boolean includeExported){
+        String selection;
+        if (mDb.getVersion() < SPLITS_DB_VERSION){ //legacy from previous database format
+            selection = "(" + TransactionEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?"
+                    + " OR " + TransactionEntry.TABLE_NAME + "." + DatabaseHelper.KEY_DOUBLE_ENTRY_ACCOUNT_UID + " = ?)";
+        } else {
+            selection = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
+                    + " IN (SELECT account_splits." + SplitEntry.COLUMN_TRANSACTION_UID
+                    + " FROM " + SplitEntry.TABLE_NAME + " AS account_splits"
+                    + " WHERE account_splits." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)";
+        }
+        selection += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_RECURRENCE_PERIOD + " = 0";
+        if (!includeExported)
+            selection += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_EXPORTED + " = 0";
+        return selection;
+    }
+
 	/**
 	 * Returns the currency code (ISO 4217) used by the account with id <code>accountId</code>
 	 * If you do not have the database record Id, you can call {@link #getAccountID(String)} instead.
@@ -376,6 +882,8 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
 	 */
     @Override
 	public int deleteAllRecords(){
+        //without transactions, none of the splits count towards the balances
+        mSplitsDbAdapter.getBalancesDbAdapter().deleteAllRecords();
 		return deleteAllRecords(TransactionEntry.TABLE_NAME);
 	}
 	
@@ -385,35 +893,132 @@ public class TransactionsDbAdapter extends DatabaseAdapter {
      * @param srcAccountId Record Id of the account from which the transaction is to be moved
 	 * @param dstAccountId Record Id of the account to which the transaction will be assigned
 	 * @return Number of transactions splits affected
+	 * @see #moveTransactions(long[], long, long)
 	 */
 	public int moveTranscation(long rowId, long srcAccountId, long dstAccountId){
-		Log.i(TAG, "Moving transaction ID " + rowId + " splits from " + srcAccountId + " to account " + dstAccountId);
-		String srcAccountUID = getAccountUID(srcAccountId);
+        return moveTransactions(new long[]{rowId}, srcAccountId, dstAccountId);
+	}
+
+    /**
+     * Moves the splits of several transactions from one account to another.
+     * <p>The splits are moved with one update per chunk of at most {@link #MAX_SQL_ARGUMENTS} transactions,
+     * all in a single database transaction. The moved transactions are marked as not exported and the cached
+     * balances of both accounts are recomputed once at the end</p>
+     * @param transactionIds Record IDs of the transactions to be moved
+     * @param srcAccountId Record ID of the account from which the transactions are to be moved
+     * @param dstAccountId Record ID of the account to which the transactions will be assigned
+     * @return Number of transaction splits moved
+     */
+    public int moveTransactions(long[] transactionIds, long srcAccountId, long dstAccountId){
+        Log.i(TAG, "Moving " + transactionIds.length + " transactions from account " + srcAccountId
+                + " to account " + dstAccountId);
+        String srcAccountUID = getAccountUID(srcAccountId);
         String dstAccountUID = getAccountUID(dstAccountId);
+        if (srcAccountUID == null || dstAccountUID == null || srcAccountUID.equals(dstAccountUID))
+            return 0;
+
+        ContentValues splitValues = new ContentValues();
+        splitValues.put(SplitEntry.COLUMN_ACCOUNT_UID, dstAccountUID);
+        ContentValues transactionValues = new ContentValues();
+        transactionValues.put(TransactionEntry.COLUMN_EXPORTED, 0);
 
-		List<Split> splits = mSplitsDbAdapter.getSplitsForTransactionInAccount(getUID(rowId), srcAccountUID);
-        for (Split split : splits) {
-            split.setAccountUID(dstAccountUID);
-            mSplitsDbAdapter.addSplit(split);
+        int movedCount = 0;
+        //one argument of each statement is the account
+        int chunkSize = MAX_SQL_ARGUMENTS - 1;
+        mDb.beginTransaction();
+        try {
+            for (int start = 0; start < transactionIds.length; start += chunkSize) {
+                int end = Math.min(start + chunkSize, transactionIds.length);
+                String[] idArgs = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    idArgs[i - start] = String.valueOf(transactionIds[i]);
+                }
+                String[] splitArgs = new String[idArgs.length + 1];
+                System.arraycopy(idArgs, 0, splitArgs, 0, idArgs.length);
+                splitArgs[idArgs.length] = srcAccountUID;
+                String transactionsCondition = buildInCondition(TransactionEntry._ID, idArgs.length);
+
+                int moved = mDb.update(SplitEntry.TABLE_NAME, splitValues,
+                        SplitEntry.COLUMN_TRANSACTION_UID + " IN ( SELECT " + TransactionEntry.COLUMN_UID
+                                + " FROM " + TransactionEntry.TABLE_NAME + " WHERE " + transactionsCondition + " )"
+                                + " AND " + SplitEntry.COLUMN_ACCOUNT_UID + " = ?",
+                        splitArgs);
+                if (moved > 0) {
+                    mDb.update(TransactionEntry.TABLE_NAME, transactionValues, transactionsCondition, idArgs);
+                }
+                movedCount += moved;
+            }
+
+            if (movedCount > 0) {
+                AccountBalancesDbAdapter balancesDbAdapter = mSplitsDbAdapter.getBalancesDbAdapter();
+                balancesDbAdapter.recomputeBalance(srcAccountUID);
+                balancesDbAdapter.recomputeBalance(dstAccountUID);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
         }
-        return splits.size();
-	}
+        return movedCount;
+    }
+
+    /**
+     * Marks the transactions as exported.
+     * <p>The transactions are updated with one statement per chunk of at most {@link #MAX_SQL_ARGUMENTS} transactions,
+     * all in a single database transaction</p>
+     * @param transactionUIDs Unique IDs of the transactions which were exported
+     * @return Number of transactions marked as exported
+     */
+    public int markAsExported(Collection<String> transactionUIDs){
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
+
+        String[] uids = transactionUIDs.toArray(new String[transactionUIDs.size()]);
+        int markedCount = 0;
+        mDb.beginTransaction();
+        try {
+            for (int start = 0; start < uids.length; start += MAX_SQL_ARGUMENTS) {
+                String[] uidArgs = new String[Math.min(MAX_SQL_ARGUMENTS, uids.length - start)];
+                System.arraycopy(uids, start, uidArgs, 0, uidArgs.length);
+                markedCount += mDb.update(TransactionEntry.TABLE_NAME, contentValues,
+                        buildInCondition(TransactionEntry.COLUMN_UID, uidArgs.length), uidArgs);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return markedCount;
+    }
+
+    /**
+     * Marks the transactions as exported and commits the export output, in one database transaction.
+     * <p>If committing the output fails, the transactions are not marked, so they are exported again next time.
+     * The output is committed before the database transaction ends, so a failure in between can only cause
+     * transactions to be exported twice, never to be marked as exported without being in an export</p>
+     * @param transactionUIDs Unique IDs of the transactions written to <code>sink</code>
+     * @param sink Sink holding the export output, which is committed
+     * @return Number of transactions marked as exported
+     * @throws IOException if the export output could not be committed
+     */
+    public int markAsExported(Collection<String> transactionUIDs, ExportSink sink) throws IOException {
+        mDb.beginTransaction();
+        try {
+            int markedCount = markAsExported(transactionUIDs);
+            sink.commit();
+            mDb.setTransactionSuccessful();
+            return markedCount;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
 	
 	/**
 	 * Returns the number of transactions belonging to account with id <code>accountId</code>
 	 * @param accountId Long ID of account
 	 * @return Number of transactions assigned to account with id <code>accountId</code>
+	 * @see #getTransactionsCount(String)
 	 */
 	public int getTransactionsCount(long accountId){
-		Cursor cursor = fetchAllTransactionsForAccount(accountId);
-		int count = 0;
-		if (cursor == null)
-			return count;
-		else {
-			count = cursor.getCount();
-			cursor.close();
-		}
-		return count;
+		return getTransactionsCount(getAccountUID(accountId));
 	}
 	
 	/**
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.export;
+
+import android.net.Uri;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Destination into which an {@link Exporter} writes its output incrementally.
+ * <p>A sink is used exactly once: {@link #open()} provides the stream for the export output, which is closed by the caller
+ * once the export is written. Afterwards either {@link #commit()} is called to complete the export,
+ * or {@link #abort()} to discard a failed one. See {@link Exporter#generateExport(ExportSink)}</p>
+ * <p>Sinks are composed from a target like {@link #toFile(java.io.File)} and stages which wrap it, e.g.
+ * <code>ExportSink.toFileAtomically(file).gzip().checksum("MD5")</code>.
+ * The outermost stage sees the data first, so in this example the checksum is computed over the uncompressed output</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public abstract class ExportSink {
+
+    /**
+     * Opens the stream into which the export output is written
+     * @return Output stream which must be closed by the caller
+     * @throws IOException if the stream could not be opened
+     */
+    public abstract OutputStream open() throws IOException;
+
+    /**
+     * Completes the export after the stream returned by {@link #open()} has been closed successfully
+     * @throws IOException if the export could not be completed
+     */
+    public void commit() throws IOException {
+        //nothing to do by default
+    }
+
+    /**
+     * Discards the output of a failed export, as far as possible
+     */
+    public void abort() {
+        //nothing to do by default
+    }
+
+    /**
+     * Returns a URI to the exported data, which can be passed to other applications for sharing
+     * @return URI of the export, or <code>null</code> if the sink has no addressable target
+     */
+    public abstract Uri getUri();
+
+    /**
+     * Creates a sink which writes buffered to a file.
+     * <p>Missing parent directories are created. If the export fails, the partially written file is deleted</p>
+     * @param file File to write to
+     * @return File sink
+     */
+    public static ExportSink toFile(File file){
+        return new FileSink(file);
+    }
+
+    /**
+     * Creates a sink which writes buffered to a temporary file next to <code>file</code>, and renames it
+     * to <code>file</code> when the export is committed.
+     * <p>An existing file is only replaced by a complete export, never by a partial one</p>
+     * @param file File to write to
+     * @return Atomic file sink
+     */
+    public static ExportSink toFileAtomically(File file){
+        return new AtomicFileSink(file);
+    }
+
+    /**
+     * Returns a sink which compresses the output with gzip before passing it on to this sink
+     * @return Gzip compressing sink
+     */
+    public ExportSink gzip(){
+        return new GzipSink(this);
+    }
+
+    /**
+     * Returns a sink which computes a checksum of the output while passing it on to this sink
+     * @param algorithm Name of the digest algorithm, e.g. "MD5" or "SHA-1"
+     * @return Checksum sink, which provides the checksum after the export has been committed
+     * @throws IllegalArgumentException if the algorithm is not supported by the platform
+     */
+    public ChecksumSink checksum(String algorithm){
+        return new ChecksumSink(this, algorithm);
+    }
+
+    /**
+     * Writes to a file through a buffer
+     */
+    public static class FileSink extends ExportSink {
+        protected final File mFile;
+
+        FileSink(File file){
+            mFile = file;
+        }
+
+        /**
+         * Returns the file which is being written
+         */
+        protected File getTargetFile(){
+            return mFile;
+        }
+
+        @Override
+        public OutputStream open() throws IOException {
+            File targetFile = getTargetFile();
+            File parent = targetFile.getParentFile();
+            if (parent != null)
+                parent.mkdirs();
+            return new BufferedOutputStream(new FileOutputStream(targetFile));
+        }
+
+        @Override
+        public void abort() {
+            getTargetFile().delete();
+        }
+
+        @Override
+        public Uri getUri() {
+            return Uri.fromFile(mFile);
+        }
+    }
+
+    /**
+     * Writes to a temporary file and renames it to the target file on commit
+     */
+    public static class AtomicFileSink extends FileSink {
+        private final File mTempFile;
+
+        AtomicFileSink(File file){
+            super(file);
+            mTempFile = new File(file.getPath() + ".tmp");
+        }
+
+        @Override
+        protected File getTargetFile() {
+            return mTempFile;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (!mTempFile.renameTo(mFile)){
+                mTempFile.delete();
+                throw new IOException("Could not rename " + mTempFile + " to " + mFile);
+            }
+        }
+    }
+
+    /**
+     * Base class for stages which transform the output before passing it on to another sink
+     */
+    public static abstract class ForwardingSink extends ExportSink {
+        protected final ExportSink mDelegate;
+
+        protected ForwardingSink(ExportSink delegate){
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            mDelegate.commit();
+        }
+
+        @Override
+        public void abort() {
+            mDelegate.abort();
+        }
+
+        @Override
+        public Uri getUri() {
+            return mDelegate.getUri();
+        }
+    }
+
+    /**
+     * Compresses the output with gzip
+     */
+    public static class GzipSink extends ForwardingSink {
+
+        GzipSink(ExportSink delegate){
+            super(delegate);
+        }
+
+        @Override
+        public OutputStream open() throws IOException {
+            OutputStream outputStream = mDelegate.open();
+            try {
+                return new GZIPOutputStream(outputStream);
+            } catch (IOException e) {
+                outputStream.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Computes a checksum of the output passing through
+     */
+    public static class ChecksumSink extends ForwardingSink {
+        private final MessageDigest mDigest;
+        private String mChecksum;
+
+        ChecksumSink(ExportSink delegate, String algorithm){
+            super(delegate);
+            try {
+                mDigest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                IllegalArgumentException exception = new IllegalArgumentException("Unsupported checksum algorithm " + algorithm);
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+
+        @Override
+        public OutputStream open() throws IOException {
+            mDigest.reset();
+            return new DigestOutputStream(mDelegate.open(), mDigest);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            super.commit();
+            StringBuilder checksum = new StringBuilder();
+            for (byte b : mDigest.digest()) {
+                checksum.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            mChecksum = checksum.toString();
+        }
+
+        /**
+         * Returns the checksum of the export output
+         * @return Lower case hexadecimal checksum, or <code>null</code> if the export has not been committed
+         */
+        public String getChecksum(){
+            return mChecksum;
+        }
+    }
+}
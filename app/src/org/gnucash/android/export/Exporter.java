@@ -21,12 +21,19 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.Environment;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.TransactionsDbAdapter;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * Base class for the different exporters
@@ -56,6 +63,16 @@ public abstract class Exporter {
     protected AccountsDbAdapter mAccountsDbAdapter;
     protected Context mContext;
 
+    /**
+     * Database to export from, or <code>null</code> if the exporter uses the shared database connection
+     */
+    private SQLiteDatabase mDb;
+
+    /**
+     * Unique IDs of the transactions written to the export output, which are marked as exported when the export is committed
+     */
+    private final Set<String> mExportedTransactionUIDs = new HashSet<String>();
+
     public Exporter(ExportParams params){
         this.mParameters = params;
         mContext = GnuCashApplication.getAppContext();
@@ -69,6 +86,7 @@ public abstract class Exporter {
      */
     public Exporter(ExportParams params, SQLiteDatabase db){
         this.mParameters = params;
+        mDb = db;
         mAccountsDbAdapter = new AccountsDbAdapter(db);
         mContext = GnuCashApplication.getAppContext();
     }
@@ -139,6 +157,80 @@ public abstract class Exporter {
      */
     public abstract String generateExport() throws ExporterException;
 
+    /**
+     * Generates the export output and writes it to <code>outputStream</code> in UTF-8 encoding.
+     * <p>The default implementation writes the result of {@link #generateExport()}, so the whole output is held in memory.
+     * Exporters for potentially large outputs should override this method and write the output incrementally.
+     * The stream is flushed, but not closed</p>
+     * @param outputStream Stream to which the export output is written
+     * @throws ExporterException if an error occurs during export or while writing to the stream
+     */
+    public void generateExport(OutputStream outputStream) throws ExporterException {
+        try {
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            writer.write(generateExport());
+            writer.flush();
+        } catch (IOException e) {
+            throw new ExporterException(mParameters, e);
+        }
+    }
+
+    /**
+     * Generates the export output and writes it into <code>sink</code>.
+     * <p>The sink is committed if the export succeeds, and aborted otherwise.
+     * The transactions written to the output are marked as exported together with committing the sink</p>
+     * @param sink Destination of the export output
+     * @throws ExporterException if an error occurs during export or while writing to the sink
+     */
+    public void generateExport(ExportSink sink) throws ExporterException {
+        try {
+            OutputStream outputStream = sink.open();
+            try {
+                generateExport(outputStream);
+            } finally {
+                outputStream.close();
+            }
+            commitExport(sink);
+        } catch (IOException e) {
+            sink.abort();
+            throw new ExporterException(mParameters, e);
+        } catch (RuntimeException e) {
+            sink.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Records that a transaction was written to the export output.
+     * <p>When the export is written into an {@link ExportSink}, the recorded transactions are marked as exported
+     * in the same database transaction in which the sink is committed</p>
+     * @param transactionUID Unique ID of the exported transaction
+     * @return <code>true</code> if the transaction was recorded, <code>false</code> if it was already written to this export
+     */
+    protected boolean addExportedTransaction(String transactionUID){
+        return mExportedTransactionUIDs.add(transactionUID);
+    }
+
+    /**
+     * Commits the sink and marks the transactions written to it as exported
+     * @param sink Sink holding the complete export output
+     * @throws IOException if the sink could not be committed
+     */
+    private void commitExport(ExportSink sink) throws IOException {
+        if (mExportedTransactionUIDs.isEmpty()){
+            sink.commit();
+            return;
+        }
+
+        TransactionsDbAdapter transactionsDbAdapter = mDb == null ?
+                new TransactionsDbAdapter(mContext) : new TransactionsDbAdapter(mDb);
+        try {
+            transactionsDbAdapter.markAsExported(mExportedTransactionUIDs, sink);
+        } finally {
+            transactionsDbAdapter.close();
+        }
+    }
+
     public static class ExporterException extends RuntimeException{
 
         public ExporterException(ExportParams params){
@@ -63,6 +63,11 @@ public class ExporterAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
      */
     private ExportParams mExportParams;
 
+    /**
+     * Sink into which the export is written
+     */
+    private ExportSink mExportSink;
+
     public ExporterAsyncTask(Activity context){
         this.mContext = context;
     }
@@ -107,7 +112,7 @@ public class ExporterAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
             }
 
         try {
-            writeOutput(mExporter.generateExport());
+            writeOutput(mExporter);
         } catch (Exception e) {
             e.printStackTrace();
             Log.e(TAG, e.getMessage());
@@ -140,7 +145,7 @@ public class ExporterAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
 
         switch (mExportParams.getExportTarget()) {
             case SHARING:
-                shareFile(mExportParams.getTargetFilepath());
+                shareFile(mExportSink.getUri());
                 break;
 
             case SD_CARD:
@@ -186,31 +191,26 @@ public class ExporterAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
     }
 
     /**
-     * Writes out the String containing the exported data to disk
-     * @param exportOutput String containing exported data
-     * @throws IOException if the write fails
+     * Generates the export and writes it out to the target file on disk.
+     * <p>The output is written to a temporary file first, so that a failed export does not leave a truncated file behind</p>
+     * @param exporter Exporter which generates the output
      */
-    private void writeOutput(String exportOutput) throws IOException {
-        File file = new File(mExportParams.getTargetFilepath());
-
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
-        writer.write(exportOutput);
-
-        writer.flush();
-        writer.close();
+    private void writeOutput(Exporter exporter) {
+        mExportSink = ExportSink.toFileAtomically(new File(mExportParams.getTargetFilepath()));
+        exporter.generateExport(mExportSink);
     }
 
     /**
      * Starts an intent chooser to allow the user to select an activity to receive
      * the exported OFX file
-     * @param path String path to the file on disk
+     * @param uri URI of the exported file
      */
-    private void shareFile(String path){
+    private void shareFile(Uri uri){
         String defaultEmail = PreferenceManager.getDefaultSharedPreferences(mContext)
                 .getString(mContext.getString(R.string.key_default_export_email), null);
         Intent shareIntent = new Intent(Intent.ACTION_SEND);
         shareIntent.setType("application/xml");
-        shareIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse("file://" + path));
+        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
         shareIntent.putExtra(Intent.EXTRA_SUBJECT, mContext.getString(R.string.title_export_email,
                 mExportParams.getExportFormat().name()));
         if (defaultEmail != null && defaultEmail.trim().length() > 0){
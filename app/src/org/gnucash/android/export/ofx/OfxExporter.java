@@ -16,6 +16,10 @@
 
 package org.gnucash.android.export.ofx;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
@@ -27,7 +31,6 @@ import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Transaction;
-import org.gnucash.android.db.AccountsDbAdapter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -85,23 +88,27 @@ public class OfxExporter extends Exporter{
 		
 		parent.appendChild(bankmsgs);		
 		
-		AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(mContext);
+		boolean exportAllTransactions = mParameters.shouldExportAllTransactions();
 		for (Account account : mAccountsList) {		
 			if (account.getTransactionCount() == 0)
 				continue; 
 			
 			//add account details (transactions) to the XML document			
-			account.toOfx(doc, statementTransactionResponse, mParameters.shouldExportAllTransactions());
-			
-			//mark as exported
-			accountsDbAdapter.markAsExported(account.getUID());
+			account.toOfx(doc, statementTransactionResponse, exportAllTransactions);
 			
+			//transactions are marked as exported when the export is committed
+			for (Transaction transaction : account.getTransactions()) {
+				if (exportAllTransactions || !transaction.isExported())
+					addExportedTransaction(transaction.getUID());
+			}
 		}
-		accountsDbAdapter.close();
 	}
 
-    @Override
-    public String generateExport() throws ExporterException {
+    /**
+     * Builds the OFX document of the accounts and transactions to export
+     * @return DOM document of the OFX export
+     */
+    private Document buildDocument() throws ExporterException {
         mAccountsList = mParameters.shouldExportAllTransactions() ?
                 mAccountsDbAdapter.getAllAccounts() : mAccountsDbAdapter.getExportableAccounts();
         mAccountsDbAdapter.close();
@@ -123,24 +130,60 @@ public class OfxExporter extends Exporter{
         document.appendChild(root);
 
         generateOfx(document, root);
+        return document;
+    }
 
+    /**
+     * Writes the OFX document with the header chosen in the preferences
+     * @param document OFX document
+     * @param writer Writer to which the document is written
+     * @throws IOException if the header could not be written
+     * @throws TransformerException if the document could not be written
+     */
+    private void writeDocument(Document document, Writer writer) throws IOException, TransformerException {
         boolean useXmlHeader = PreferenceManager.getDefaultSharedPreferences(mContext)
                 .getBoolean(mContext.getString(R.string.key_xml_ofx_header), false);
 
-        StringWriter stringWriter = new StringWriter();
-        //if we want SGML OFX headers, write first to string and then prepend header
         if (useXmlHeader){
-            write(document, stringWriter, false);
-            return stringWriter.toString();
+            write(document, writer, false);
         } else {
+            //SGML OFX headers are written before the document, which is written without XML declaration
+            writer.write(OfxHelper.OFX_SGML_HEADER);
+            writer.write('\n');
             Node ofxNode = document.getElementsByTagName("OFX").item(0);
+            write(ofxNode, writer, true);
+        }
+    }
 
-            write(ofxNode, stringWriter, true);
+    @Override
+    public String generateExport() throws ExporterException {
+        Document document = buildDocument();
+        StringWriter stringWriter = new StringWriter();
+        try {
+            writeDocument(document, stringWriter);
+        } catch (IOException e) {
+            throw new ExporterException(mParameters, e);
+        } catch (TransformerException e) {
+            throw new ExporterException(mParameters, e);
+        }
+        return stringWriter.toString();
+    }
 
-            StringBuffer stringBuffer = new StringBuffer(OfxHelper.OFX_SGML_HEADER);
-            stringBuffer.append('\n');
-            stringBuffer.append(stringWriter.toString());
-            return stringBuffer.toString();
+    /**
+     * {@inheritDoc}
+     * <p>The document is transformed straight into the stream, without building the output as a string first</p>
+     */
+    @Override
+    public void generateExport(OutputStream outputStream) throws ExporterException {
+        Document document = buildDocument();
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+            writeDocument(document, writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new ExporterException(mParameters, e);
+        } catch (TransformerException e) {
+            throw new ExporterException(mParameters, e);
         }
     }
 
@@ -149,26 +192,21 @@ public class OfxExporter extends Exporter{
      * @param node {@link Node} containing the OFX document structure. Usually the parent node
      * @param outputWriter {@link java.io.Writer} to use in writing the file to stream
      * @param omitXmlDeclaration Flag which causes the XML declaration to be omitted
+     * @throws TransformerException if the document could not be written
      */
-    private void write(Node node, Writer outputWriter, boolean omitXmlDeclaration){
-        try {
-            TransformerFactory transformerFactory = TransformerFactory
-                    .newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(node);
-            StreamResult result = new StreamResult(outputWriter);
-
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            if (omitXmlDeclaration) {
-                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            }
-
-            transformer.transform(source, result);
-        } catch (TransformerConfigurationException txconfigException) {
-            txconfigException.printStackTrace();
-        } catch (TransformerException tfException) {
-            tfException.printStackTrace();
+    private void write(Node node, Writer outputWriter, boolean omitXmlDeclaration) throws TransformerException {
+        TransformerFactory transformerFactory = TransformerFactory
+                .newInstance();
+        Transformer transformer = transformerFactory.newTransformer();
+        DOMSource source = new DOMSource(node);
+        StreamResult result = new StreamResult(outputWriter);
+
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        if (omitXmlDeclaration) {
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
         }
+
+        transformer.transform(source, result);
     }
 }
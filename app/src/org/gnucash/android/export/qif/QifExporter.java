@@ -15,51 +15,126 @@
  */
 package org.gnucash.android.export.qif;
 
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import org.gnucash.android.db.TransactionIterator;
+import org.gnucash.android.db.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Transaction;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 
 /**
+ * Exports the accounts and transactions in the QIF format.
+ * <p>The accounts and their transactions are read from cursors and written to the output one at a time,
+ * so only the unique IDs of the transactions exported so far are held in memory.
+ * A transaction with splits in several accounts is exported only with the first of these accounts.
+ * The exported transactions are marked as exported when the export is committed,
+ * see {@link Exporter#generateExport(org.gnucash.android.export.ExportSink)}</p>
  * @author Ngewi
  */
 public class QifExporter extends Exporter{
-    private List<Account> mAccountsList;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
 
     public QifExporter(ExportParams params){
         super(params);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(mContext);
     }
 
     public QifExporter(ExportParams params,  SQLiteDatabase db){
         super(params, db);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(db);
     }
 
-    private String generateQIF(){
-        StringBuffer qifBuffer = new StringBuffer();
-
-        List<String> exportedTransactions = new ArrayList<String>();
-        for (Account account : mAccountsList) {
-            if (account.getTransactionCount() == 0)
-                continue;
+    /**
+     * Writes the QIF entries of all accounts with transactions to export.
+     * <p>If only new transactions are exported, only the accounts with unexported transactions are read</p>
+     * @param writer Writer to which the QIF is written
+     * @throws IOException if the QIF could not be written
+     */
+    private void writeQIF(Writer writer) throws IOException {
+        boolean exportAllTransactions = mParameters.shouldExportAllTransactions();
+        Cursor accountsCursor = exportAllTransactions ?
+                mAccountsDbAdapter.fetchAllRecords() : mAccountsDbAdapter.fetchExportableAccounts();
+        try {
+            while (accountsCursor.moveToNext()){
+                Account account = mAccountsDbAdapter.buildSimpleAccountInstance(accountsCursor);
+                writeAccountQIF(writer, account, exportAllTransactions);
+            }
+        } finally {
+            accountsCursor.close();
+        }
+    }
 
-            qifBuffer.append(account.toQIF(mParameters.shouldExportAllTransactions(), exportedTransactions) + "\n");
+    /**
+     * Writes the QIF header and transactions of one account.
+     * <p>The account is skipped if it has no transactions to export, i.e. no transactions at all,
+     * or only transactions which were exported before if not all transactions are exported.
+     * Transactions which were already written with another account are not written again</p>
+     * @param writer Writer to which the QIF is written
+     * @param account Account to export
+     * @param exportAllTransactions Flag to determine whether to export all transactions, or only new transactions since last export
+     * @throws IOException if the QIF could not be written
+     */
+    private void writeAccountQIF(Writer writer, Account account, boolean exportAllTransactions) throws IOException {
+        final String newLine = "\n";
+        String accountUID = account.getUID();
+        boolean headerWritten = false;
 
-            //mark as exported
-            mAccountsDbAdapter.markAsExported(account.getUID());
+        TransactionIterator transactions = mTransactionsDbAdapter.iterateTransactionsForAccount(accountUID,
+                exportAllTransactions);
+        try {
+            while (transactions.hasNext()){
+                Transaction transaction = transactions.next();
+                if (!headerWritten){
+                    writer.write(account.toQifHeader());
+                    headerWritten = true;
+                }
+                if (addExportedTransaction(transaction.getUID()))
+                    writer.write(transaction.toQIF(accountUID) + newLine);
+            }
+        } finally {
+            transactions.close();
         }
-        mAccountsDbAdapter.close();
 
-        return qifBuffer.toString();
+        if (headerWritten)
+            writer.write(newLine);
     }
 
     @Override
-    public String generateExport() throws ExporterException {
-        mAccountsList = mParameters.shouldExportAllTransactions() ?
-                mAccountsDbAdapter.getAllAccounts() : mAccountsDbAdapter.getExportableAccounts();
+    public void generateExport(OutputStream outputStream) throws ExporterException {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+            writeQIF(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new ExporterException(mParameters, e);
+        } finally {
+            mAccountsDbAdapter.close();
+            mTransactionsDbAdapter.close();
+        }
+    }
 
-        return generateQIF();
+    /**
+     * {@inheritDoc}
+     * <p>The whole QIF output is held in memory, prefer {@link #generateExport(java.io.OutputStream)}</p>
+     */
+    @Override
+    public String generateExport() throws ExporterException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generateExport(outputStream);
+        try {
+            return outputStream.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new ExporterException(mParameters, e);
+        }
     }
 }
@@ -19,29 +19,20 @@ package org.gnucash.android.export.xml;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
-import org.gnucash.android.db.DatabaseSchema;
+import android.util.Xml;
+import org.gnucash.android.db.TransactionIterator;
 import org.gnucash.android.db.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.ExportSink;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.model.Account;
-import org.gnucash.android.model.Transaction;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.util.List;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.UUID;
 
 /**
@@ -51,7 +42,6 @@ import java.util.UUID;
  */
 public class GncXmlExporter extends Exporter{
 
-    private Document mDocument;
     private TransactionsDbAdapter mTransactionsDbAdapter;
 
     public GncXmlExporter(ExportParams params){
@@ -71,114 +61,114 @@ public class GncXmlExporter extends Exporter{
     }
 
     /**
-     * Generate GnuCash XML
-     * @throws ParserConfigurationException if there was an error when generating the XML
+     * Writes the GnuCash XML document to the serializer.
+     * <p>Accounts and transactions are read from database cursors and written one at a time,
+     * so memory usage does not grow with the size of the book</p>
+     * @param serializer XML serializer which has already been set up with an output
+     * @throws IOException if the XML could not be written
      */
-    private void generateGncXml() throws ParserConfigurationException {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-//        docFactory.setNamespaceAware(true);
-        DocumentBuilder documentBuilder = docFactory.newDocumentBuilder();
-
-        mDocument = documentBuilder.newDocument();
-        mDocument.setXmlVersion("1.0");
-        mDocument.setXmlStandalone(true);
-
-        Element rootElement = mDocument.createElement(GncXmlHelper.TAG_ROOT);
-        rootElement.setAttribute("xmlns:gnc",    "http://www.gnucash.org/XML/gnc");
-        rootElement.setAttribute("xmlns:act",    "http://www.gnucash.org/XML/act");
-        rootElement.setAttribute("xmlns:book",   "http://www.gnucash.org/XML/book");
-        rootElement.setAttribute("xmlns:cd",     "http://www.gnucash.org/XML/cd");
-        rootElement.setAttribute("xmlns:cmdty",  "http://www.gnucash.org/XML/cmdty");
-        rootElement.setAttribute("xmlns:price",  "http://www.gnucash.org/XML/price");
-        rootElement.setAttribute("xmlns:slot",   "http://www.gnucash.org/XML/slot");
-        rootElement.setAttribute("xmlns:split",  "http://www.gnucash.org/XML/split");
-        rootElement.setAttribute("xmlns:trn",    "http://www.gnucash.org/XML/trn");
-        rootElement.setAttribute("xmlns:ts",     "http://www.gnucash.org/XML/ts");
-
-        Element bookCountNode = mDocument.createElement(GncXmlHelper.TAG_COUNT_DATA);
-        bookCountNode.setAttribute(GncXmlHelper.ATTR_KEY_CD_TYPE, GncXmlHelper.ATTR_VALUE_BOOK);
-        bookCountNode.appendChild(mDocument.createTextNode("1"));
-        rootElement.appendChild(bookCountNode);
-
-        Element bookNode = mDocument.createElement(GncXmlHelper.TAG_BOOK);
-        bookNode.setAttribute(GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
-        rootElement.appendChild(bookNode);
-
-        Element bookIdNode = mDocument.createElement(GncXmlHelper.TAG_BOOK_ID);
-        bookIdNode.setAttribute(GncXmlHelper.ATTR_KEY_TYPE, GncXmlHelper.ATTR_VALUE_GUID);
-        bookIdNode.appendChild(mDocument.createTextNode(UUID.randomUUID().toString().replaceAll("-", "")));
-        bookNode.appendChild(bookIdNode);
-
-        Element cmdtyCountData = mDocument.createElement(GncXmlHelper.TAG_COUNT_DATA);
-        cmdtyCountData.setAttribute(GncXmlHelper.ATTR_KEY_CD_TYPE, "commodity");
-        cmdtyCountData.appendChild(mDocument.createTextNode(String.valueOf(mAccountsDbAdapter.getCurrencies().size())));
-        bookNode.appendChild(cmdtyCountData);
-
-        Element accountCountNode = mDocument.createElement(GncXmlHelper.TAG_COUNT_DATA);
-        accountCountNode.setAttribute(GncXmlHelper.ATTR_KEY_CD_TYPE, "account");
-        int accountCount = mAccountsDbAdapter.getTotalAccountCount();
-        accountCountNode.appendChild(mDocument.createTextNode(String.valueOf(accountCount)));
-        bookNode.appendChild(accountCountNode);
-
-        Element transactionCountNode = mDocument.createElement(GncXmlHelper.TAG_COUNT_DATA);
-        transactionCountNode.setAttribute(GncXmlHelper.ATTR_KEY_CD_TYPE, "transaction");
-        int transactionCount = mTransactionsDbAdapter.getTotalTransactionsCount();
-        transactionCountNode.appendChild(mDocument.createTextNode(String.valueOf(transactionCount)));
-        bookNode.appendChild(transactionCountNode);
+    private void writeGncXml(XmlSerializer serializer) throws IOException {
+        serializer.startDocument("UTF-8", true);
+        serializer.setPrefix("gnc",    "http://www.gnucash.org/XML/gnc");
+        serializer.setPrefix("act",    "http://www.gnucash.org/XML/act");
+        serializer.setPrefix("book",   "http://www.gnucash.org/XML/book");
+        serializer.setPrefix("cd",     "http://www.gnucash.org/XML/cd");
+        serializer.setPrefix("cmdty",  "http://www.gnucash.org/XML/cmdty");
+        serializer.setPrefix("price",  "http://www.gnucash.org/XML/price");
+        serializer.setPrefix("slot",   "http://www.gnucash.org/XML/slot");
+        serializer.setPrefix("split",  "http://www.gnucash.org/XML/split");
+        serializer.setPrefix("trn",    "http://www.gnucash.org/XML/trn");
+        serializer.setPrefix("ts",     "http://www.gnucash.org/XML/ts");
+        serializer.startTag(null, GncXmlHelper.TAG_ROOT);
+
+        writeCountData(serializer, GncXmlHelper.ATTR_VALUE_BOOK, 1);
+
+        serializer.startTag(null, GncXmlHelper.TAG_BOOK);
+        serializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
+        GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_BOOK_ID,
+                UUID.randomUUID().toString().replaceAll("-", ""));
+
+        writeCountData(serializer, "commodity", mAccountsDbAdapter.getCurrencies().size());
+        writeCountData(serializer, "account", mAccountsDbAdapter.getTotalAccountCount());
+        writeCountData(serializer, "transaction", mTransactionsDbAdapter.getTotalTransactionsCount());
 
         String rootAccountUID = mAccountsDbAdapter.getGnuCashRootAccountUID();
         Account rootAccount = mAccountsDbAdapter.getAccount(rootAccountUID);
         if (rootAccount != null){
-            rootAccount.toGncXml(mDocument, bookNode);
+            rootAccount.toGncXml(serializer);
         }
-        Cursor accountsCursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
 
         //create accounts hierarchically by ordering by full name
+        Cursor accountsCursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
         if (accountsCursor != null){
-            while (accountsCursor.moveToNext()){
-                long id = accountsCursor.getLong(accountsCursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry._ID));
-                Account account = mAccountsDbAdapter.getAccount(id);
-                account.toGncXml(mDocument, bookNode);
+            try {
+                while (accountsCursor.moveToNext()){
+                    //the transactions are written separately, so there is no need to load them with the account
+                    mAccountsDbAdapter.buildSimpleAccountInstance(accountsCursor).toGncXml(serializer);
+                }
+            } finally {
+                accountsCursor.close();
             }
-            accountsCursor.close();
         }
 
-        //more memory efficient approach than loading all transactions into memory first
-        Cursor transactionsCursor = mTransactionsDbAdapter.fetchAllRecords();
-        if (transactionsCursor != null){
-            while (transactionsCursor.moveToNext()){
-                Transaction transaction = mTransactionsDbAdapter.buildTransactionInstance(transactionsCursor);
-                transaction.toGncXml(mDocument, bookNode);
+        TransactionIterator transactions = mTransactionsDbAdapter.iterateTransactions(null, null, null);
+        try {
+            while (transactions.hasNext()){
+                transactions.next().toGncXml(serializer);
             }
-            transactionsCursor.close();
+        } finally {
+            transactions.close();
         }
 
-        mDocument.appendChild(rootElement);
-        mAccountsDbAdapter.close();
-        mTransactionsDbAdapter.close();
+        serializer.endTag(null, GncXmlHelper.TAG_BOOK);
+        serializer.endTag(null, GncXmlHelper.TAG_ROOT);
+        serializer.endDocument();
+    }
+
+    /**
+     * Writes a <code>gnc:count-data</code> element
+     * @param serializer XML serializer
+     * @param type Type of the counted objects e.g. "account"
+     * @param count Number of objects
+     * @throws IOException if the element could not be written
+     */
+    private void writeCountData(XmlSerializer serializer, String type, int count) throws IOException {
+        serializer.startTag(null, GncXmlHelper.TAG_COUNT_DATA);
+        serializer.attribute(null, GncXmlHelper.ATTR_KEY_CD_TYPE, type);
+        serializer.text(String.valueOf(count));
+        serializer.endTag(null, GncXmlHelper.TAG_COUNT_DATA);
     }
 
     @Override
-    public String generateExport() throws ExporterException{
-        StringWriter stringWriter = new StringWriter();
+    public void generateExport(OutputStream outputStream) throws ExporterException {
         try {
-            generateGncXml();
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-
-            Transformer transformer = transformerFactory.newTransformer();
-
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            DOMSource source = new DOMSource(mDocument);
-            StreamResult result = new StreamResult(stringWriter);
-
-            transformer.transform(source, result);
-            stringWriter.flush();
+            XmlSerializer serializer = Xml.newSerializer();
+            serializer.setOutput(outputStream, "UTF-8");
+            serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+            writeGncXml(serializer);
+            serializer.flush();
         } catch (Exception e) {
             e.printStackTrace();
             throw new ExporterException(mParameters, e);
+        } finally {
+            mAccountsDbAdapter.close();
+            mTransactionsDbAdapter.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The whole XML document is held in memory, prefer {@link #generateExport(java.io.OutputStream)}</p>
+     */
+    @Override
+    public String generateExport() throws ExporterException{
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generateExport(outputStream);
+        try {
+            return outputStream.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new ExporterException(mParameters, e);
         }
-        return stringWriter.toString();
     }
 
     /**
@@ -187,12 +177,8 @@ public class GncXmlExporter extends Exporter{
     public static void createBackup(){
         ExportParams params = new ExportParams(ExportFormat.GNC_XML);
         try {
-            FileWriter fileWriter = new FileWriter(Exporter.createBackupFile());
-            BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-            bufferedWriter.write(new GncXmlExporter(params).generateExport());
-            bufferedWriter.flush();
-
-        } catch (IOException e) {
+            new GncXmlExporter(params).generateExport(ExportSink.toFileAtomically(Exporter.createBackupFile()));
+        } catch (ExporterException e) {
             e.printStackTrace();
             Log.e("GncXmlExporter", "Error creating backup", e);
         }
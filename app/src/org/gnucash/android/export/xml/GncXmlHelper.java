@@ -3,12 +3,13 @@ package org.gnucash.android.export.xml;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.TransactionType;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlSerializer;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Currency;
 import java.util.Date;
 
 /**
@@ -108,41 +109,82 @@ public abstract class GncXmlHelper {
      */
     public static String formatMoney(Split split){
         Money amount = split.getType() == TransactionType.DEBIT ? split.getAmount() : split.getAmount().negate();
-        BigDecimal decimal = amount.asBigDecimal().multiply(new BigDecimal(100));
-        return decimal.stripTrailingZeros().toPlainString() + "/100";
+        return amount.getNumerator() + "/" + amount.getDenominator();
     }
 
     /**
-     * Parses amount strings from GnuCash XML into {@link java.math.BigDecimal}s
-     * @param amountString String containing the amount
+     * Parses amount strings from GnuCash XML into {@link java.math.BigDecimal}s.
+     * Amounts whose denominator is not a power of 10 are rounded to the fraction digits of the currency
+     * @param amountString String containing the amount as numerator and denominator e.g. "1250/100"
+     * @param currency Currency of the amount
      * @return BigDecimal with numerical value
+     * @see Money#rationalToDecimal(long, long, int)
      */
-    public static BigDecimal parseMoney(String amountString){
+    public static BigDecimal parseMoney(String amountString, Currency currency){
         String[] tokens = amountString.split("/");
-        BigDecimal numerator = new BigDecimal(tokens[0]);
-        BigDecimal denominator = new BigDecimal(tokens[1]);
+        long numerator = Long.parseLong(tokens[0].trim());
+        long denominator = tokens.length > 1 ? Long.parseLong(tokens[1].trim()) : 1;
 
-        return numerator.divide(denominator);
+        return Money.rationalToDecimal(numerator, denominator, currency.getDefaultFractionDigits());
     }
 
     /**
-     * Helper method for creating slot key-value pairs in the GnuCash XML structure.
-     * <p>This method is only a helper for creating slots whose values are of string type</p>
-     * @param doc {@link org.w3c.dom.Document} for creating nodes
+     * Helper method for writing slot key-value pairs in the GnuCash XML structure.
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the slot is written
      * @param key Slot key as string
      * @param value Slot value as String
-     * @return Element node containing the key-value pair
+     * @param valueType Type of the slot value e.g. {@link #ATTR_VALUE_STRING}
+     * @throws IOException if the slot could not be written
      */
-    public static Element createSlot(Document doc, String key, String value, String valueType){
-        Element slotNode  = doc.createElement(TAG_SLOT);
-        Element slotKeyNode = doc.createElement(TAG_SLOT_KEY);
-        slotKeyNode.appendChild(doc.createTextNode(key));
-        Element slotValueNode = doc.createElement(TAG_SLOT_VALUE);
-        slotValueNode.setAttribute(ATTR_KEY_TYPE, valueType);
-        slotValueNode.appendChild(doc.createTextNode(value));
-        slotNode.appendChild(slotKeyNode);
-        slotNode.appendChild(slotValueNode);
-
-        return slotNode;
+    public static void writeSlot(XmlSerializer serializer, String key, String value, String valueType) throws IOException {
+        serializer.startTag(null, TAG_SLOT);
+        writeTextElement(serializer, TAG_SLOT_KEY, key);
+        serializer.startTag(null, TAG_SLOT_VALUE);
+        serializer.attribute(null, ATTR_KEY_TYPE, valueType);
+        serializer.text(value);
+        serializer.endTag(null, TAG_SLOT_VALUE);
+        serializer.endTag(null, TAG_SLOT);
+    }
+
+    /**
+     * Writes an element which contains only text
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the element is written
+     * @param tag Qualified tag name of the element
+     * @param text Text content of the element. If <code>null</code>, an empty element is written
+     * @throws IOException if the element could not be written
+     */
+    public static void writeTextElement(XmlSerializer serializer, String tag, String text) throws IOException {
+        serializer.startTag(null, tag);
+        if (text != null)
+            serializer.text(text);
+        serializer.endTag(null, tag);
+    }
+
+    /**
+     * Writes an element containing a GUID, e.g. <code>&lt;act:id type="guid"&gt;</code>
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the element is written
+     * @param tag Qualified tag name of the element
+     * @param guid GUID string
+     * @throws IOException if the element could not be written
+     */
+    public static void writeGuidElement(XmlSerializer serializer, String tag, String guid) throws IOException {
+        serializer.startTag(null, tag);
+        serializer.attribute(null, ATTR_KEY_TYPE, ATTR_VALUE_GUID);
+        serializer.text(guid);
+        serializer.endTag(null, tag);
+    }
+
+    /**
+     * Writes an ISO 4217 commodity reference, as used for account commodities and transaction currencies
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the element is written
+     * @param tag Qualified tag name of the element
+     * @param currencyCode ISO 4217 currency code
+     * @throws IOException if the element could not be written
+     */
+    public static void writeCommodity(XmlSerializer serializer, String tag, String currencyCode) throws IOException {
+        serializer.startTag(null, tag);
+        writeTextElement(serializer, TAG_COMMODITY_SPACE, "ISO4217");
+        writeTextElement(serializer, TAG_COMMODITY_ID, currencyCode);
+        serializer.endTag(null, tag);
     }
 }
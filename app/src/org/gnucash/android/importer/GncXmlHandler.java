@@ -20,6 +20,8 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountBalancesDbAdapter;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.TransactionsDbAdapter;
 import org.gnucash.android.export.xml.GncXmlHelper;
 import org.gnucash.android.model.*;
@@ -30,6 +32,10 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.text.ParseException;
 import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -91,6 +97,46 @@ public class GncXmlHandler extends DefaultHandler {
     private Context mContext;
     private TransactionsDbAdapter mTransactionsDbAdapter;
 
+    /**
+     * Database into which the records are imported, if the handler was created for an already open database
+     */
+    private SQLiteDatabase mDb;
+
+    /**
+     * If <code>true</code>, records are inserted without checking for existing records with the same unique ID
+     * and the cached balances are rebuilt at the end of the document. Only valid for an empty database
+     */
+    private boolean mBulkImport = false;
+
+    /**
+     * Number of transactions after which the database transaction of the import yields to other users
+     * of the database. Zero if the import should never yield.
+     * <p>A bulk import never yields, because the account hierarchy and the cached balances are only
+     * rebuilt at the end of the document and must not be committed in an inconsistent state</p>
+     */
+    private int mYieldInterval = 0;
+
+    /**
+     * Number of transactions saved so far
+     */
+    private int mTransactionCount = 0;
+
+    /**
+     * Fully qualified names of the accounts imported so far in bulk mode, keyed by account UID
+     */
+    private Map<String, String> mAccountFullNames = new HashMap<String, String>();
+
+    /**
+     * UIDs of accounts imported in bulk mode before their parent account, whose fully qualified names
+     * are resolved at the end of the document
+     */
+    private Set<String> mUnresolvedAccountUIDs = new HashSet<String>();
+
+    /**
+     * UID of the GnuCash ROOT account, which is not part of the fully qualified account names
+     */
+    private String mRootAccountUID;
+
     public GncXmlHandler(Context context) {
         mContext = context;
         mAccountsDbAdapter = new AccountsDbAdapter(mContext);
@@ -109,6 +155,31 @@ public class GncXmlHandler extends DefaultHandler {
         mContent = new StringBuilder();
     }
 
+    /**
+     * Instantiates handler to parse XML into already open db.
+     * <p>In bulk import mode, accounts, transactions and splits are inserted with compiled statements without
+     * looking up existing records, and the cached account balances are rebuilt once at the end of the document.
+     * Bulk import mode may only be used when importing into an empty database, and the caller should wrap
+     * the whole parse in a database transaction</p>
+     * @param db SQLite Database
+     * @param bulkImport <code>true</code> to import in bulk mode
+     */
+    public GncXmlHandler(SQLiteDatabase db, boolean bulkImport){
+        this(db);
+        mDb = db;
+        mBulkImport = bulkImport;
+    }
+
+    /**
+     * Sets the number of transactions after which the database transaction yields to other users of the database,
+     * committing the records imported so far. Yielding is only possible if the caller owns the outermost
+     * database transaction
+     * @param yieldInterval Number of transactions between yield points, zero to never yield
+     */
+    void setYieldInterval(int yieldInterval){
+        mYieldInterval = yieldInterval;
+    }
+
     @Override
     public void startElement(String uri, String localName,
                              String qualifiedName, Attributes attributes) throws SAXException {
@@ -182,7 +253,11 @@ public class GncXmlHandler extends DefaultHandler {
 
         if (qualifiedName.equalsIgnoreCase(GncXmlHelper.TAG_ACCOUNT)){
             Log.d(LOG_TAG, "Saving account...");
-            mAccountsDbAdapter.addAccount(mAccount);
+            if (mBulkImport) {
+                insertAccount(mAccount);
+            } else {
+                mAccountsDbAdapter.addAccount(mAccount);
+            }
 
             mAccount = null;
             //reset ISO 4217 flag for next account
@@ -288,7 +363,8 @@ public class GncXmlHandler extends DefaultHandler {
         }
 
         if (qualifiedName.equalsIgnoreCase(GncXmlHelper.TAG_SPLIT_VALUE)){
-            Money amount = new Money(GncXmlHelper.parseMoney(characterString), mTransaction.getCurrency());
+            Money amount = new Money(GncXmlHelper.parseMoney(characterString, mTransaction.getCurrency()),
+                    mTransaction.getCurrency());
             mSplit.setType(amount.isNegative() ? TransactionType.CREDIT : TransactionType.DEBIT);
             mSplit.setAmount(amount.absolute());
         }
@@ -304,10 +380,17 @@ public class GncXmlHandler extends DefaultHandler {
         if (qualifiedName.equalsIgnoreCase(GncXmlHelper.TAG_TRANSACTION)){
             if (mTransaction.getRecurrencePeriod() > 0){ //TODO: Fix this when scheduled actions are expanded
                 mTransactionsDbAdapter.scheduleTransaction(mTransaction);
+            } else if (mBulkImport) {
+                mTransactionsDbAdapter.insertTransaction(mTransaction);
             } else {
                 mTransactionsDbAdapter.addTransaction(mTransaction);
             }
             mTransaction = null;
+
+            mTransactionCount++;
+            if (mDb != null && !mBulkImport && mYieldInterval > 0 && mTransactionCount % mYieldInterval == 0){
+                mDb.yieldIfContendedSafely();
+            }
         }
 
         //reset the accumulated characters
@@ -319,9 +402,41 @@ public class GncXmlHandler extends DefaultHandler {
         mContent.append(chars, start, length);
     }
 
+    /**
+     * Inserts the account in bulk import mode, after setting its fully qualified name.
+     * Accounts are normally listed after their parent account in GnuCash XML. If the parent account has not been
+     * imported yet, the fully qualified name of the account is resolved at the end of the document
+     * @param account Account to be inserted
+     */
+    private void insertAccount(Account account){
+        String accountUID = account.getUID();
+        String parentUID = account.getParentUID();
+        if (account.getAccountType() == AccountType.ROOT){
+            mRootAccountUID = accountUID;
+        } else if (parentUID != null && !parentUID.equals(mRootAccountUID)){
+            String parentFullName = mAccountFullNames.get(parentUID);
+            if (parentFullName == null || mUnresolvedAccountUIDs.contains(parentUID)){
+                mUnresolvedAccountUIDs.add(accountUID);
+            } else {
+                account.setFullName(parentFullName + AccountsDbAdapter.ACCOUNT_NAME_SEPARATOR + account.getName());
+            }
+        }
+        mAccountFullNames.put(accountUID, account.getFullName());
+        mAccountsDbAdapter.insertAccount(account);
+    }
+
     @Override
     public void endDocument() throws SAXException {
         super.endDocument();
+        if (mBulkImport) {
+            mAccountsDbAdapter.rebuildAccountHierarchy();
+            for (String accountUID : mUnresolvedAccountUIDs) {
+                mAccountsDbAdapter.updateAccount(mAccountsDbAdapter.getAccountID(accountUID),
+                        DatabaseSchema.AccountEntry.COLUMN_FULL_NAME,
+                        mAccountsDbAdapter.getFullyQualifiedAccountName(accountUID));
+            }
+            new AccountBalancesDbAdapter(mDb).rebuildBalances();
+        }
         mAccountsDbAdapter.close();
         mTransactionsDbAdapter.close();
     }
@@ -16,7 +16,15 @@
 package org.gnucash.android.importer;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountBalancesDbAdapter;
+import org.gnucash.android.db.AccountMetadataCache;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.DatabaseConnection;
+import org.gnucash.android.db.DatabaseSchema;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -35,6 +43,16 @@ import java.io.InputStream;
  */
 public class GncXmlImporter {
 
+    /**
+     * Tag for logging
+     */
+    private static final String LOG_TAG = "GncXmlImporter";
+
+    /**
+     * Number of imported transactions after which the import yields the database to other threads
+     */
+    private static final int TRANSACTIONS_PER_YIELD = 500;
+
     /**
      * Parses XML into an already open database.
      * <p>This method is used mainly by the {@link org.gnucash.android.db.DatabaseHelper} for database migrations.<br>
@@ -57,7 +75,11 @@ public class GncXmlImporter {
     }
 
     /**
-     * Parse GnuCash XML input and populates the database
+     * Parse GnuCash XML input and populates the database.
+     * <p>When importing into an empty database, the records are inserted in bulk without looking up existing records
+     * and the whole import is written in one database transaction, so that a failed import leaves the database empty.
+     * Otherwise the import yields periodically to other threads, which commits the records imported so far.
+     * If such an import fails, the account hierarchy and the cached balances are rebuilt from the committed records</p>
      * @param context Application context
      * @param gncXmlInputStream InputStream source of the GnuCash XML file
      */
@@ -70,8 +92,54 @@ public class GncXmlImporter {
 
         //TODO: Set an error handler which can log errors
 
-        GncXmlHandler handler = new GncXmlHandler(context);
-        xr.setContentHandler(handler);
-        xr.parse(new InputSource(bos));
+        DatabaseConnection dbConnection = GnuCashApplication.getDatabaseConnection(context);
+        SQLiteDatabase db = dbConnection.acquire();
+        try {
+            boolean bulkImport = isEmpty(db);
+            Log.i(LOG_TAG, bulkImport ? "Importing into empty database in bulk mode" : "Importing into existing database");
+
+            boolean imported = false;
+            db.beginTransaction();
+            try {
+                GncXmlHandler handler = new GncXmlHandler(db, bulkImport);
+                handler.setYieldInterval(TRANSACTIONS_PER_YIELD);
+                xr.setContentHandler(handler);
+                xr.parse(new InputSource(bos));
+                db.setTransactionSuccessful();
+                imported = true;
+            } finally {
+                db.endTransaction();
+                AccountMetadataCache.getInstance(db).transactionEnded();
+                if (!imported)
+                    rebuildCaches(db);
+            }
+        } finally {
+            dbConnection.release();
+        }
+    }
+
+    /**
+     * Rebuilds the account hierarchy and the cached account balances after a failed import.
+     * <p>Records committed at a yield point of the import stay in the database, so the caches are derived
+     * from them again. Errors are only logged, so that they do not hide the cause of the failed import</p>
+     * @param db SQLite database
+     */
+    private static void rebuildCaches(SQLiteDatabase db){
+        try {
+            new AccountsDbAdapter(db).rebuildAccountHierarchy();
+            new AccountBalancesDbAdapter(db).rebuildBalances();
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Error rebuilding the account caches after a failed import: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if the database contains no accounts and no transactions
+     * @param db SQLite database
+     * @return <code>true</code> if the database is empty, <code>false</code> otherwise
+     */
+    private static boolean isEmpty(SQLiteDatabase db){
+        return DatabaseUtils.queryNumEntries(db, DatabaseSchema.AccountEntry.TABLE_NAME) == 0
+                && DatabaseUtils.queryNumEntries(db, DatabaseSchema.TransactionEntry.TABLE_NAME) == 0;
     }
 }
@@ -23,7 +23,9 @@ import org.gnucash.android.export.qif.QifHelper;
 import org.gnucash.android.export.xml.GncXmlHelper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlSerializer;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -69,6 +71,19 @@ public class Account {
      */
 	public enum OfxAccountType {CHECKING, SAVINGS, MONEYMRKT, CREDITLINE }
 
+    /**
+     * Source of the transactions of an account, from which they are loaded when they are first accessed
+     * @see #setTransactionsLoader(TransactionsLoader)
+     */
+    public interface TransactionsLoader {
+        /**
+         * Loads the transactions of an account
+         * @param accountUID Unique ID of the account
+         * @return List of the transactions of the account
+         */
+        public List<Transaction> loadTransactions(String accountUID);
+    }
+
     /**
 	 * Unique Identifier of the account
 	 * It is generated when the account is created and can be set a posteriori as well
@@ -98,10 +113,17 @@ public class Account {
 	private AccountType mAccountType = AccountType.CASH;
 	
 	/**
-	 * List of transactions in this account
+	 * List of transactions in this account.
+	 * Only valid once the transactions have been loaded, see {@link #mTransactionsLoader}
 	 */
 	private List<Transaction> mTransactionsList = new ArrayList<Transaction>();
 
+	/**
+	 * Loader of the transactions of an account read from the database.
+	 * The transactions are loaded on first access, until then this is not <code>null</code>
+	 */
+	private TransactionsLoader mTransactionsLoader;
+
 	/**
 	 * Account UID of the parent account. Can be null
 	 */
@@ -257,7 +279,7 @@ public class Account {
 	 */
 	public void addTransaction(Transaction transaction){
 		transaction.setCurrencyCode(mCurrency.getCurrencyCode());
-		mTransactionsList.add(transaction);
+		getTransactions().add(transaction);
 	}
 	
 	/**
@@ -269,6 +291,26 @@ public class Account {
 	 */
 	public void setTransactions(List<Transaction> transactionsList){
 		this.mTransactionsList = transactionsList;
+		mTransactionsLoader = null;
+	}
+
+	/**
+	 * Sets the loader of the transactions of this account, which replaces any previous transactions.
+	 * The transactions are loaded when they are first accessed
+	 * @param transactionsLoader Loader of the transactions of the account
+	 */
+	public void setTransactionsLoader(TransactionsLoader transactionsLoader){
+		mTransactionsLoader = transactionsLoader;
+		mTransactionsList = null;
+	}
+
+	/**
+	 * Returns true if the transactions of the account are held in memory, i.e. they were set or added directly,
+	 * or have been loaded since they were set to be loaded lazily
+	 * @return <code>true</code> if the transactions are loaded, <code>false</code> otherwise
+	 */
+	public boolean isTransactionsLoaded(){
+		return mTransactionsLoader == null;
 	}
 		
 	/**
@@ -276,14 +318,19 @@ public class Account {
 	 * @param transaction {@link Transaction} to be removed from account
 	 */
 	public void removeTransaction(Transaction transaction){
-		mTransactionsList.remove(transaction);
+		getTransactions().remove(transaction);
 	}
 	
 	/**
-	 * Returns a list of transactions for this account
+	 * Returns a list of transactions for this account.
+	 * If the transactions are loaded lazily, they are loaded by the first call
 	 * @return Array list of transactions for the account
 	 */
 	public List<Transaction> getTransactions(){
+		if (mTransactionsLoader != null){
+			mTransactionsList = mTransactionsLoader.loadTransactions(mUID);
+			mTransactionsLoader = null;
+		}
 		return mTransactionsList;
 	}
 	
@@ -292,7 +339,7 @@ public class Account {
 	 * @return Number transactions in account
 	 */
 	public int getTransactionCount(){
-		return mTransactionsList.size();
+		return getTransactions().size();
 	}
 	
 	/**
@@ -301,7 +348,7 @@ public class Account {
 	 * @return <code>true</code> if there are unexported transactions, <code>false</code> otherwise.
 	 */
 	public boolean hasUnexportedTransactions(){
-		for (Transaction transaction : mTransactionsList) {
+		for (Transaction transaction : getTransactions()) {
 			if (!transaction.isExported())
 				return true;			
 		}
@@ -315,7 +362,7 @@ public class Account {
 	 */
 	public Money getBalance(){
 		Money balance = Money.createZeroInstance(mCurrency.getCurrencyCode());
-        for (Transaction transaction : mTransactionsList) {
+        for (Transaction transaction : getTransactions()) {
             balance.add(transaction.getBalance(mUID));
 		}
 		return balance;
@@ -525,7 +572,7 @@ public class Account {
 		bankTransactionsList.appendChild(dtstart);
 		bankTransactionsList.appendChild(dtend);
 		
-		for (Transaction transaction : mTransactionsList) {
+		for (Transaction transaction : getTransactions()) {
 			if (!exportAllTransactions && transaction.isExported())
 				continue;
             bankTransactionsList.appendChild(transaction.toOFX(doc, mUID));
@@ -543,12 +590,11 @@ public class Account {
 	}
 
     /**
-     * Exports the account info and transactions in the QIF format
-     * @param exportAllTransactions Flag to determine whether to export all transactions, or only new transactions since last export
-     * @param exportedTransactionUIDs List of unique IDs of transactions which have already been exported (in the current session). Used to avoid duplicating splits
-     * @return QIF representation of the account information
+     * Returns the QIF header of the account, which precedes the QIF entries of its transactions.
+     * The transactions themselves are written with {@link Transaction#toQIF(String)}
+     * @return QIF account header, terminated by a new line
      */
-    public String toQIF(boolean exportAllTransactions, List<String> exportedTransactionUIDs) {
+    public String toQifHeader() {
         StringBuilder accountQIFBuilder = new StringBuilder();
         final String newLine = "\n";
 
@@ -562,84 +608,49 @@ public class Account {
 
         String header = QifHelper.getQifHeader(mAccountType);
         accountQIFBuilder.append(header + newLine);
-
-        for (Transaction transaction : mTransactionsList) {
-            if (!exportAllTransactions && transaction.isExported())
-                continue;
-            if (exportedTransactionUIDs.contains(transaction.getUID()))
-                continue;
-
-            accountQIFBuilder.append(transaction.toQIF(mUID) + newLine);
-            exportedTransactionUIDs.add(transaction.getUID());
-        }
         return accountQIFBuilder.toString();
     }
 
     /**
-     * Method which generates the GnuCash XML DOM for this account
-     * @param doc {@link org.w3c.dom.Document} for creating nodes
-     * @param rootNode {@link org.w3c.dom.Element} node to which to attach the XML
+     * Writes the GnuCash XML representation of this account
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the account is written
+     * @throws IOException if the XML could not be written
      */
-    public void toGncXml(Document doc, Element rootNode) {
-        Element nameNode = doc.createElement(GncXmlHelper.TAG_NAME);
-        nameNode.appendChild(doc.createTextNode(mName));
-
-        Element idNode = doc.createElement(GncXmlHelper.TAG_ACCT_ID);
-        idNode.setAttribute(GncXmlHelper.ATTR_KEY_TYPE, GncXmlHelper.ATTR_VALUE_GUID);
-        idNode.appendChild(doc.createTextNode(mUID));
-
-        Element typeNode = doc.createElement(GncXmlHelper.TAG_TYPE);
-        typeNode.appendChild(doc.createTextNode(mAccountType.name()));
-
-        Element commodityNode = doc.createElement(GncXmlHelper.TAG_COMMODITY);
-        Element cmdtySpacenode = doc.createElement(GncXmlHelper.TAG_COMMODITY_SPACE);
-        cmdtySpacenode.appendChild(doc.createTextNode("ISO4217"));
-        commodityNode.appendChild(cmdtySpacenode);
-        Element cmdtyIdNode = doc.createElement(GncXmlHelper.TAG_COMMODITY_ID);
-        cmdtyIdNode.appendChild(doc.createTextNode(mCurrency.getCurrencyCode()));
-        commodityNode.appendChild(cmdtyIdNode);
-
-        Element commodityScuNode = doc.createElement(GncXmlHelper.TAG_COMMODITY_SCU);
-        int fractionDigits = mCurrency.getDefaultFractionDigits();
-        commodityScuNode.appendChild(doc.createTextNode(Integer.toString((int) Math.pow(10, fractionDigits))));
+    public void toGncXml(XmlSerializer serializer) throws IOException {
+        serializer.startTag(null, GncXmlHelper.TAG_ACCOUNT);
+        serializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_NAME, mName);
+        GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_ACCT_ID, mUID);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_TYPE, mAccountType.name());
+        GncXmlHelper.writeCommodity(serializer, GncXmlHelper.TAG_COMMODITY, mCurrency.getCurrencyCode());
 
-        Element descriptionNode = doc.createElement(GncXmlHelper.TAG_ACCT_DESCRIPTION);
-        descriptionNode.appendChild(doc.createTextNode(mName));
+        int fractionDigits = mCurrency.getDefaultFractionDigits();
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_COMMODITY_SCU,
+                Integer.toString((int) Math.pow(10, fractionDigits)));
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_ACCT_DESCRIPTION, mName);
 
-        Element acctSlotsNode = doc.createElement(GncXmlHelper.TAG_ACT_SLOTS);
-        acctSlotsNode.appendChild(GncXmlHelper.createSlot(doc, GncXmlHelper.KEY_PLACEHOLDER,
-                Boolean.toString(mIsPlaceholderAccount), GncXmlHelper.ATTR_VALUE_STRING));
+        serializer.startTag(null, GncXmlHelper.TAG_ACT_SLOTS);
+        GncXmlHelper.writeSlot(serializer, GncXmlHelper.KEY_PLACEHOLDER,
+                Boolean.toString(mIsPlaceholderAccount), GncXmlHelper.ATTR_VALUE_STRING);
 
         if (mColorCode != null && mColorCode.trim().length() > 0){
-            acctSlotsNode.appendChild(GncXmlHelper.createSlot(doc, GncXmlHelper.KEY_COLOR, mColorCode, GncXmlHelper.ATTR_VALUE_STRING));
+            GncXmlHelper.writeSlot(serializer, GncXmlHelper.KEY_COLOR, mColorCode, GncXmlHelper.ATTR_VALUE_STRING);
         }
 
         if (mDefaultTransferAccountUID != null && mDefaultTransferAccountUID.trim().length() > 0){
-            acctSlotsNode.appendChild(GncXmlHelper.createSlot(doc, GncXmlHelper.KEY_DEFAULT_TRANSFER_ACCOUNT, mDefaultTransferAccountUID, "guid"));
+            GncXmlHelper.writeSlot(serializer, GncXmlHelper.KEY_DEFAULT_TRANSFER_ACCOUNT,
+                    mDefaultTransferAccountUID, GncXmlHelper.ATTR_VALUE_GUID);
         }
 
-        acctSlotsNode.appendChild(GncXmlHelper.createSlot(doc,
-                GncXmlHelper.KEY_FAVORITE, Boolean.toString(mIsFavorite), GncXmlHelper.ATTR_VALUE_STRING));
-
-        Element accountNode = doc.createElement(GncXmlHelper.TAG_ACCOUNT);
-        accountNode.setAttribute(GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
-        accountNode.appendChild(nameNode);
-        accountNode.appendChild(idNode);
-        accountNode.appendChild(typeNode);
-        accountNode.appendChild(commodityNode);
-        accountNode.appendChild(commodityScuNode);
-        accountNode.appendChild(descriptionNode);
-        accountNode.appendChild(acctSlotsNode);
-
+        GncXmlHelper.writeSlot(serializer, GncXmlHelper.KEY_FAVORITE,
+                Boolean.toString(mIsFavorite), GncXmlHelper.ATTR_VALUE_STRING);
+        serializer.endTag(null, GncXmlHelper.TAG_ACT_SLOTS);
 
         if (mParentAccountUID != null && mParentAccountUID.trim().length() > 0){
-            Element parentAccountNode = doc.createElement(GncXmlHelper.TAG_PARENT_UID);
-            parentAccountNode.setAttribute(GncXmlHelper.ATTR_KEY_TYPE, GncXmlHelper.ATTR_VALUE_GUID);
-            parentAccountNode.appendChild(doc.createTextNode(mParentAccountUID));
-            accountNode.appendChild(parentAccountNode);
+            GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_PARENT_UID, mParentAccountUID);
         }
 
-        rootNode.appendChild(accountNode);
+        serializer.endTag(null, GncXmlHelper.TAG_ACCOUNT);
     }
 
 }
@@ -168,6 +168,19 @@ public final class Money implements Comparable<Money>{
         setCurrency(money.getCurrency());
     }
 
+    /**
+     * Overloaded constructor.
+     * Creates a Money object from a rational amount, as stored in the database and used by GnuCash
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount, typically a power of 10
+     * @param currencyCode Currency code as specified by ISO 4217
+     * @see #rationalToDecimal(long, long)
+     */
+    public Money(long numerator, long denominator, String currencyCode){
+        setAmount(rationalToDecimal(numerator, denominator));
+        setCurrency(Currency.getInstance(currencyCode));
+    }
+
     /**
      * Creates a new Money instance with 0 amount and the <code>currencyCode</code>
      * @param currencyCode Currency to use for this money instance
@@ -224,6 +237,34 @@ public final class Money implements Comparable<Money>{
 		return mAmount;
 	}
 	
+	/**
+	 * Returns the numerator of the amount as a rational number.
+	 * The corresponding denominator is returned by {@link #getDenominator()}
+	 * @return Numerator of the amount
+	 * @throws ArithmeticException if the numerator does not fit in a <code>long</code>
+	 */
+	public long getNumerator(){
+		BigDecimal amount = rationalAmount();
+		return amount.movePointRight(amount.scale()).longValueExact();
+	}
+
+	/**
+	 * Returns the denominator of the amount as a rational number, which is always a power of 10
+	 * @return Denominator of the amount
+	 * @throws ArithmeticException if the denominator does not fit in a <code>long</code>
+	 * @see #getNumerator()
+	 */
+	public long getDenominator(){
+		return BigDecimal.ONE.scaleByPowerOfTen(rationalAmount().scale()).longValueExact();
+	}
+
+	/**
+	 * Returns the amount with a non-negative scale, so that it can be represented as a fraction with power of 10 denominator
+	 */
+	private BigDecimal rationalAmount(){
+		return mAmount.scale() < 0 ? mAmount.setScale(0) : mAmount;
+	}
+
 	/**
 	 * Returns the amount this object
 	 * @return Double value of the amount in the object
@@ -466,6 +507,64 @@ public final class Money implements Comparable<Money>{
 		return result;		
 	}
 
+    /**
+     * Converts a rational amount into a decimal number.
+     * Denominators which are powers of 10 are converted exactly, others are rounded to 34 significant digits
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @return Decimal value of the amount
+     */
+    public static BigDecimal rationalToDecimal(long numerator, long denominator){
+        int scale = decimalScale(denominator);
+        if (scale >= 0)
+            return BigDecimal.valueOf(numerator, scale);
+
+        return BigDecimal.valueOf(numerator).divide(BigDecimal.valueOf(denominator), MathContext.DECIMAL128);
+    }
+
+    /**
+     * Converts a rational amount into a decimal number which can be stored as a rational amount again.
+     * Denominators which are powers of 10 are converted exactly, others are rounded to <code>fractionDigits</code>
+     * decimal places
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @param fractionDigits Number of decimal places of amounts with other denominators,
+     *                       typically the default fraction digits of the currency
+     * @return Decimal value of the amount
+     */
+    public static BigDecimal rationalToDecimal(long numerator, long denominator, int fractionDigits){
+        int scale = decimalScale(denominator);
+        if (scale >= 0)
+            return BigDecimal.valueOf(numerator, scale);
+
+        return BigDecimal.valueOf(numerator).divide(BigDecimal.valueOf(denominator),
+                Math.max(fractionDigits, 0), DEFAULT_ROUNDING_MODE);
+    }
+
+    /**
+     * Checks whether a denominator is a power of 10, so that the rational amount is a finite decimal number
+     * @param denominator Denominator of a rational amount
+     * @return <code>true</code> if the denominator is a power of 10, <code>false</code> otherwise
+     */
+    public static boolean isDecimalDenominator(long denominator){
+        return decimalScale(denominator) >= 0;
+    }
+
+    /**
+     * Returns the number of decimal places of a denominator which is a power of 10
+     * @param denominator Denominator of a rational amount
+     * @return Exponent of the denominator, or -1 if it is not a power of 10
+     */
+    private static int decimalScale(long denominator){
+        int scale = 0;
+        long remainder = denominator;
+        while (remainder > 1 && remainder % 10 == 0){
+            remainder /= 10;
+            scale++;
+        }
+        return remainder == 1 ? scale : -1;
+    }
+
     /**
      * Returns a new instance of {@link Money} object with the absolute value of the current object
      * @return Money object with absolute value of this instance
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Currency;
+
+/**
+ * Mutable accumulator for summing up money amounts of a single currency.
+ * <p>Unlike {@link Money}, which creates new objects for every operation, the accumulator keeps the running total
+ * in a <code>long</code> as a count of the smallest currency unit (according to the fraction digits of the currency in ISO 4217).
+ * It should be used in loops which add up many amounts, converting the result to {@link Money} at the end.</p>
+ * <p>If the total overflows or an amount has more decimal places than the currency, the accumulator
+ * falls back to {@link BigDecimal} arithmetic for the rest of its lifetime, so no precision is lost.</p>
+ * <p>Instances are not thread-safe</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class MoneyAccumulator {
+
+    /**
+     * Number of decimal places used for currencies without defined fraction digits
+     */
+    private static final int DEFAULT_FRACTION_DIGITS = 2;
+
+    /**
+     * Powers of 10 which fit in a <code>long</code>, indexed by exponent
+     */
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Currency mCurrency;
+
+    /**
+     * Denominator of the amounts, i.e. the number of smallest units per currency unit
+     */
+    private final long mDenominator;
+
+    /**
+     * Running total as count of the smallest currency unit
+     */
+    private long mTotal;
+
+    /**
+     * Running total when the <code>long</code> representation cannot be used anymore, <code>null</code> otherwise
+     */
+    private BigDecimal mDecimalTotal;
+
+    /**
+     * Creates an accumulator with a total of zero
+     * @param currency Currency of the amounts to be accumulated
+     */
+    public MoneyAccumulator(Currency currency){
+        mCurrency = currency;
+        int fractionDigits = currency.getDefaultFractionDigits();
+        long denominator = 1;
+        for (int i = 0; i < (fractionDigits < 0 ? DEFAULT_FRACTION_DIGITS : fractionDigits); i++) {
+            denominator *= 10;
+        }
+        mDenominator = denominator;
+    }
+
+    /**
+     * Creates an accumulator with a total of zero
+     * @param currencyCode ISO 4217 currency code of the amounts to be accumulated
+     */
+    public MoneyAccumulator(String currencyCode){
+        this(Currency.getInstance(currencyCode));
+    }
+
+    /**
+     * Returns the currency of this accumulator
+     * @return Currency of the accumulated amounts
+     */
+    public Currency getCurrency() {
+        return mCurrency;
+    }
+
+    /**
+     * Adds a money amount to the total
+     * @param money Amount to be added
+     * @return This accumulator
+     * @throws IllegalArgumentException if the currency of <code>money</code> differs from the accumulator
+     */
+    public MoneyAccumulator add(Money money){
+        //currency instances are unique per currency code, so comparing references suffices
+        if (money.getCurrency() != mCurrency)
+            throw new IllegalArgumentException("Only Money with same currency can be added");
+        return add(money.asBigDecimal());
+    }
+
+    /**
+     * Subtracts a money amount from the total
+     * @param money Amount to be subtracted
+     * @return This accumulator
+     * @throws IllegalArgumentException if the currency of <code>money</code> differs from the accumulator
+     */
+    public MoneyAccumulator subtract(Money money){
+        if (money.getCurrency() != mCurrency)
+            throw new IllegalArgumentException("Only Money with same currency can be subtracted");
+        return subtract(money.asBigDecimal());
+    }
+
+    /**
+     * Adds a decimal amount in the currency of the accumulator to the total.
+     * <p>The amount is taken apart into its unscaled value and scale, without creating intermediate objects
+     * for amounts whose unscaled value fits in a <code>long</code></p>
+     * @param amount Amount to be added
+     * @return This accumulator
+     */
+    public MoneyAccumulator add(BigDecimal amount){
+        int scale = amount.scale();
+        BigInteger unscaledValue = amount.unscaledValue();
+        if (scale >= 0 && scale < POWERS_OF_TEN.length && unscaledValue.bitLength() < 64)
+            return add(unscaledValue.longValue(), POWERS_OF_TEN[scale]);
+
+        mDecimalTotal = toBigDecimal().add(amount);
+        return this;
+    }
+
+    /**
+     * Subtracts a decimal amount in the currency of the accumulator from the total
+     * @param amount Amount to be subtracted
+     * @return This accumulator
+     * @see #add(java.math.BigDecimal)
+     */
+    public MoneyAccumulator subtract(BigDecimal amount){
+        int scale = amount.scale();
+        BigInteger unscaledValue = amount.unscaledValue();
+        if (scale >= 0 && scale < POWERS_OF_TEN.length && unscaledValue.bitLength() < 64)
+            return subtract(unscaledValue.longValue(), POWERS_OF_TEN[scale]);
+
+        mDecimalTotal = toBigDecimal().subtract(amount);
+        return this;
+    }
+
+    /**
+     * Adds a rational amount in the currency of the accumulator to the total
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @return This accumulator
+     */
+    public MoneyAccumulator add(long numerator, long denominator){
+        if (mDecimalTotal == null){
+            long units = toUnits(numerator, denominator);
+            if (units != Long.MIN_VALUE){
+                long sum = mTotal + units;
+                //overflow if both operands have the same sign and the sum has a different one
+                if (((mTotal ^ sum) & (units ^ sum)) >= 0){
+                    mTotal = sum;
+                    return this;
+                }
+            }
+            mDecimalTotal = Money.rationalToDecimal(mTotal, mDenominator);
+        }
+        mDecimalTotal = mDecimalTotal.add(Money.rationalToDecimal(numerator, denominator));
+        return this;
+    }
+
+    /**
+     * Subtracts a rational amount in the currency of the accumulator from the total
+     * @param numerator Numerator of the amount
+     * @param denominator Denominator of the amount
+     * @return This accumulator
+     */
+    public MoneyAccumulator subtract(long numerator, long denominator){
+        if (numerator == Long.MIN_VALUE){
+            mDecimalTotal = toBigDecimal().subtract(Money.rationalToDecimal(numerator, denominator));
+            return this;
+        }
+        return add(-numerator, denominator);
+    }
+
+    /**
+     * Converts a rational amount to the smallest currency unit
+     * @return Count of smallest currency units, or {@link Long#MIN_VALUE} if the amount cannot be represented exactly
+     */
+    private long toUnits(long numerator, long denominator){
+        if (denominator == mDenominator)
+            return numerator;
+
+        if (denominator > 0 && mDenominator % denominator == 0){
+            long factor = mDenominator / denominator;
+            long units = numerator * factor;
+            if (numerator != 0 && (units / factor != numerator || units == Long.MIN_VALUE))
+                return Long.MIN_VALUE;
+            return units;
+        }
+
+        if (denominator > 0 && denominator % mDenominator == 0){
+            long factor = denominator / mDenominator;
+            if (numerator % factor == 0)
+                return numerator / factor;
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Resets the total to zero
+     */
+    public void reset(){
+        mTotal = 0;
+        mDecimalTotal = null;
+    }
+
+    /**
+     * Returns the accumulated total as a decimal number
+     * @return Total amount
+     */
+    public BigDecimal toBigDecimal(){
+        return mDecimalTotal != null ? mDecimalTotal : Money.rationalToDecimal(mTotal, mDenominator);
+    }
+
+    /**
+     * Returns the accumulated total as a new {@link Money} object
+     * @return Total amount
+     */
+    public Money toMoney(){
+        if (mDecimalTotal == null)
+            return new Money(mTotal, mDenominator, mCurrency.getCurrencyCode());
+        return new Money(mDecimalTotal.toPlainString(), mCurrency.getCurrencyCode());
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + mCurrency.getCurrencyCode();
+    }
+}
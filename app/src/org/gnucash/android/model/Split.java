@@ -1,9 +1,9 @@
 package org.gnucash.android.model;
 
 import org.gnucash.android.export.xml.GncXmlHelper;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlSerializer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
@@ -190,40 +190,20 @@ public class Split {
     }
 
     /**
-     * Creates a GnuCash XML representation of this split
-     * @param doc XML {@link org.w3c.dom.Document} for creating the nodes
-     * @param rootNode Parent node to append the split XML to
+     * Writes the GnuCash XML representation of this split
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the split is written
+     * @throws IOException if the XML could not be written
      */
-    public void toGncXml(Document doc, Element rootNode) {
-        Element idNode = doc.createElement(GncXmlHelper.TAG_SPLIT_ID);
-        idNode.setAttribute("type", "guid");
-        idNode.appendChild(doc.createTextNode(mUID));
-
-        Element memoNode = doc.createElement(GncXmlHelper.TAG_SPLIT_MEMO);
-        if (mMemo != null)
-            memoNode.appendChild(doc.createTextNode(mMemo));
-
-        Element stateNode = doc.createElement(GncXmlHelper.TAG_RECONCILED_STATE);
-        stateNode.appendChild(doc.createTextNode("n"));
-
-        Element valueNode = doc.createElement(GncXmlHelper.TAG_SPLIT_VALUE);
-        valueNode.appendChild(doc.createTextNode(GncXmlHelper.formatMoney(this)));
-
-        Element quantityNode = doc.createElement(GncXmlHelper.TAG_SPLIT_QUANTITY);
-        quantityNode.appendChild(doc.createTextNode(GncXmlHelper.formatMoney(this)));
-
-        Element accountNode = doc.createElement(GncXmlHelper.TAG_SPLIT_ACCOUNT);
-        accountNode.setAttribute("type", "guid");
-        accountNode.appendChild(doc.createTextNode(mAccountUID));
-
-        Element splitNode = doc.createElement(GncXmlHelper.TAG_TRN_SPLIT);
-        splitNode.appendChild(idNode);
-        splitNode.appendChild(memoNode);
-        splitNode.appendChild(stateNode);
-        splitNode.appendChild(valueNode);
-        splitNode.appendChild(quantityNode);
-        splitNode.appendChild(accountNode);
-
-        rootNode.appendChild(splitNode);
+    public void toGncXml(XmlSerializer serializer) throws IOException {
+        String amount = GncXmlHelper.formatMoney(this);
+
+        serializer.startTag(null, GncXmlHelper.TAG_TRN_SPLIT);
+        GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_SPLIT_ID, mUID);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_SPLIT_MEMO, mMemo);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_RECONCILED_STATE, "n");
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_SPLIT_VALUE, amount);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_SPLIT_QUANTITY, amount);
+        GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_SPLIT_ACCOUNT, mAccountUID);
+        serializer.endTag(null, GncXmlHelper.TAG_TRN_SPLIT);
     }
 }
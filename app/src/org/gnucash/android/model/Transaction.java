@@ -25,7 +25,9 @@ import org.gnucash.android.export.xml.GncXmlHelper;
 import org.gnucash.android.model.Account.OfxAccountType;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xmlpull.v1.XmlSerializer;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -75,6 +77,12 @@ public class Transaction {
      */
     public static final String EXTRA_SPLITS = "org.gnucash.android.extra.transaction.splits";
 
+    /**
+     * Argument key for passing the unique ID of the transaction.
+     * A transaction whose unique ID has already been recorded is ignored, so broadcasts can safely be repeated
+     */
+    public static final String EXTRA_UID = "org.gnucash.android.extra.transaction.uid";
+
     /**
      * Currency used by splits in this transaction
      */
@@ -248,27 +256,21 @@ public class Transaction {
         accountsDbAdapter.close();
 
         boolean isDebitAccount = accountType.hasDebitNormalBalance();
-        Money balance = Money.createZeroInstance(currencyCode);
+        MoneyAccumulator balance = new MoneyAccumulator(currencyCode);
         for (Split split : splitList) {
             if (!split.getAccountUID().equals(accountUID))
                 continue;
-            Money absAmount = split.getAmount().absolute().withCurrency(Currency.getInstance(currencyCode));
+            //the amount is taken in the account currency, no conversion is performed
+            BigDecimal amount = split.getAmount().asBigDecimal();
             boolean isDebitSplit = split.getType() == TransactionType.DEBIT;
-            if (isDebitAccount) {
-                if (isDebitSplit) {
-                    balance = balance.add(absAmount);
-                } else {
-                    balance = balance.subtract(absAmount);
-                }
+            //the absolute amount is added for splits on the normal balance side, subtracted otherwise
+            if ((isDebitAccount == isDebitSplit) == (amount.signum() >= 0)) {
+                balance.add(amount);
             } else {
-                if (isDebitSplit) {
-                    balance = balance.subtract(absAmount);
-                } else {
-                    balance = balance.add(absAmount);
-                }
+                balance.subtract(amount);
             }
         }
-        return balance;
+        return balance.toMoney();
     }
 
     /**
@@ -594,6 +596,7 @@ public class Transaction {
     public static Intent createIntent(Transaction transaction){
         Intent intent = new Intent(Intent.ACTION_INSERT);
         intent.setType(Transaction.MIME_TYPE);
+        intent.putExtra(Transaction.EXTRA_UID, transaction.getUID());
         intent.putExtra(Intent.EXTRA_TITLE, transaction.getDescription());
         intent.putExtra(Intent.EXTRA_TEXT, transaction.getNote());
         intent.putExtra(Account.EXTRA_CURRENCY_CODE, transaction.getCurrencyCode());
@@ -605,62 +608,46 @@ public class Transaction {
         return intent;
     }
 
-    public void toGncXml(Document doc, Element rootElement) {
-        Element idNode = doc.createElement(GncXmlHelper.TAG_TRX_ID);
-        idNode.setAttribute(GncXmlHelper.ATTR_KEY_TYPE, GncXmlHelper.ATTR_VALUE_GUID);
-        idNode.appendChild(doc.createTextNode(mUID));
-
-        Element currencyNode = doc.createElement(GncXmlHelper.TAG_TRX_CURRENCY);
-        Element cmdtySpacenode = doc.createElement(GncXmlHelper.TAG_COMMODITY_SPACE);
-        cmdtySpacenode.appendChild(doc.createTextNode("ISO4217"));
-        currencyNode.appendChild(cmdtySpacenode);
-        Element cmdtyIdNode = doc.createElement(GncXmlHelper.TAG_COMMODITY_ID);
-        cmdtyIdNode.appendChild(doc.createTextNode(mCurrencyCode));
-        currencyNode.appendChild(cmdtyIdNode);
-
-        Element datePostedNode = doc.createElement(GncXmlHelper.TAG_DATE_POSTED);
-        Element datePNode = doc.createElement(GncXmlHelper.TAG_DATE);
-        datePNode.appendChild(doc.createTextNode(GncXmlHelper.formatDate(mTimestamp)));
-        datePostedNode.appendChild(datePNode);
-
-        Element dateEneteredNode = doc.createElement(GncXmlHelper.TAG_DATE_ENTERED);
-        Element dateENode = doc.createElement(GncXmlHelper.TAG_DATE);
-        dateENode.appendChild(doc.createTextNode(GncXmlHelper.formatDate(mTimestamp)));
-        dateEneteredNode.appendChild(dateENode);
-
-        Element descriptionNode = doc.createElement(GncXmlHelper.TAG_TRN_DESCRIPTION);
-        if (mDescription != null) {
-            descriptionNode.appendChild(doc.createTextNode(mDescription));
-        }
+    /**
+     * Writes the GnuCash XML representation of this transaction and its splits
+     * @param serializer {@link org.xmlpull.v1.XmlSerializer} to which the transaction is written
+     * @throws IOException if the XML could not be written
+     */
+    public void toGncXml(XmlSerializer serializer) throws IOException {
+        serializer.startTag(null, GncXmlHelper.TAG_TRANSACTION);
+        serializer.attribute(null, GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
+        GncXmlHelper.writeGuidElement(serializer, GncXmlHelper.TAG_TRX_ID, mUID);
+        GncXmlHelper.writeCommodity(serializer, GncXmlHelper.TAG_TRX_CURRENCY, mCurrencyCode);
+
+        String date = GncXmlHelper.formatDate(mTimestamp);
+        serializer.startTag(null, GncXmlHelper.TAG_DATE_POSTED);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_DATE, date);
+        serializer.endTag(null, GncXmlHelper.TAG_DATE_POSTED);
+
+        serializer.startTag(null, GncXmlHelper.TAG_DATE_ENTERED);
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_DATE, date);
+        serializer.endTag(null, GncXmlHelper.TAG_DATE_ENTERED);
+
+        GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_TRN_DESCRIPTION, mDescription);
 
-        Element trnSlotsNode = doc.createElement(GncXmlHelper.TAG_TRN_SLOTS);
         if (mNotes != null && mNotes.length() > 0) {
-            trnSlotsNode.appendChild(GncXmlHelper.createSlot(doc, GncXmlHelper.KEY_NOTES, mNotes, GncXmlHelper.ATTR_VALUE_STRING));
+            serializer.startTag(null, GncXmlHelper.TAG_TRN_SLOTS);
+            GncXmlHelper.writeSlot(serializer, GncXmlHelper.KEY_NOTES, mNotes, GncXmlHelper.ATTR_VALUE_STRING);
             //TODO: Consider adding future transactions date as slot here too
-        }
-        Element trnSplits = doc.createElement(GncXmlHelper.TAG_TRN_SPLITS);
-        for (Split split : mSplitList) {
-            split.toGncXml(doc, trnSplits);
+            serializer.endTag(null, GncXmlHelper.TAG_TRN_SLOTS);
         }
 
-        Element transactionNode = doc.createElement(GncXmlHelper.TAG_TRANSACTION);
-        transactionNode.setAttribute(GncXmlHelper.ATTR_KEY_VERSION, GncXmlHelper.BOOK_VERSION);
-        transactionNode.appendChild(idNode);
-        transactionNode.appendChild(currencyNode);
-        transactionNode.appendChild(datePostedNode);
-        transactionNode.appendChild(dateEneteredNode);
-        transactionNode.appendChild(descriptionNode);
-        if (mNotes != null && mNotes.length() > 0){
-            transactionNode.appendChild(trnSlotsNode);
-        }
         //TODO: Improve xml compatibilty with desktop for scheduled actions
         if (mRecurrencePeriod != 0) {
-            Element recurrenceNode = doc.createElement(GncXmlHelper.TAG_RECURRENCE_PERIOD);
-            recurrenceNode.appendChild(doc.createTextNode(String.valueOf(mRecurrencePeriod)));
-            transactionNode.appendChild(recurrenceNode);
+            GncXmlHelper.writeTextElement(serializer, GncXmlHelper.TAG_RECURRENCE_PERIOD, String.valueOf(mRecurrencePeriod));
+        }
+
+        serializer.startTag(null, GncXmlHelper.TAG_TRN_SPLITS);
+        for (Split split : mSplitList) {
+            split.toGncXml(serializer);
         }
-        transactionNode.appendChild(trnSplits);
+        serializer.endTag(null, GncXmlHelper.TAG_TRN_SPLITS);
 
-        rootElement.appendChild(transactionNode);
+        serializer.endTag(null, GncXmlHelper.TAG_TRANSACTION);
     }
 }
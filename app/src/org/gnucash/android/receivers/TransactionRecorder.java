@@ -21,9 +21,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
-import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.db.TransactionQueueDbAdapter;
 import org.gnucash.android.model.*;
-import org.gnucash.android.ui.widget.WidgetConfigurationActivity;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -38,6 +37,9 @@ import java.util.Currency;
  * create an Account for your transaction splits.
  * <p>Remember to declare the appropriate permissions in order to create transactions with Intents. 
  * The required permission is "org.gnucash.android.permission.RECORD_TRANSACTION"</p>
+ * <p>Received transactions are queued and recorded in batches by the {@link TransactionRecorderService}.
+ * Transactions can be given a unique ID with {@link Transaction#EXTRA_UID}, so that broadcasting
+ * the same transaction again does not record it twice</p>
  * @author Ngewi Fet <ngewif@gmail.com>
  * @see AccountCreator
  * @see org.gnucash.android.model.Transaction#createIntent(org.gnucash.android.model.Transaction)
@@ -56,6 +58,9 @@ public class TransactionRecorder extends BroadcastReceiver {
 			currencyCode = Money.DEFAULT_CURRENCY_CODE;
 
         Transaction transaction = new Transaction(name);
+        String transactionUID = args.getString(Transaction.EXTRA_UID);
+        if (transactionUID != null)
+            transaction.setUID(transactionUID);
         transaction.setTime(System.currentTimeMillis());
         transaction.setNote(note);
         transaction.setCurrencyCode(currencyCode);
@@ -91,12 +96,12 @@ public class TransactionRecorder extends BroadcastReceiver {
             }
         }
 
-		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(context);
-		transactionsDbAdapter.addTransaction(transaction);
-		
-		WidgetConfigurationActivity.updateAllWidgets(context);
+		//only queue the transaction here, it is recorded in the background together with other received transactions
+		TransactionQueueDbAdapter transactionQueueDbAdapter = new TransactionQueueDbAdapter(context);
+		transactionQueueDbAdapter.enqueue(transaction);
+		transactionQueueDbAdapter.close();
 
-		transactionsDbAdapter.close();
+		context.startService(new Intent(context, TransactionRecorderService.class));
 	}
 
 }
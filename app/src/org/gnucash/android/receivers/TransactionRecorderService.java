@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.receivers;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+import org.gnucash.android.db.TransactionQueueDbAdapter;
+import org.gnucash.android.ui.widget.WidgetConfigurationActivity;
+
+/**
+ * Service which records the transactions queued by the {@link TransactionRecorder} on a background thread.
+ * <p>Every start drains the whole queue in batches of {@link TransactionQueueDbAdapter#DEFAULT_BATCH_SIZE}
+ * transactions. Starts requested while the queue is being drained find it empty and finish immediately,
+ * so a burst of received transactions is recorded in few database transactions and refreshes the widgets once</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class TransactionRecorderService extends IntentService {
+
+    private static final String LOG_TAG = "TransactionRecorderService";
+
+    public TransactionRecorderService() {
+        super(LOG_TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        TransactionQueueDbAdapter transactionQueueDbAdapter = new TransactionQueueDbAdapter(this);
+        int recordedCount = 0;
+        try {
+            int batchCount;
+            while ((batchCount = transactionQueueDbAdapter.recordBatch(TransactionQueueDbAdapter.DEFAULT_BATCH_SIZE)) > 0){
+                recordedCount += batchCount;
+            }
+        } finally {
+            transactionQueueDbAdapter.close();
+        }
+
+        if (recordedCount > 0) {
+            Log.i(LOG_TAG, "Processed " + recordedCount + " queued transactions");
+            WidgetConfigurationActivity.updateAllWidgets(this);
+        }
+    }
+}
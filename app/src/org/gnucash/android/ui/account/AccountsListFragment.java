@@ -36,6 +36,7 @@ import android.support.v4.content.Loader;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.TouchDelegate;
 import android.view.View;
@@ -52,6 +53,7 @@ import com.actionbarsherlock.view.MenuInflater;
 import com.actionbarsherlock.view.MenuItem;
 import org.gnucash.android.R;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
 import org.gnucash.android.db.*;
 import org.gnucash.android.export.ExportDialogFragment;
 import org.gnucash.android.ui.util.AccountBalanceTask;
@@ -295,8 +297,10 @@ public class AccountsListFragment extends SherlockListFragment implements
      * @param rowId The record ID of the account
      */
     public void tryDeleteAccount(long rowId) {
-        Account acc = mAccountsDbAdapter.getAccount(rowId);
-        if (acc.getTransactionCount() > 0 || mAccountsDbAdapter.getSubAccountCount(rowId) > 0) {
+        TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getActivity());
+        int transactionCount = transactionsDbAdapter.getTransactionsCount(rowId);
+        transactionsDbAdapter.close();
+        if (transactionCount > 0 || mAccountsDbAdapter.getSubAccountCount(rowId) > 0) {
             showConfirmationDialog(rowId);
         } else {
             deleteAccount(rowId, false);
@@ -312,7 +316,7 @@ public class AccountsListFragment extends SherlockListFragment implements
         String accountUID = mAccountsDbAdapter.getAccountUID(rowId);
         String parentUID    = mAccountsDbAdapter.getParentAccountUID(rowId);
         boolean deleted     = deleteSubAccounts ?
-                mAccountsDbAdapter.recursiveDestructiveDelete(rowId)
+                mAccountsDbAdapter.recursiveDestructiveDelete(rowId).getAccountCount() > 0
                 : mAccountsDbAdapter.destructiveDeleteAccount(rowId);
         if (deleted) {
             mAccountsDbAdapter.reassignParent(accountUID, parentUID);
@@ -491,6 +495,7 @@ public class AccountsListFragment extends SherlockListFragment implements
     @Override
     public void onLoadFinished(Loader<Cursor> loaderCursor, Cursor cursor) {
         Log.d(TAG, "Accounts loader finished. Swapping in cursor");
+        mAccountsCursorAdapter.setAccountBalances(((AccountsCursorLoader) loaderCursor).getAccountBalances());
         mAccountsCursorAdapter.swapCursor(cursor);
         mAccountsCursorAdapter.notifyDataSetChanged();
     }
@@ -600,6 +605,11 @@ public class AccountsListFragment extends SherlockListFragment implements
         private String mFilter;
         private DisplayMode mDisplayMode = DisplayMode.TOP_LEVEL;
 
+        /**
+         * Balances of all accounts, computed together with the accounts cursor
+         */
+        private SparseArray<Money> mAccountBalances;
+
         /**
          * Initializes the loader to load accounts from the database.
          * If the <code>parentAccountId <= 0</code> then only top-level accounts are loaded.
@@ -652,10 +662,20 @@ public class AccountsListFragment extends SherlockListFragment implements
 
             }
 
-            if (cursor != null)
+            if (cursor != null) {
                 registerContentObserver(cursor);
+                mAccountBalances = ((AccountsDbAdapter) mDatabaseAdapter).getAccountBalances(true);
+            }
             return cursor;
         }
+
+        /**
+         * Returns the balances of all accounts (including sub-accounts) computed during the last load
+         * @return Account balances keyed by account record ID
+         */
+        public SparseArray<Money> getAccountBalances() {
+            return mAccountBalances;
+        }
     }
 
     /**
@@ -667,6 +687,12 @@ public class AccountsListFragment extends SherlockListFragment implements
     private class AccountsCursorAdapter extends SimpleCursorAdapter {
         TransactionsDbAdapter transactionsDBAdapter;
 
+        /**
+         * Balances of the accounts keyed by account record ID.
+         * Accounts missing from here have their balance computed asynchronously
+         */
+        private SparseArray<Money> mAccountBalances = new SparseArray<Money>();
+
         public AccountsCursorAdapter(Context context, int layout, Cursor c,
                                      String[] from, int[] to) {
             super(context, layout, c, from, to, 0);
@@ -677,6 +703,14 @@ public class AccountsListFragment extends SherlockListFragment implements
             transactionsDBAdapter.close();
         }
 
+        /**
+         * Sets the balances to be displayed for the accounts
+         * @param accountBalances Account balances keyed by account record ID
+         */
+        public void setAccountBalances(SparseArray<Money> accountBalances) {
+            mAccountBalances = accountBalances == null ? new SparseArray<Money>() : accountBalances;
+        }
+
         @Override
         public void bindView(View v, Context context, Cursor cursor) {
             // perform the default binding
@@ -696,7 +730,11 @@ public class AccountsListFragment extends SherlockListFragment implements
             // add a summary of transactions to the account view
             TextView accountBalanceTextView = (TextView) v
                     .findViewById(R.id.transactions_summary);
-            new AccountBalanceTask(accountBalanceTextView, getActivity()).execute(accountId);
+            Money balance = mAccountBalances.get((int) accountId);
+            if (balance != null)
+                AccountBalanceTask.displayBalance(accountBalanceTextView, balance);
+            else
+                new AccountBalanceTask(accountBalanceTextView, getActivity()).execute(accountId);
 
             View colorStripView = v.findViewById(R.id.account_color_strip);
             String accountColor = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_COLOR_CODE));
@@ -414,11 +414,18 @@ public class TransactionsListFragment extends SherlockListFragment implements
 		public void bindView(View view, Context context, Cursor cursor) {
 			super.bindView(view, context, cursor);
 
-            long transactionId = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry._ID));
-			Money amount = mTransactionsDbAdapter.getBalance(transactionId, mAccountID);
+            //the balance is computed by the query of the loader, so no database access is needed here
+            Money amount = new Money(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_DENOM)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_CURRENCY)));
 			TextView amountTextView = (TextView) view.findViewById(R.id.transaction_amount);
             TransactionsActivity.displayBalance(amountTextView, amount);
 
+            //running balances are accumulated by the cursor from its nearest checkpoint
+            TextView runningBalanceTextView = (TextView) view.findViewById(R.id.transaction_running_balance);
+            runningBalanceTextView.setText(((RunningBalanceCursor) cursor).getRunningBalance().formattedString());
+
 			TextView trNote = (TextView) view.findViewById(R.id.secondary_text);
 			String notes = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_NOTES));
 			if (notes == null || notes.length() == 0)
@@ -494,8 +501,10 @@ public class TransactionsListFragment extends SherlockListFragment implements
 		
 		@Override
 		public Cursor loadInBackground() {
-			mDatabaseAdapter = new TransactionsDbAdapter(getContext());
-			Cursor c = ((TransactionsDbAdapter) mDatabaseAdapter).fetchAllTransactionsForAccount(accountID);
+			TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+			mDatabaseAdapter = transactionsDbAdapter;
+			Cursor c = transactionsDbAdapter.fetchTransactionsWithRunningBalanceForAccount(
+					transactionsDbAdapter.getAccountUID(accountID));
 			if (c != null)
 				registerContentObserver(c);
 			return c;
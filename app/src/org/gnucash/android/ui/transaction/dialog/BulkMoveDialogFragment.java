@@ -138,6 +138,7 @@ public class BulkMoveDialogFragment extends DialogFragment {
 			public void onClick(View v) {
 				if (mTransactionIds == null){
 					dismiss();
+					return;
 				}
 				
 				long dstAccountId = mDestinationAccountSpinner.getSelectedItemId();
@@ -147,9 +148,7 @@ public class BulkMoveDialogFragment extends DialogFragment {
 					return;
 				}
                 long accountId      = ((TransactionsActivity)getActivity()).getCurrentAccountID();
-				for (long trxnId : mTransactionIds) {
-					trxnAdapter.moveTranscation(trxnId, accountId, dstAccountId);
-				}
+				trxnAdapter.moveTransactions(mTransactionIds, accountId, dstAccountId);
 				trxnAdapter.close();
 
 				WidgetConfigurationActivity.updateAllWidgets(getActivity());
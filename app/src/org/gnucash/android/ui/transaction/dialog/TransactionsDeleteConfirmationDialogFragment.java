@@ -16,13 +16,11 @@
 package org.gnucash.android.ui.transaction.dialog;
 
 import org.gnucash.android.R;
-import org.gnucash.android.app.GnuCashApplication;
-import org.gnucash.android.db.AccountsDbAdapter;
 import org.gnucash.android.db.TransactionsDbAdapter;
-import org.gnucash.android.export.xml.GncXmlExporter;
-import org.gnucash.android.model.Transaction;
 import org.gnucash.android.ui.UxArgument;
 import org.gnucash.android.ui.account.AccountsListFragment;
+import org.gnucash.android.ui.util.CloseBooksTask;
+import org.gnucash.android.ui.util.Refreshable;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
@@ -32,9 +30,6 @@ import android.os.Bundle;
 import com.actionbarsherlock.app.SherlockDialogFragment;
 import org.gnucash.android.ui.widget.WidgetConfigurationActivity;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Displays a delete confirmation dialog for transactions
  * If the transaction ID parameter is 0, then all transactions will be deleted
@@ -63,27 +58,14 @@ public class TransactionsDeleteConfirmationDialogFragment extends SherlockDialog
                 .setPositiveButton(R.string.alert_dialog_ok_delete,
                         new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int whichButton) {
-                                TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getSherlockActivity());
                                 if (rowId == 0) {
-                                    GncXmlExporter.createBackup(); //create backup before deleting everything
-                                    List<Transaction> openingBalances = new ArrayList<Transaction>();
-                                    boolean preserveOpeningBalances = GnuCashApplication.shouldSaveOpeningBalances(false);
-                                    if (preserveOpeningBalances) {
-                                        AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(getActivity());
-                                        openingBalances = accountsDbAdapter.getAllOpeningBalanceTransactions();
-                                        accountsDbAdapter.close();
-                                    }
-
-                                    transactionsDbAdapter.deleteAllRecords();
-
-                                    if (preserveOpeningBalances) {
-                                        for (Transaction openingBalance : openingBalances) {
-                                            transactionsDbAdapter.addTransaction(openingBalance);
-                                        }
-                                    }
-                                } else {
-                                    transactionsDbAdapter.deleteRecord(rowId);
+                                    Refreshable target = getTargetFragment() instanceof Refreshable ?
+                                            (Refreshable) getTargetFragment() : null;
+                                    new CloseBooksTask(getActivity(), target).execute();
+                                    return;
                                 }
+                                TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getSherlockActivity());
+                                transactionsDbAdapter.deleteRecord(rowId);
                                 transactionsDbAdapter.close();
                                 if (getTargetFragment() instanceof AccountsListFragment) {
                                     ((AccountsListFragment) getTargetFragment()).refresh();
@@ -64,15 +64,24 @@ public class AccountBalanceTask extends AsyncTask<Long, Void, Money> {
     @Override
     protected void onPostExecute(Money balance) {
         if (accountBalanceTextViewReference.get() != null && balance != null){
-            final Context context = accountsDbAdapter.getContext();
             final TextView balanceTextView = accountBalanceTextViewReference.get();
             if (balanceTextView != null){
-                balanceTextView.setText(balance.formattedString());
-                int fontColor = balance.isNegative() ? context.getResources().getColor(R.color.debit_red) :
-                        context.getResources().getColor(R.color.credit_green);
-                balanceTextView.setTextColor(fontColor);
+                displayBalance(balanceTextView, balance);
             }
         }
         accountsDbAdapter.close();
     }
+
+    /**
+     * Displays the balance in the text view, colored according to the sign of the balance
+     * @param balanceTextView Text view for the balance
+     * @param balance Account balance
+     */
+    public static void displayBalance(TextView balanceTextView, Money balance){
+        final Context context = balanceTextView.getContext();
+        balanceTextView.setText(balance.formattedString());
+        int fontColor = balance.isNegative() ? context.getResources().getColor(R.color.debit_red) :
+                context.getResources().getColor(R.color.credit_green);
+        balanceTextView.setTextColor(fontColor);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.ui.util;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.os.AsyncTask;
+import android.widget.Toast;
+import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.ui.widget.WidgetConfigurationActivity;
+
+/**
+ * Deletes all transactions in the background and displays the progress in a dialog.
+ * A backup is created first. If the user chose to save opening balances, the current balances
+ * of the accounts are carried over as opening balance transactions
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see AccountsDbAdapter#closeBooks(boolean, AccountsDbAdapter.ProgressListener)
+ */
+public class CloseBooksTask extends AsyncTask<Void, Integer, Integer> {
+    private final Activity mContext;
+    private final Refreshable mTarget;
+    private ProgressDialog mProgressDialog;
+
+    /**
+     * Creates the task
+     * @param context Activity in which the progress is displayed
+     * @param target View to be refreshed when the transactions are deleted, may be <code>null</code>
+     */
+    public CloseBooksTask(Activity context, Refreshable target){
+        mContext = context;
+        mTarget = target;
+    }
+
+    @Override
+    protected void onPreExecute() {
+        super.onPreExecute();
+        mProgressDialog = new ProgressDialog(mContext);
+        mProgressDialog.setTitle(R.string.title_progress_deleting_transactions);
+        mProgressDialog.setIndeterminate(false);
+        mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        mProgressDialog.setMax(AccountsDbAdapter.CLOSE_BOOKS_STEP_COUNT);
+        mProgressDialog.setCancelable(false);
+        mProgressDialog.show();
+    }
+
+    @Override
+    protected Integer doInBackground(Void... params) {
+        GncXmlExporter.createBackup(); //create backup before deleting everything
+        AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(mContext);
+        try {
+            return accountsDbAdapter.closeBooks(GnuCashApplication.shouldSaveOpeningBalances(false),
+                    new AccountsDbAdapter.ProgressListener() {
+                        @Override
+                        public void onProgress(int step, int stepCount) {
+                            publishProgress(step);
+                        }
+                    });
+        } finally {
+            accountsDbAdapter.close();
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        mProgressDialog.setProgress(values[0]);
+    }
+
+    @Override
+    protected void onPostExecute(Integer openingBalancesCount) {
+        if (mProgressDialog != null && mProgressDialog.isShowing())
+            mProgressDialog.dismiss();
+
+        Toast.makeText(mContext, R.string.toast_all_transactions_deleted, Toast.LENGTH_SHORT).show();
+        WidgetConfigurationActivity.updateAllWidgets(mContext);
+        if (mTarget != null)
+            mTarget.refresh();
+    }
+}
@@ -19,10 +19,8 @@ package org.gnucash.android.ui.widget;
 import java.util.Locale;
 
 import org.gnucash.android.R;
-import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.db.AccountsDbAdapter;
-import org.gnucash.android.receivers.TransactionAppWidgetProvider;
 import org.gnucash.android.ui.UxArgument;
 import org.gnucash.android.ui.account.AccountsActivity;
 import org.gnucash.android.ui.transaction.TransactionsActivity;
@@ -30,7 +28,6 @@ import org.gnucash.android.ui.transaction.TransactionsActivity;
 import android.app.Activity;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -150,40 +147,39 @@ public class WidgetConfigurationActivity extends Activity {
 		AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
 
 		AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(context);
-		Account account = accountsDbAdapter.getAccount(accountId);
-
-		
-		if (account == null){
-			Log.i("WidgetConfiguration", "Account not found, resetting widget " + appWidgetId);
-			//if account has been deleted, let the user know
-			RemoteViews views = new RemoteViews(context.getPackageName(),
-					R.layout.widget_4x1);
-			views.setTextViewText(R.id.account_name, context.getString(R.string.toast_account_deleted));
-			views.setTextViewText(R.id.transactions_summary, "");
-            //set it to simply open the app
-            PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
-                    new Intent(context, AccountsActivity.class), 0);
-			views.setOnClickPendingIntent(R.id.widget_layout, pendingIntent);
-			views.setOnClickPendingIntent(R.id.btn_new_transaction, pendingIntent);
-			appWidgetManager.updateAppWidget(appWidgetId, views);
-			Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
-			editor.remove(UxArgument.SELECTED_ACCOUNT_ID + appWidgetId);
-			editor.commit();
-			return;
+		String accountName = accountsDbAdapter.getName(accountId);
+		RemoteViews views;
+		if (accountName == null){
+			views = buildAccountDeletedViews(context, appWidgetId);
+		} else {
+			views = buildAccountViews(context, appWidgetId, accountId, accountName,
+					accountsDbAdapter.getAccountBalance(accountId));
 		}
-		
+		accountsDbAdapter.close();
+
+		appWidgetManager.updateAppWidget(appWidgetId, views);
+		WidgetUpdater.getInstance(context).invalidate(appWidgetId);
+	}
+
+	/**
+	 * Builds the views of a widget showing the account with record ID <code>accountId</code>
+	 * @param appWidgetId ID of the widget
+	 * @param accountId Database ID of the account tied to the widget
+	 * @param accountName Name of the account
+	 * @param accountBalance Balance of the account including its sub-accounts
+	 * @return Views of the widget
+	 */
+	static RemoteViews buildAccountViews(Context context, int appWidgetId, long accountId,
+										 String accountName, Money accountBalance) {
 		RemoteViews views = new RemoteViews(context.getPackageName(),
 				R.layout.widget_4x1);
-		views.setTextViewText(R.id.account_name, account.getName());
-        Money accountBalance = accountsDbAdapter.getAccountBalance(accountId);
+		views.setTextViewText(R.id.account_name, accountName);
 
         views.setTextViewText(R.id.transactions_summary,
 				accountBalance.formattedString(Locale.getDefault()));
-		int color = account.getBalance().isNegative() ? R.color.debit_red : R.color.credit_green;
+		int color = accountBalance.isNegative() ? R.color.debit_red : R.color.credit_green;
 		views.setTextColor(R.id.transactions_summary, context.getResources().getColor(color));
 
-
-
 		Intent accountViewIntent = new Intent(context, TransactionsActivity.class);
 		accountViewIntent.setAction(Intent.ACTION_VIEW);
 		accountViewIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -199,29 +195,39 @@ public class WidgetConfigurationActivity extends Activity {
 		PendingIntent pendingIntent = PendingIntent
 				.getActivity(context, appWidgetId, newTransactionIntent, 0);	            
 		views.setOnClickPendingIntent(R.id.btn_new_transaction, pendingIntent);
-		
-		appWidgetManager.updateAppWidget(appWidgetId, views);
-        accountsDbAdapter.close();
+		return views;
+	}
+
+	/**
+	 * Builds the views of a widget whose account has been deleted, to let the user know.
+	 * The account is unassigned from the widget, so it is not refreshed anymore
+	 * @param appWidgetId ID of the widget
+	 * @return Views of the widget
+	 */
+	static RemoteViews buildAccountDeletedViews(Context context, int appWidgetId) {
+		Log.i("WidgetConfiguration", "Account not found, resetting widget " + appWidgetId);
+		RemoteViews views = new RemoteViews(context.getPackageName(),
+				R.layout.widget_4x1);
+		views.setTextViewText(R.id.account_name, context.getString(R.string.toast_account_deleted));
+		views.setTextViewText(R.id.transactions_summary, "");
+        //set it to simply open the app
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, AccountsActivity.class), 0);
+		views.setOnClickPendingIntent(R.id.widget_layout, pendingIntent);
+		views.setOnClickPendingIntent(R.id.btn_new_transaction, pendingIntent);
+		Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+		editor.remove(UxArgument.SELECTED_ACCOUNT_ID + appWidgetId);
+		editor.commit();
+		return views;
 	}
 	
 	/**
-	 * Updates all widgets belonging to the application
+	 * Updates all widgets belonging to the application.
+	 * <p>The widgets are refreshed asynchronously by the {@link WidgetUpdater}, which coalesces
+	 * the requests made in quick succession, so this can be called after every change to the data</p>
 	 * @param context Application context
 	 */
 	public static void updateAllWidgets(Context context){
-		Log.i("WidgetConfiguration", "Updating all widgets");
-		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
-		ComponentName componentName = new ComponentName(context, TransactionAppWidgetProvider.class);
-		int[] appWidgetIds = widgetManager.getAppWidgetIds(componentName);
-
-        SharedPreferences defaultSharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
-		for (int widgetId : appWidgetIds) {
-			long accountId = defaultSharedPrefs
-            		.getLong(UxArgument.SELECTED_ACCOUNT_ID + widgetId, -1);
-            
-			if (accountId <= 0)
-				continue;
-			updateWidget(context, widgetId, accountId);
-		}
+		WidgetUpdater.getInstance(context).requestRefresh();
 	}
 }
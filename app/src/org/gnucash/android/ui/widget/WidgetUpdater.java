@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.ui.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.SparseArray;
+import android.widget.RemoteViews;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.receivers.TransactionAppWidgetProvider;
+import org.gnucash.android.ui.UxArgument;
+
+import java.util.Locale;
+
+/**
+ * Refreshes the home screen widgets on a background thread.
+ * <p>Requests for refreshing the widgets are coalesced: all requests made within {@link #COALESCE_DELAY_MILLIS}
+ * of the first one are served by a single refresh. A refresh reads the balances of all widget accounts
+ * with one query and only pushes the views of widgets whose contents changed since they were last pushed</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see WidgetConfigurationActivity#updateAllWidgets(Context)
+ */
+public class WidgetUpdater {
+    private static final String LOG_TAG = "WidgetUpdater";
+
+    /**
+     * Time for which further refresh requests are collected after the first one, in milliseconds
+     */
+    static final long COALESCE_DELAY_MILLIS = 500;
+
+    private static WidgetUpdater sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    /**
+     * Set while a refresh is scheduled but has not started yet
+     */
+    private boolean mRefreshPending = false;
+
+    /**
+     * Contents last pushed to each widget, by widget ID. Only used on the worker thread
+     */
+    private final SparseArray<String> mPushedContents = new SparseArray<String>();
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WidgetUpdater.this) {
+                mRefreshPending = false;
+            }
+            refreshWidgets();
+        }
+    };
+
+    private WidgetUpdater(Context context){
+        mContext = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Returns the widget updater of the application, starting its worker thread on first use
+     * @param context Context of the application
+     * @return Widget updater
+     */
+    public static synchronized WidgetUpdater getInstance(Context context){
+        if (sInstance == null)
+            sInstance = new WidgetUpdater(context);
+        return sInstance;
+    }
+
+    /**
+     * Requests a refresh of all widgets. The widgets are refreshed on the worker thread shortly after the request,
+     * together with any other request made in the meantime
+     */
+    public synchronized void requestRefresh(){
+        if (mRefreshPending)
+            return;
+        mRefreshPending = true;
+        mHandler.postDelayed(mRefreshRunnable, COALESCE_DELAY_MILLIS);
+    }
+
+    /**
+     * Forgets the contents last pushed to the widget, after it has been updated directly.
+     * The next refresh pushes its views even if they did not change
+     * @param appWidgetId ID of the widget
+     */
+    public void invalidate(final int appWidgetId){
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPushedContents.remove(appWidgetId);
+            }
+        });
+    }
+
+    /**
+     * Refreshes all widgets which have an account assigned
+     */
+    private void refreshWidgets(){
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(mContext);
+        int[] appWidgetIds = widgetManager.getAppWidgetIds(
+                new ComponentName(mContext, TransactionAppWidgetProvider.class));
+        if (appWidgetIds.length == 0)
+            return;
+        Log.i(LOG_TAG, "Refreshing " + appWidgetIds.length + " widgets");
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        long[] accountIds = new long[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            accountIds[i] = preferences.getLong(UxArgument.SELECTED_ACCOUNT_ID + appWidgetIds[i], -1);
+        }
+
+        AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(mContext);
+        try {
+            SparseArray<Money> balances = accountsDbAdapter.getAccountBalances(accountIds);
+            for (int i = 0; i < appWidgetIds.length; i++) {
+                int appWidgetId = appWidgetIds[i];
+                long accountId = accountIds[i];
+                if (accountId <= 0)
+                    continue;
+
+                String accountName = accountsDbAdapter.getName(accountId);
+                Money balance = balances.get((int) accountId);
+                String contents;
+                RemoteViews views;
+                if (accountName == null || balance == null){
+                    contents = null;
+                    views = WidgetConfigurationActivity.buildAccountDeletedViews(mContext, appWidgetId);
+                } else {
+                    contents = accountName + "\n" + balance.formattedString(Locale.getDefault());
+                    if (contents.equals(mPushedContents.get(appWidgetId)))
+                        continue;
+                    views = WidgetConfigurationActivity.buildAccountViews(mContext, appWidgetId, accountId,
+                            accountName, balance);
+                }
+                widgetManager.updateAppWidget(appWidgetId, views);
+                mPushedContents.put(appWidgetId, contents);
+            }
+        } finally {
+            accountsDbAdapter.close();
+        }
+    }
+}
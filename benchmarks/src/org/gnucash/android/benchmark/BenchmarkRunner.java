@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark harness in the style of JMH, which runs inside the Robolectric test runner.
+ * <p>Each benchmark operation is run for a number of warmup iterations, whose results are discarded,
+ * followed by the measurement iterations. The report contains the throughput, the median and 99th percentile
+ * latency of single operations, and the bytes allocated by the benchmark thread</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class BenchmarkRunner {
+
+    /**
+     * A benchmarked operation
+     */
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    private final int mWarmupIterations;
+    private final int mMeasurementIterations;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations){
+        mWarmupIterations = warmupIterations;
+        mMeasurementIterations = measurementIterations;
+    }
+
+    /**
+     * Creates a benchmark runner with the iterations read from the system properties
+     * <code>benchmark.warmupIterations</code> and <code>benchmark.measurementIterations</code>
+     * @return Benchmark runner
+     */
+    public static BenchmarkRunner fromSystemProperties(){
+        return new BenchmarkRunner(Integer.getInteger("benchmark.warmupIterations", 5),
+                Integer.getInteger("benchmark.measurementIterations", 20));
+    }
+
+    /**
+     * Runs the operation and prints the result to standard output
+     * @param name Name of the benchmark
+     * @param operation Operation to be measured
+     * @return Result of the benchmark
+     * @throws Exception if the operation fails
+     */
+    public Result run(String name, Operation operation) throws Exception {
+        for (int i = 0; i < mWarmupIterations; i++) {
+            operation.run();
+        }
+
+        long[] latencies = new long[mMeasurementIterations];
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < mMeasurementIterations; i++) {
+            long operationStart = System.nanoTime();
+            operation.run();
+            latencies[i] = System.nanoTime() - operationStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = getAllocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+
+        Arrays.sort(latencies);
+        Result result = new Result(name, mMeasurementIterations, elapsed,
+                percentile(latencies, 50), percentile(latencies, 99), allocated);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Returns the percentile of sorted values, using the nearest rank
+     */
+    private static long percentile(long[] sortedValues, int percentile){
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+        return sortedValues[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or -1 if the JVM cannot measure it
+     */
+    private static long getAllocatedBytes(){
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled())
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Measurements of one benchmark
+     */
+    public static class Result {
+        private final String mName;
+        private final int mOperations;
+        private final long mElapsedNanos;
+        private final long mMedianNanos;
+        private final long mP99Nanos;
+        private final long mAllocatedBytes;
+
+        Result(String name, int operations, long elapsedNanos, long medianNanos, long p99Nanos, long allocatedBytes){
+            mName = name;
+            mOperations = operations;
+            mElapsedNanos = elapsedNanos;
+            mMedianNanos = medianNanos;
+            mP99Nanos = p99Nanos;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        public double getOperationsPerSecond(){
+            return mOperations / (mElapsedNanos / 1e9);
+        }
+
+        public double getMedianMillis(){
+            return mMedianNanos / 1e6;
+        }
+
+        public double getP99Millis(){
+            return mP99Nanos / 1e6;
+        }
+
+        /**
+         * Returns the allocation rate in MB per second, or a negative value if allocations could not be measured
+         */
+        public double getAllocationRate(){
+            if (mAllocatedBytes < 0)
+                return -1;
+            return mAllocatedBytes / (1024.0 * 1024.0) / (mElapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-40s %12.2f ops/s  p50 %10.3f ms  p99 %10.3f ms  %10.1f MB/s alloc",
+                    mName, getOperationsPerSecond(), getMedianMillis(), getP99Millis(), getAllocationRate());
+        }
+    }
+}
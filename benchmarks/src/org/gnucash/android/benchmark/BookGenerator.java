@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.benchmark;
+
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic books for benchmarking.
+ * <p>The account tree has <code>accountsPerLevel</code> top level accounts, each with <code>accountsPerLevel</code>
+ * sub-accounts down to <code>accountDepth</code> levels. The splits of the transactions are spread over the
+ * leaf accounts, and every transaction is balanced. The random generator is seeded, so that the same
+ * parameters always generate the same book</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class BookGenerator {
+
+    /**
+     * Number of transactions written in one database transaction
+     */
+    private static final int TRANSACTIONS_PER_BATCH = 1000;
+
+    /**
+     * Account types assigned to the top level accounts in turn
+     */
+    private static final AccountType[] TOP_LEVEL_TYPES = {
+            AccountType.ASSET, AccountType.EXPENSE, AccountType.INCOME, AccountType.LIABILITY
+    };
+
+    private final int mAccountDepth;
+    private final int mAccountsPerLevel;
+    private final int mTransactionCount;
+    private final int mSplitsPerTransaction;
+    private final Random mRandom = new Random(42);
+
+    /**
+     * Unique IDs of the generated accounts without sub-accounts
+     */
+    private final List<String> mLeafAccountUIDs = new ArrayList<String>();
+
+    public BookGenerator(int accountDepth, int accountsPerLevel, int transactionCount, int splitsPerTransaction){
+        if (accountDepth < 1 || accountsPerLevel < 1 || splitsPerTransaction < 2)
+            throw new IllegalArgumentException("A book needs at least one level of accounts and two splits per transaction");
+        mAccountDepth = accountDepth;
+        mAccountsPerLevel = accountsPerLevel;
+        mTransactionCount = transactionCount;
+        mSplitsPerTransaction = splitsPerTransaction;
+    }
+
+    /**
+     * Creates a book generator with the parameters read from the system properties
+     * <code>benchmark.accountDepth</code>, <code>benchmark.accountsPerLevel</code>, <code>benchmark.transactions</code>
+     * and <code>benchmark.splitsPerTransaction</code>
+     * @return Book generator
+     */
+    public static BookGenerator fromSystemProperties(){
+        return new BookGenerator(Integer.getInteger("benchmark.accountDepth", 3),
+                Integer.getInteger("benchmark.accountsPerLevel", 4),
+                Integer.getInteger("benchmark.transactions", 5000),
+                Integer.getInteger("benchmark.splitsPerTransaction", 2));
+    }
+
+    /**
+     * Writes the accounts and transactions of the book to the database
+     * @param accountsDbAdapter Adapter for saving the accounts
+     * @param transactionsDbAdapter Adapter for saving the transactions
+     */
+    public void generate(AccountsDbAdapter accountsDbAdapter, TransactionsDbAdapter transactionsDbAdapter){
+        mLeafAccountUIDs.clear();
+        for (int i = 0; i < mAccountsPerLevel; i++) {
+            generateAccount(accountsDbAdapter, null, "Account " + i, TOP_LEVEL_TYPES[i % TOP_LEVEL_TYPES.length], 1);
+        }
+
+        long time = System.currentTimeMillis();
+        List<Transaction> batch = new ArrayList<Transaction>(TRANSACTIONS_PER_BATCH);
+        for (int i = 0; i < mTransactionCount; i++) {
+            //one transaction per hour into the past
+            batch.add(generateTransaction("Transaction " + i, time - i * 3600000L));
+            if (batch.size() == TRANSACTIONS_PER_BATCH){
+                transactionsDbAdapter.addTransactions(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            transactionsDbAdapter.addTransactions(batch);
+    }
+
+    /**
+     * Returns the unique IDs of the generated accounts which have no sub-accounts
+     * @return List of account UIDs
+     */
+    public List<String> getLeafAccountUIDs(){
+        return Collections.unmodifiableList(mLeafAccountUIDs);
+    }
+
+    private void generateAccount(AccountsDbAdapter accountsDbAdapter, Account parent, String name,
+                                 AccountType type, int level){
+        Account account = new Account(name);
+        account.setAccountType(type);
+        if (parent != null) {
+            account.setParentUID(parent.getUID());
+            account.setFullName(parent.getFullName() + AccountsDbAdapter.ACCOUNT_NAME_SEPARATOR + name);
+        }
+        accountsDbAdapter.addAccount(account);
+
+        if (level == mAccountDepth){
+            mLeafAccountUIDs.add(account.getUID());
+            return;
+        }
+        for (int i = 0; i < mAccountsPerLevel; i++) {
+            generateAccount(accountsDbAdapter, account, name + "." + i, type, level + 1);
+        }
+    }
+
+    /**
+     * Generates a transaction whose splits are debits to random leaf accounts, balanced by one credit
+     */
+    private Transaction generateTransaction(String description, long time){
+        Transaction transaction = new Transaction(description);
+        transaction.setTime(time);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 1; i < mSplitsPerTransaction; i++) {
+            BigDecimal amount = BigDecimal.valueOf(1 + mRandom.nextInt(100000), 2);
+            transaction.addSplit(generateSplit(amount, TransactionType.DEBIT));
+            total = total.add(amount);
+        }
+        transaction.addSplit(generateSplit(total, TransactionType.CREDIT));
+        return transaction;
+    }
+
+    private Split generateSplit(BigDecimal amount, TransactionType type){
+        String accountUID = mLeafAccountUIDs.get(mRandom.nextInt(mLeafAccountUIDs.size()));
+        Split split = new Split(new Money(amount), accountUID);
+        split.setType(type);
+        return split;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.benchmark;
+
+import android.content.Context;
+import android.database.Cursor;
+import org.gnucash.android.db.AccountBalancesDbAdapter;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.ExportSink;
+import org.gnucash.android.export.Exporter;
+import org.gnucash.android.export.ofx.OfxExporter;
+import org.gnucash.android.export.qif.QifExporter;
+import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.importer.GncXmlImporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.DatabaseConfig;
+import org.robolectric.util.SQLiteMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmarks of the database adapters on a generated book.
+ * <p>Robolectric runs the adapters on the JVM, with the SQLite databases backed by SQLite JDBC.
+ * The size of the book and the number of iterations are set with the <code>benchmark.*</code> properties
+ * of the module, see {@link BookGenerator} and {@link BenchmarkRunner}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../app/AndroidManifest.xml")
+@DatabaseConfig.UsingDatabaseMap(SQLiteMap.class)
+public class DatabaseAdaptersBenchmark {
+
+    private Context mContext;
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private BookGenerator mBookGenerator;
+    private BenchmarkRunner mRunner;
+
+    @Before
+    public void setUp(){
+        mContext = Robolectric.application;
+        mAccountsDbAdapter = new AccountsDbAdapter(mContext);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(mContext);
+        mAccountsDbAdapter.deleteAllRecords();
+
+        mBookGenerator = BookGenerator.fromSystemProperties();
+        mBookGenerator.generate(mAccountsDbAdapter, mTransactionsDbAdapter);
+        mRunner = BenchmarkRunner.fromSystemProperties();
+    }
+
+    @Test
+    public void benchmarkBalances() throws Exception {
+        final AccountBalancesDbAdapter balancesDbAdapter = new AccountBalancesDbAdapter(mContext);
+        final List<String> accountUIDs = mBookGenerator.getLeafAccountUIDs();
+        mRunner.run("cached balances of leaf accounts", new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                for (String accountUID : accountUIDs) {
+                    balancesDbAdapter.getTotalBalance(accountUID);
+                }
+            }
+        });
+        mRunner.run("computed balances of all accounts", new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                balancesDbAdapter.computeAccountBalances(true);
+            }
+        });
+        balancesDbAdapter.close();
+    }
+
+    @Test
+    public void benchmarkTransactionListing() throws Exception {
+        final List<String> accountUIDs = mBookGenerator.getLeafAccountUIDs();
+        mRunner.run("transactions of leaf accounts", new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                for (String accountUID : accountUIDs) {
+                    Cursor cursor = mTransactionsDbAdapter.fetchAllTransactionsForAccount(accountUID);
+                    while (cursor.moveToNext()){
+                        mTransactionsDbAdapter.buildTransactionInstance(cursor);
+                    }
+                    cursor.close();
+                }
+            }
+        });
+        mRunner.run("transactions with balances of leaf accounts", new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                for (String accountUID : accountUIDs) {
+                    Cursor cursor = mTransactionsDbAdapter.fetchTransactionsWithBalanceForAccount(accountUID);
+                    while (cursor.moveToNext()){
+                        cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM));
+                    }
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkImport() throws Exception {
+        final File bookFile = File.createTempFile("gnucash-benchmark", ExportFormat.GNC_XML.getExtension());
+        try {
+            new GncXmlExporter(allTransactions(ExportFormat.GNC_XML)).generateExport(ExportSink.toFile(bookFile));
+            final long transactionCount = mTransactionsDbAdapter.getAllTransactionsCount();
+
+            mRunner.run("import into empty database", new BenchmarkRunner.Operation() {
+                @Override
+                public void run() throws Exception {
+                    mAccountsDbAdapter.deleteAllRecords();
+                    InputStream inputStream = new FileInputStream(bookFile);
+                    try {
+                        GncXmlImporter.parse(mContext, inputStream);
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+            });
+            assertEquals(transactionCount, mTransactionsDbAdapter.getAllTransactionsCount());
+        } finally {
+            bookFile.delete();
+        }
+    }
+
+    @Test
+    public void benchmarkExports() throws Exception {
+        for (final ExportFormat format : ExportFormat.values()) {
+            final File exportFile = File.createTempFile("gnucash-benchmark", format.getExtension());
+            try {
+                mRunner.run("export " + format.name(), new BenchmarkRunner.Operation() {
+                    @Override
+                    public void run() {
+                        createExporter(format).generateExport(ExportSink.toFile(exportFile));
+                    }
+                });
+            } finally {
+                exportFile.delete();
+            }
+        }
+    }
+
+    private static ExportParams allTransactions(ExportFormat format){
+        ExportParams params = new ExportParams(format);
+        params.setExportAllTransactions(true);
+        return params;
+    }
+
+    private static Exporter createExporter(ExportFormat format){
+        switch (format){
+            case QIF:
+                return new QifExporter(allTransactions(format));
+            case OFX:
+                return new OfxExporter(allTransactions(format));
+            case GNC_XML:
+            default:
+                return new GncXmlExporter(allTransactions(format));
+        }
+    }
+
+    @After
+    public void tearDown(){
+        mAccountsDbAdapter.deleteAllRecords();
+        mAccountsDbAdapter.close();
+        mTransactionsDbAdapter.close();
+    }
+}
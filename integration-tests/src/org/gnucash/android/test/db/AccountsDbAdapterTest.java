@@ -3,11 +3,22 @@ package org.gnucash.android.test.db;
 import java.util.Currency;
 import java.util.List;
 
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountBalancesDbAdapter;
+import org.gnucash.android.db.DatabaseConnection;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.TransactionsDbAdapter;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.db.AccountsDbAdapter;
 
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
 import android.test.AndroidTestCase;
+import android.util.SparseArray;
 
 public class AccountsDbAdapterTest extends AndroidTestCase {
 
@@ -55,6 +66,324 @@ public class AccountsDbAdapterTest extends AndroidTestCase {
 		}
 	}
 	
+	public void testCachedBalancesIncludeSubAccounts(){
+		Account parent = new Account("Parent");
+		Account child = new Account("Child");
+		child.setParentUID(parent.getUID());
+		Account foreign = new Account("Foreign", Currency.getInstance("EUR"));
+		foreign.setParentUID(parent.getUID());
+		mAdapter.addAccount(parent);
+		mAdapter.addAccount(child);
+		mAdapter.addAccount(foreign);
+
+		Transaction transaction = new Transaction("Salary");
+		Split split = new Split(new Money("100"), child.getUID());
+		split.setType(TransactionType.DEBIT);
+		transaction.addSplit(split);
+		Split parentSplit = new Split(new Money("30"), parent.getUID());
+		parentSplit.setType(TransactionType.CREDIT);
+		transaction.addSplit(parentSplit);
+		Transaction foreignTransaction = new Transaction("Holiday");
+		foreignTransaction.setCurrencyCode("EUR");
+		Split foreignSplit = new Split(new Money("50", "EUR"), foreign.getUID());
+		foreignSplit.setType(TransactionType.DEBIT);
+		foreignTransaction.addSplit(foreignSplit);
+
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(transaction);
+		transactionsDbAdapter.addTransaction(foreignTransaction);
+		transactionsDbAdapter.close();
+
+		assertEquals(new Money("70"), mAdapter.getAccountBalance(mAdapter.getAccountID(parent.getUID())));
+		assertEquals(new Money("100"), mAdapter.getAccountBalance(mAdapter.getAccountID(child.getUID())));
+		assertEquals(new Money("50", "EUR"), mAdapter.getAccountBalance(mAdapter.getAccountID(foreign.getUID())));
+
+		SparseArray<Money> balances = mAdapter.getAccountBalances(true);
+		assertEquals(new Money("70"), balances.get((int) mAdapter.getAccountID(parent.getUID())));
+		assertEquals(new Money("50", "EUR"), balances.get((int) mAdapter.getAccountID(foreign.getUID())));
+		balances = mAdapter.getAccountBalances(false);
+		assertEquals(new Money("-30"), balances.get((int) mAdapter.getAccountID(parent.getUID())));
+
+		mAdapter.destructiveDeleteAccount(mAdapter.getAccountID(child.getUID()));
+		assertEquals(new Money("-30"), mAdapter.getAccountBalance(mAdapter.getAccountID(parent.getUID())));
+
+		AccountBalancesDbAdapter balancesDbAdapter = new AccountBalancesDbAdapter(getContext());
+		assertTrue(balancesDbAdapter.verifyBalances());
+		balancesDbAdapter.close();
+	}
+
+	public void testAccountMetadataFollowsUpdates(){
+		Account account = new Account("Before");
+		long id = mAdapter.addAccount(account);
+		assertEquals("Before", mAdapter.getAccountName(account.getUID()));
+		assertEquals(account.getUID(), mAdapter.getAccountUID(id));
+
+		mAdapter.updateAccount(id, DatabaseSchema.AccountEntry.COLUMN_NAME, "After");
+		assertEquals("After", mAdapter.getAccountName(account.getUID()));
+
+		mAdapter.deleteRecord(id);
+		assertEquals(-1, mAdapter.getAccountID(account.getUID()));
+		assertNull(mAdapter.getAccountUID(id));
+	}
+
+	public void testAccountMetadataDiscardedOnRollback(){
+		DatabaseConnection connection = GnuCashApplication.getDatabaseConnection(getContext());
+		SQLiteDatabase db = connection.acquire();
+		Account account = new Account("Rolled back");
+		db.beginTransaction();
+		try {
+			mAdapter.addAccount(account);
+			assertEquals("Rolled back", mAdapter.getAccountName(account.getUID()));
+		} finally {
+			db.endTransaction();
+			connection.release();
+		}
+		assertNull(mAdapter.getAccountName(account.getUID()));
+	}
+
+	public void testAccountMetadataReadDuringTransactionNotCached() throws InterruptedException {
+		final Account account = new Account("Before");
+		long id = mAdapter.addAccount(account);
+		DatabaseConnection connection = GnuCashApplication.getDatabaseConnection(getContext());
+		SQLiteDatabase db = connection.acquire();
+		//without write-ahead logging, the other thread would wait for the transaction to end
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || !db.isWriteAheadLoggingEnabled()){
+			connection.release();
+			return;
+		}
+
+		final String[] nameRead = new String[1];
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				nameRead[0] = mAdapter.getAccountName(account.getUID());
+			}
+		});
+		db.beginTransaction();
+		try {
+			mAdapter.updateAccount(id, DatabaseSchema.AccountEntry.COLUMN_NAME, "After");
+			reader.start();
+			reader.join();
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			connection.release();
+		}
+		assertEquals("Before", nameRead[0]);
+
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				nameRead[0] = mAdapter.getAccountName(account.getUID());
+			}
+		});
+		reader.start();
+		reader.join();
+		assertEquals("After", nameRead[0]);
+	}
+
+	public void testAccountHierarchy(){
+		Account parent = new Account("Parent");
+		Account child = new Account("Child");
+		Account grandChild = new Account("Grand child");
+		Account other = new Account("Other");
+		child.setParentUID(parent.getUID());
+		grandChild.setParentUID(child.getUID());
+		//sub-accounts saved before their parent are linked when the parent is saved
+		mAdapter.addAccount(grandChild);
+		mAdapter.addAccount(child);
+		mAdapter.addAccount(parent);
+		mAdapter.addAccount(other);
+
+		long parentId = mAdapter.getId(parent.getUID());
+		List<Long> descendants = mAdapter.getDescendantIds(parentId);
+		assertEquals(2, descendants.size());
+		assertEquals(mAdapter.getId(child.getUID()), (long) descendants.get(0));
+		assertEquals(mAdapter.getId(grandChild.getUID()), (long) descendants.get(1));
+		assertEquals("Parent:Child:Grand child", mAdapter.getFullyQualifiedAccountName(grandChild.getUID()));
+
+		mAdapter.reassignParent(parent.getUID(), other.getUID());
+		assertTrue(mAdapter.getDescendantIds(parentId).isEmpty());
+		assertEquals(2, mAdapter.getDescendantAccountUIDs(other.getUID()).size());
+		assertEquals("Other:Child:Grand child", mAdapter.getAccount(grandChild.getUID()).getFullName());
+
+		assertEquals(3, mAdapter.recursiveDestructiveDelete(mAdapter.getId(other.getUID())).getAccountCount());
+		assertEquals(1, mAdapter.getTotalAccountCount());
+		assertNull(mAdapter.getAccountName(grandChild.getUID()));
+	}
+
+	public void testRecursiveDestructiveDeleteRemovesEmptyTransactions(){
+		Account parent = new Account("Parent");
+		Account child = new Account("Child");
+		Account other = new Account("Other");
+		child.setParentUID(parent.getUID());
+		mAdapter.addAccount(parent);
+		mAdapter.addAccount(child);
+		mAdapter.addAccount(other);
+
+		Transaction inside = new Transaction("Inside");
+		Split split = new Split(new Money("10"), child.getUID());
+		split.setType(TransactionType.DEBIT);
+		inside.addSplit(split);
+		inside.addSplit(split.createPair(parent.getUID()));
+		Transaction across = new Transaction("Across");
+		split = new Split(new Money("5"), child.getUID());
+		split.setType(TransactionType.DEBIT);
+		across.addSplit(split);
+		across.addSplit(split.createPair(other.getUID()));
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(inside);
+		transactionsDbAdapter.addTransaction(across);
+
+		AccountsDbAdapter.DeletionResult result = mAdapter.recursiveDestructiveDelete(mAdapter.getId(parent.getUID()));
+		assertEquals(2, result.getAccountCount());
+		assertEquals(3, result.getSplitCount());
+		assertEquals(1, result.getTransactionCount());
+		assertEquals(-1, transactionsDbAdapter.getID(inside.getUID()));
+		Transaction remaining = transactionsDbAdapter.getTransaction(transactionsDbAdapter.getID(across.getUID()));
+		assertEquals(1, remaining.getSplits().size());
+		assertEquals(other.getUID(), remaining.getSplits().get(0).getAccountUID());
+		transactionsDbAdapter.close();
+	}
+
+	public void testDestructiveDeleteRemovesEmptyTransactions(){
+		Account deleted = new Account("Deleted");
+		Account other = new Account("Other");
+		mAdapter.addAccount(deleted);
+		mAdapter.addAccount(other);
+
+		Transaction inside = new Transaction("Inside");
+		Split split = new Split(new Money("10"), deleted.getUID());
+		split.setType(TransactionType.DEBIT);
+		inside.addSplit(split);
+		inside.addSplit(split.createPair(deleted.getUID()));
+		Transaction across = new Transaction("Across");
+		split = new Split(new Money("5"), deleted.getUID());
+		split.setType(TransactionType.DEBIT);
+		across.addSplit(split);
+		across.addSplit(split.createPair(other.getUID()));
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(inside);
+		transactionsDbAdapter.addTransaction(across);
+
+		assertTrue(mAdapter.destructiveDeleteAccount(mAdapter.getId(deleted.getUID())));
+		assertEquals(-1, transactionsDbAdapter.getID(inside.getUID()));
+		Transaction remaining = transactionsDbAdapter.getTransaction(transactionsDbAdapter.getID(across.getUID()));
+		assertEquals(1, remaining.getSplits().size());
+		assertEquals(other.getUID(), remaining.getSplits().get(0).getAccountUID());
+		transactionsDbAdapter.close();
+	}
+
+	public void testTransactionPreservingDelete(){
+		Account deleted = new Account("Deleted");
+		Account receiver = new Account("Receiver");
+		mAdapter.addAccount(deleted);
+		mAdapter.addAccount(receiver);
+
+		Transaction transaction = new Transaction("Moved");
+		Split split = new Split(new Money("25"), deleted.getUID());
+		split.setType(TransactionType.DEBIT);
+		transaction.addSplit(split);
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(transaction);
+		transactionsDbAdapter.close();
+
+		assertEquals(1, mAdapter.transactionPreservingDelete(mAdapter.getId(deleted.getUID()),
+				mAdapter.getId(receiver.getUID())));
+		assertNull(mAdapter.getAccountName(deleted.getUID()));
+		assertEquals(new Money("25"), mAdapter.getAccountBalance(mAdapter.getId(receiver.getUID())));
+
+		AccountBalancesDbAdapter balancesDbAdapter = new AccountBalancesDbAdapter(getContext());
+		assertTrue(balancesDbAdapter.verifyBalances());
+		balancesDbAdapter.close();
+	}
+
+	public void testMarkAsExported(){
+		Account exported = new Account("Exported");
+		Account other = new Account("Other");
+		mAdapter.addAccount(exported);
+		mAdapter.addAccount(other);
+
+		Transaction transaction = new Transaction("Exported");
+		Split split = new Split(new Money("10"), exported.getUID());
+		split.setType(TransactionType.DEBIT);
+		transaction.addSplit(split);
+		Transaction otherTransaction = new Transaction("Not exported");
+		split = new Split(new Money("10"), other.getUID());
+		split.setType(TransactionType.DEBIT);
+		otherTransaction.addSplit(split);
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(transaction);
+		transactionsDbAdapter.addTransaction(otherTransaction);
+
+		assertEquals(2, mAdapter.getExportableAccounts().size());
+		assertEquals(1, mAdapter.markAsExported(exported.getUID()));
+		List<Account> exportableAccounts = mAdapter.getExportableAccounts();
+		assertEquals(1, exportableAccounts.size());
+		assertEquals(other.getUID(), exportableAccounts.get(0).getUID());
+		assertTrue(transactionsDbAdapter.getTransaction(transactionsDbAdapter.getID(transaction.getUID())).isExported());
+		assertFalse(transactionsDbAdapter.getTransaction(transactionsDbAdapter.getID(otherTransaction.getUID())).isExported());
+		transactionsDbAdapter.close();
+	}
+
+	public void testTransactionsLoadedLazily(){
+		Account account = new Account("Lazy");
+		Transaction transaction = new Transaction("Loaded later");
+		Split split = new Split(new Money("10"), account.getUID());
+		split.setType(TransactionType.DEBIT);
+		transaction.addSplit(split);
+		account.addTransaction(transaction);
+		mAdapter.addAccount(account);
+
+		Account saved = mAdapter.getAccount(account.getUID());
+		assertFalse(saved.isTransactionsLoaded());
+		saved.setName("Renamed");
+		mAdapter.addAccount(saved);
+		assertFalse(saved.isTransactionsLoaded());
+
+		mAdapter.close();
+		mAdapter = new AccountsDbAdapter(getContext());
+		assertEquals(1, saved.getTransactionCount());
+		assertTrue(saved.isTransactionsLoaded());
+		assertEquals(transaction.getUID(), saved.getTransactions().get(0).getUID());
+		assertEquals("Renamed", mAdapter.getAccountName(account.getUID()));
+	}
+
+	public void testCloseBooks(){
+		Account account = new Account("Closed");
+		Account other = new Account("Other");
+		mAdapter.addAccount(account);
+		mAdapter.addAccount(other);
+		Transaction transaction = new Transaction("Closed");
+		Split split = new Split(new Money("10"), account.getUID());
+		split.setType(TransactionType.DEBIT);
+		transaction.addSplit(split);
+		transaction.addSplit(split.createPair(other.getUID()));
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		transactionsDbAdapter.addTransaction(transaction);
+		long accountId = mAdapter.getId(account.getUID());
+		Money balance = mAdapter.getAccountBalance(accountId);
+
+		final int[] progress = new int[1];
+		int openingBalancesCount = mAdapter.closeBooks(true, new AccountsDbAdapter.ProgressListener() {
+			@Override
+			public void onProgress(int step, int stepCount) {
+				assertEquals(progress[0] + 1, step);
+				progress[0] = step;
+			}
+		});
+		assertEquals(2, openingBalancesCount);
+		assertEquals(AccountsDbAdapter.CLOSE_BOOKS_STEP_COUNT, progress[0]);
+		assertEquals(-1, transactionsDbAdapter.getID(transaction.getUID()));
+		assertEquals(1, transactionsDbAdapter.getTransactionsCount(account.getUID()));
+		assertEquals(balance, mAdapter.getAccountBalance(accountId));
+
+		assertEquals(0, mAdapter.closeBooks(false, null));
+		assertEquals(0, transactionsDbAdapter.getTransactionsCount(account.getUID()));
+		assertEquals(0, mAdapter.getAccountBalance(accountId).asBigDecimal().signum());
+		transactionsDbAdapter.close();
+	}
+
 	@Override
 	protected void tearDown() throws Exception {
 		super.tearDown();
@@ -0,0 +1,29 @@
+package org.gnucash.android.test.db;
+
+import android.test.AndroidTestCase;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.DatabaseConnection;
+import org.gnucash.android.db.TransactionsDbAdapter;
+
+public class DatabaseConnectionTest extends AndroidTestCase {
+
+	public void testAdaptersShareReferenceCountedConnection(){
+		DatabaseConnection connection = GnuCashApplication.getDatabaseConnection(getContext());
+		int referenceCount = connection.getReferenceCount();
+
+		AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(getContext());
+		TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(getContext());
+		assertEquals(referenceCount + 2, connection.getReferenceCount());
+
+		accountsDbAdapter.close();
+		accountsDbAdapter.close(); //closing twice releases only once
+		assertEquals(referenceCount + 1, connection.getReferenceCount());
+
+		//the database stays open for the other adapters
+		assertTrue(transactionsDbAdapter.isOpen());
+		transactionsDbAdapter.close();
+		assertEquals(referenceCount, connection.getReferenceCount());
+		assertTrue(transactionsDbAdapter.isOpen());
+	}
+}
@@ -0,0 +1,95 @@
+package org.gnucash.android.test.db;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.PagedTransactionsCursor;
+import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PagedTransactionsCursorTest extends AndroidTestCase {
+
+    private static final String ACCOUNT_UID = "paged-account";
+    private static final int TRANSACTION_COUNT = 250;
+    private static final int PAGE_SIZE = 20;
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAccountsDbAdapter = new AccountsDbAdapter(getContext());
+        mTransactionsDbAdapter = new TransactionsDbAdapter(getContext());
+        mAccountsDbAdapter.deleteAllRecords();
+
+        Account account = new Account("Paged");
+        account.setUID(ACCOUNT_UID);
+        mAccountsDbAdapter.addAccount(account);
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            Transaction transaction = new Transaction("Paged " + i);
+            //groups of transactions share a timestamp, so that pages also have to be separated by record ID
+            transaction.setTime(time - (i / 7) * 1000L);
+            Split split = new Split(new Money("1.50"), ACCOUNT_UID);
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transactions.add(transaction);
+        }
+        mTransactionsDbAdapter.addTransactions(transactions);
+    }
+
+    public void testPagesMatchFullQuery(){
+        Cursor expected = mTransactionsDbAdapter.fetchTransactionsWithBalanceForAccount(ACCOUNT_UID);
+        PagedTransactionsCursor paged = new PagedTransactionsCursor(mTransactionsDbAdapter, ACCOUNT_UID, PAGE_SIZE);
+        assertEquals(TRANSACTION_COUNT, expected.getCount());
+        assertEquals(TRANSACTION_COUNT, paged.getCount());
+
+        int idColumn = paged.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry._ID);
+        int balanceColumn = paged.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM);
+        while (expected.moveToNext()){
+            assertTrue(paged.moveToNext());
+            assertEquals(expected.getLong(expected.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry._ID)),
+                    paged.getLong(idColumn));
+            assertEquals(expected.getLong(expected.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM)),
+                    paged.getLong(balanceColumn));
+            assertTrue(paged.getResidentPageCount() <= 4);
+        }
+        assertFalse(paged.moveToNext());
+        expected.close();
+        paged.close();
+    }
+
+    public void testMoveToUnreadPage(){
+        Cursor expected = mTransactionsDbAdapter.fetchTransactionsWithBalanceForAccount(ACCOUNT_UID);
+        PagedTransactionsCursor paged = new PagedTransactionsCursor(mTransactionsDbAdapter, ACCOUNT_UID, PAGE_SIZE);
+
+        int[] positions = {TRANSACTION_COUNT - 1, 0, 155, 42};
+        for (int position : positions) {
+            assertTrue(expected.moveToPosition(position));
+            assertTrue(paged.moveToPosition(position));
+            assertEquals(expected.getString(expected.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_UID)),
+                    paged.getString(paged.getColumnIndexOrThrow(DatabaseSchema.TransactionEntry.COLUMN_UID)));
+        }
+        expected.close();
+        paged.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        mAccountsDbAdapter.deleteAllRecords();
+        mAccountsDbAdapter.close();
+        mTransactionsDbAdapter.close();
+    }
+}
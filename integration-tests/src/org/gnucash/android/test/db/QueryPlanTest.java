@@ -0,0 +1,132 @@
+package org.gnucash.android.test.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.DatabaseConnection;
+import org.gnucash.android.db.SplitsDbAdapter;
+import org.gnucash.android.db.TransactionsDbAdapter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.gnucash.android.db.DatabaseSchema.*;
+
+/**
+ * Checks with <code>EXPLAIN QUERY PLAN</code> that the frequent adapter queries use indexes
+ * instead of scanning whole tables.
+ * <p>The queries are built by the adapters themselves, so that the test checks the SQL which is actually run</p>
+ */
+public class QueryPlanTest extends AndroidTestCase {
+
+    /**
+     * Query plan detail of a scan, with the scanned table and the index used for the scan, if any.
+     * Older SQLite versions write "SCAN TABLE name" and "SCAN SUBQUERY 1 AS name"
+     */
+    private static final Pattern SCAN_PATTERN =
+            Pattern.compile("^SCAN (?:TABLE |SUBQUERY \\d+ AS )?(\\w+)(?: USING (?:COVERING )?INDEX (\\w+))?");
+
+    /**
+     * Number of transactions in a page of the balance query
+     */
+    private static final int PAGE_SIZE = 25;
+
+    private DatabaseConnection mDbConnection;
+    private SQLiteDatabase mDb;
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private SplitsDbAdapter mSplitsDbAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDbConnection = GnuCashApplication.getDatabaseConnection(getContext());
+        mDb = mDbConnection.acquire();
+        mAccountsDbAdapter = new AccountsDbAdapter(mDb);
+        mTransactionsDbAdapter = new TransactionsDbAdapter(mDb);
+        mSplitsDbAdapter = new SplitsDbAdapter(mDb);
+    }
+
+    public void testTransactionsForAccountQueryUsesIndex(){
+        assertNoFullScan(mTransactionsDbAdapter.buildTransactionsForAccountQuery());
+    }
+
+    public void testSplitsForTransactionQueryUsesIndex(){
+        assertNoFullScan(mSplitsDbAdapter.buildSplitsForTransactionQuery());
+    }
+
+    public void testSubAccountsQueryUsesIndex(){
+        assertNoFullScan(mAccountsDbAdapter.buildSubAccountsQuery());
+    }
+
+    public void testTransactionsCountQueryUsesIndex(){
+        assertNoFullScan(mTransactionsDbAdapter.buildTransactionsCountQuery());
+    }
+
+    public void testAccountTransactionsIterationUsesIndexes(){
+        for (boolean includeExported : new boolean[]{true, false}) {
+            String selection = mTransactionsDbAdapter.buildAccountTransactionsSelection(includeExported);
+            assertNoFullScan(mTransactionsDbAdapter.buildTransactionsQuery(selection,
+                    TransactionsDbAdapter.ACCOUNT_TRANSACTIONS_SORT_ORDER));
+            assertNoFullScan(mTransactionsDbAdapter.buildSplitsQuery(selection,
+                    TransactionsDbAdapter.ACCOUNT_TRANSACTIONS_SORT_ORDER));
+        }
+    }
+
+    public void testBalanceQueryReadsTransactionsByTimestamp(){
+        //the transactions are walked in the order of the timestamp index until the page is full
+        assertNoFullScan(mTransactionsDbAdapter.buildBalanceQuery(false, 0),
+                "page", TransactionEntry.INDEX_TIMESTAMP);
+        assertNoFullScan(mTransactionsDbAdapter.buildBalanceQuery(false, PAGE_SIZE),
+                "page", TransactionEntry.INDEX_TIMESTAMP);
+    }
+
+    public void testBalancePageQuerySearchesByKey(){
+        assertNoFullScan(mTransactionsDbAdapter.buildBalanceQuery(true, PAGE_SIZE), "page");
+    }
+
+    public void testExportableAccountsQueryUsesIndexes(){
+        //every account is checked, but its splits and transactions are looked up through indexes
+        assertNoFullScan(mAccountsDbAdapter.buildExportableAccountsQuery(), AccountEntry.TABLE_NAME);
+    }
+
+    public void testAccountHierarchyQueriesUseIndexes(){
+        assertNoFullScan(mAccountsDbAdapter.buildDescendantIdsQuery());
+        assertNoFullScan(mAccountsDbAdapter.buildDescendantUIDsQuery());
+        assertNoFullScan(mAccountsDbAdapter.buildAncestorNamesQuery());
+    }
+
+    /**
+     * Asserts that the query plan of <code>query</code> only scans the allowed tables or indexes.
+     * The parameters of the query are left unbound
+     * @param query SQL query
+     * @param allowedScans Names of tables, subqueries or indexes which may be scanned
+     */
+    private void assertNoFullScan(String query, String... allowedScans){
+        List<String> allowed = Arrays.asList(allowedScans);
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        try {
+            int detailColumn = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()){
+                String detail = cursor.getString(detailColumn);
+                Matcher matcher = SCAN_PATTERN.matcher(detail);
+                if (matcher.find()){
+                    assertTrue("Full table scan: " + detail + " in " + query,
+                            allowed.contains(matcher.group(1)) || allowed.contains(matcher.group(2)));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        mDbConnection.release();
+    }
+}
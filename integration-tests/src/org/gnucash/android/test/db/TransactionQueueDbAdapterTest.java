@@ -0,0 +1,113 @@
+package org.gnucash.android.test.db;
+
+import android.test.AndroidTestCase;
+import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.TransactionQueueDbAdapter;
+import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Locale;
+
+public class TransactionQueueDbAdapterTest extends AndroidTestCase {
+
+    private static final String ACCOUNT_UID = "queue-account";
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private TransactionQueueDbAdapter mQueueDbAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAccountsDbAdapter = new AccountsDbAdapter(getContext());
+        mTransactionsDbAdapter = new TransactionsDbAdapter(getContext());
+        mQueueDbAdapter = new TransactionQueueDbAdapter(getContext());
+        mAccountsDbAdapter.deleteAllRecords();
+        mQueueDbAdapter.deleteAllRecords();
+
+        Account account = new Account("Queue");
+        account.setUID(ACCOUNT_UID);
+        mAccountsDbAdapter.addAccount(account);
+    }
+
+    public void testQueuedTransactionsAreRecordedOnce(){
+        Transaction recorded = createTransaction("Recorded");
+        mTransactionsDbAdapter.addTransaction(recorded);
+
+        Transaction queued = createTransaction("Queued");
+        assertTrue(mQueueDbAdapter.enqueue(queued) > 0);
+        //a repeated broadcast of the same transaction is not queued again
+        assertEquals(-1, mQueueDbAdapter.enqueue(queued));
+        //a transaction which was already recorded is dropped
+        mQueueDbAdapter.enqueue(recorded);
+        for (int i = 0; i < 4; i++) {
+            mQueueDbAdapter.enqueue(createTransaction("Batch " + i));
+        }
+        assertEquals(6, mQueueDbAdapter.getQueuedCount());
+
+        assertEquals(4, mQueueDbAdapter.recordBatch(4));
+        assertEquals(2, mQueueDbAdapter.recordBatch(4));
+        assertEquals(0, mQueueDbAdapter.recordBatch(4));
+
+        assertEquals(0, mQueueDbAdapter.getQueuedCount());
+        assertEquals(6, mTransactionsDbAdapter.getTransactionsCount(ACCOUNT_UID));
+        assertEquals(new Money("60"), mAccountsDbAdapter.getAccountBalance(mAccountsDbAdapter.getId(ACCOUNT_UID)));
+        assertEquals("Queued", mTransactionsDbAdapter.getTransaction(mTransactionsDbAdapter.getID(queued.getUID())).getDescription());
+    }
+
+    public void testQueuedSplitsAreLocaleIndependent(){
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            Transaction queued = new Transaction("Decimal comma");
+            Split split = new Split(new Money(new BigDecimal("1234.56"), Currency.getInstance("EUR")), ACCOUNT_UID);
+            split.setType(TransactionType.DEBIT);
+            split.setMemo("first; second\nthird");
+            queued.addSplit(split);
+            split = new Split(new Money(new BigDecimal("12.5"), Currency.getInstance("EUR")), ACCOUNT_UID);
+            split.setType(TransactionType.CREDIT);
+            queued.addSplit(split);
+            mQueueDbAdapter.enqueue(queued);
+            assertEquals(1, mQueueDbAdapter.recordBatch(TransactionQueueDbAdapter.DEFAULT_BATCH_SIZE));
+
+            Transaction recorded = mTransactionsDbAdapter.getTransaction(mTransactionsDbAdapter.getID(queued.getUID()));
+            assertEquals(2, recorded.getSplits().size());
+            for (Split recordedSplit : recorded.getSplits()) {
+                if (recordedSplit.getType() == TransactionType.DEBIT) {
+                    assertEquals(0, new BigDecimal("1234.56").compareTo(recordedSplit.getAmount().asBigDecimal()));
+                    assertEquals("first; second\nthird", recordedSplit.getMemo());
+                } else {
+                    assertEquals(0, new BigDecimal("12.5").compareTo(recordedSplit.getAmount().asBigDecimal()));
+                    assertNull(recordedSplit.getMemo());
+                }
+                assertEquals(ACCOUNT_UID, recordedSplit.getAccountUID());
+            }
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    private static Transaction createTransaction(String description){
+        Transaction transaction = new Transaction(description);
+        Split split = new Split(new Money("10"), ACCOUNT_UID);
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        return transaction;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        mQueueDbAdapter.deleteAllRecords();
+        mAccountsDbAdapter.deleteAllRecords();
+        mQueueDbAdapter.close();
+        mTransactionsDbAdapter.close();
+        mAccountsDbAdapter.close();
+    }
+}
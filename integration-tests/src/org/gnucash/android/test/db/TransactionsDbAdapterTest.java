@@ -1,11 +1,27 @@
 package org.gnucash.android.test.db;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
 import java.util.List;
 
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.db.AccountsDbAdapter;
+import org.gnucash.android.db.RunningBalanceCursor;
+import org.gnucash.android.db.TransactionIterator;
 import org.gnucash.android.db.TransactionsDbAdapter;
+import org.gnucash.android.export.ExportSink;
+import org.gnucash.android.model.TransactionType;
+
+import android.database.Cursor;
+import android.net.Uri;
 
 import android.test.AndroidTestCase;
 
@@ -44,6 +60,211 @@ public class TransactionsDbAdapterTest extends AndroidTestCase {
 		assertEquals("T800", transactionsList.get(1).getDescription());
 	}
 	
+	public void testInsertTransaction(){
+		Transaction transaction = new Transaction("Imported");
+		transaction.addSplit(createDebitSplit("12.50"));
+		long rowId = mAdapter.insertTransaction(transaction);
+		assertTrue(rowId > 0);
+
+		Transaction saved = mAdapter.getTransaction(rowId);
+		assertEquals("Imported", saved.getDescription());
+		assertEquals(1, saved.getSplits().size());
+		assertEquals("12.50", saved.getSplits().get(0).getAmount().toPlainString());
+	}
+
+	public void testAddTransactionsReplacesByUID(){
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (int i = 0; i < 3; i++) {
+			Transaction transaction = new Transaction("Batch " + i);
+			transaction.addSplit(createDebitSplit("1.00"));
+			transactions.add(transaction);
+		}
+		long count = mAdapter.getAllTransactionsCount();
+		assertEquals(3, mAdapter.addTransactions(transactions));
+		assertEquals(count + 3, mAdapter.getAllTransactionsCount());
+
+		Transaction modified = transactions.get(0);
+		modified.setDescription("Modified");
+		List<Transaction> modifiedList = new ArrayList<Transaction>();
+		modifiedList.add(modified);
+		mAdapter.addTransactions(modifiedList);
+		assertEquals(count + 3, mAdapter.getAllTransactionsCount());
+		assertEquals("Modified", mAdapter.getTransaction(mAdapter.getID(modified.getUID())).getDescription());
+		assertEquals(1, mAdapter.getTransaction(mAdapter.getID(modified.getUID())).getSplits().size());
+	}
+
+	public void testFetchTransactionsWithBalance(){
+		Transaction transaction = new Transaction("With balance");
+		transaction.addSplit(createDebitSplit("12.50"));
+		Split credit = new Split(new Money("2.5"), ALPHA_ACCOUNT_UID);
+		credit.setType(TransactionType.CREDIT);
+		transaction.addSplit(credit);
+		mAdapter.addTransaction(transaction);
+
+		Cursor cursor = mAdapter.fetchTransactionsWithBalanceForAccount(ALPHA_ACCOUNT_UID);
+		assertEquals(1, cursor.getCount());
+		cursor.moveToFirst();
+		Money balance = new Money(
+				cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM)),
+				cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_DENOM)),
+				cursor.getString(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_CURRENCY)));
+		cursor.close();
+		assertEquals(Transaction.computeBalance(ALPHA_ACCOUNT_UID, transaction.getSplits()), balance);
+	}
+
+	public void testFetchTransactionsWithBalanceOfMixedDenominators(){
+		Currency currency = Currency.getInstance(Money.DEFAULT_CURRENCY_CODE);
+		Transaction transaction = new Transaction("Mixed denominators");
+		Split debit = new Split(new Money(new BigDecimal("12.5"), currency), ALPHA_ACCOUNT_UID);
+		debit.setType(TransactionType.DEBIT);
+		transaction.addSplit(debit);
+		Split credit = new Split(new Money(new BigDecimal("0.125"), currency), ALPHA_ACCOUNT_UID);
+		credit.setType(TransactionType.CREDIT);
+		transaction.addSplit(credit);
+		mAdapter.addTransaction(transaction);
+
+		Cursor cursor = mAdapter.fetchTransactionsWithBalanceForAccount(ALPHA_ACCOUNT_UID);
+		assertEquals(1, cursor.getCount());
+		cursor.moveToFirst();
+		BigDecimal balance = Money.rationalToDecimal(
+				cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_NUM)),
+				cursor.getLong(cursor.getColumnIndexOrThrow(TransactionsDbAdapter.COLUMN_BALANCE_AMOUNT_DENOM)));
+		cursor.close();
+		assertEquals(0, new BigDecimal("12.375").compareTo(balance));
+	}
+
+	public void testRunningBalance(){
+		mAdapter.deleteAllRecords();
+		int count = 150;
+		long time = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			Transaction transaction = new Transaction("Running " + i);
+			transaction.setTime(time - i * 1000L);
+			transaction.addSplit(createDebitSplit(String.valueOf(i + 1)));
+			mAdapter.addTransaction(transaction);
+		}
+
+		RunningBalanceCursor cursor = mAdapter.fetchTransactionsWithRunningBalanceForAccount(ALPHA_ACCOUNT_UID);
+		assertEquals(count, cursor.getCount());
+		//read from the oldest transaction, so that every row is reached from a checkpoint
+		for (int position = count - 1; position >= 0; position--) {
+			cursor.moveToPosition(position);
+			//the oldest transactions have the smallest amounts, so the balance after row p is 1 + 2 + ... + (count - p)
+			int remaining = count - position;
+			Money expected = new Money(String.valueOf(remaining * (remaining + 1) / 2));
+			assertEquals(expected.toPlainString(), cursor.getRunningBalance().toPlainString());
+			assertEquals(position, cursor.getPosition());
+		}
+		cursor.close();
+	}
+
+	public void testMoveTransactions(){
+		AccountsDbAdapter accountsAdapter = new AccountsDbAdapter(mContext);
+		Account destination = new Account("Destination");
+		accountsAdapter.addAccount(destination);
+		long srcAccountId = accountsAdapter.getId(ALPHA_ACCOUNT_UID);
+		long dstAccountId = accountsAdapter.getId(destination.getUID());
+
+		long[] movedIds = new long[2];
+		for (int i = 0; i < 3; i++) {
+			Transaction transaction = new Transaction("Moved " + i);
+			transaction.addSplit(createDebitSplit("10"));
+			long rowId = mAdapter.addTransaction(transaction);
+			if (i < movedIds.length)
+				movedIds[i] = rowId;
+		}
+
+		assertEquals(2, mAdapter.moveTransactions(movedIds, srcAccountId, dstAccountId));
+		assertEquals(2, mAdapter.getTransactionsCount(destination.getUID()));
+		assertEquals(new Money("10"), accountsAdapter.getAccountBalance(srcAccountId));
+		assertEquals(new Money("20"), accountsAdapter.getAccountBalance(dstAccountId));
+		accountsAdapter.close();
+	}
+
+	public void testMarkAsExportedWithSink() throws IOException {
+		Transaction exported = new Transaction("Exported");
+		exported.addSplit(createDebitSplit("10"));
+		mAdapter.addTransaction(exported);
+		List<String> exportedUIDs = new ArrayList<String>();
+		exportedUIDs.add(exported.getUID());
+
+		ExportSink failingSink = new ExportSink() {
+			@Override
+			public OutputStream open() throws IOException {
+				return new ByteArrayOutputStream();
+			}
+
+			@Override
+			public void commit() throws IOException {
+				throw new IOException("Commit failed");
+			}
+
+			@Override
+			public Uri getUri() {
+				return null;
+			}
+		};
+		try {
+			mAdapter.markAsExported(exportedUIDs, failingSink);
+			fail("Commit failure was not reported");
+		} catch (IOException e) {
+			//expected
+		}
+		assertFalse(mAdapter.getTransaction(mAdapter.getID(exported.getUID())).isExported());
+
+		assertEquals(1, mAdapter.markAsExported(exportedUIDs));
+		assertTrue(mAdapter.getTransaction(mAdapter.getID(exported.getUID())).isExported());
+	}
+
+	public void testIterateTransactionsWithSplits(){
+		AccountsDbAdapter accountsAdapter = new AccountsDbAdapter(mContext);
+		Account other = new Account("Other");
+		accountsAdapter.addAccount(other);
+		accountsAdapter.close();
+
+		for (int i = 0; i < 3; i++) {
+			Transaction transaction = new Transaction("Split " + i);
+			transaction.setTime(System.currentTimeMillis() + i);
+			Split split = createDebitSplit("10");
+			transaction.addSplit(split);
+			for (int j = 0; j < i; j++) {
+				transaction.addSplit(split.createPair(other.getUID()));
+			}
+			mAdapter.addTransaction(transaction);
+		}
+
+		TransactionIterator iterator = mAdapter.iterateTransactionsForAccount(ALPHA_ACCOUNT_UID);
+		assertEquals(3, iterator.getCount());
+		for (int i = 2; i >= 0; i--) {
+			assertTrue(iterator.hasNext());
+			Transaction transaction = iterator.next();
+			assertEquals("Split " + i, transaction.getDescription());
+			assertEquals(i + 1, transaction.getSplits().size());
+			for (Split split : transaction.getSplits()) {
+				assertEquals(transaction.getUID(), split.getTransactionUID());
+			}
+		}
+		assertFalse(iterator.hasNext());
+		iterator.close();
+
+		iterator = mAdapter.iterateTransactionsForAccount(ALPHA_ACCOUNT_UID);
+		Transaction exported = iterator.next();
+		iterator.close();
+		mAdapter.markAsExported(Collections.singletonList(exported.getUID()));
+		iterator = mAdapter.iterateTransactionsForAccount(ALPHA_ACCOUNT_UID, false);
+		assertEquals(2, iterator.getCount());
+		while (iterator.hasNext()) {
+			assertFalse(exported.getUID().equals(iterator.next().getUID()));
+		}
+		iterator.close();
+	}
+
+	private static Split createDebitSplit(String amount){
+		Split split = new Split(new Money(amount), ALPHA_ACCOUNT_UID);
+		split.setType(TransactionType.DEBIT);
+		return split;
+	}
+
 	@Override
 	protected void tearDown() throws Exception {
 		super.tearDown();
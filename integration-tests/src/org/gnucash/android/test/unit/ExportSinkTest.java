@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.test.unit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.gnucash.android.export.ExportSink;
+
+public class ExportSinkTest extends TestCase {
+
+	private File mFile;
+
+	public ExportSinkTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mFile = File.createTempFile("export", ".xml.gz");
+		mFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mFile.delete();
+		super.tearDown();
+	}
+
+	public void testAtomicGzipWithChecksum() throws IOException {
+		ExportSink.ChecksumSink sink = ExportSink.toFileAtomically(mFile).gzip().checksum("MD5");
+		OutputStream outputStream = sink.open();
+		outputStream.write("abc".getBytes("UTF-8"));
+		outputStream.close();
+
+		assertFalse(mFile.exists());
+		sink.commit();
+		assertTrue(mFile.exists());
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", sink.getChecksum());
+
+		InputStream inputStream = new GZIPInputStream(new FileInputStream(mFile));
+		byte[] buffer = new byte[16];
+		int length = inputStream.read(buffer);
+		inputStream.close();
+		assertEquals("abc", new String(buffer, 0, length, "UTF-8"));
+	}
+
+	public void testAbortKeepsExistingFile() throws IOException {
+		assertTrue(mFile.createNewFile());
+
+		ExportSink sink = ExportSink.toFileAtomically(mFile);
+		OutputStream outputStream = sink.open();
+		outputStream.write(1);
+		outputStream.close();
+		sink.abort();
+
+		assertTrue(mFile.exists());
+		assertEquals(0, mFile.length());
+		assertFalse(new File(mFile.getPath() + ".tmp").exists());
+	}
+}
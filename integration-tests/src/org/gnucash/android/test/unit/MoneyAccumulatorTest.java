@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.test.unit;
+
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.MoneyAccumulator;
+
+public class MoneyAccumulatorTest extends TestCase {
+
+	public MoneyAccumulatorTest(String name) {
+		super(name);
+	}
+
+	public void testAccumulation(){
+		MoneyAccumulator accumulator = new MoneyAccumulator("EUR");
+		accumulator.add(new Money("15.75", "EUR"));
+		accumulator.subtract(new Money("0.25", "EUR"));
+		accumulator.add(5, 10);
+
+		assertEquals(new Money("16.00", "EUR"), accumulator.toMoney());
+	}
+
+	public void testDecimalAccumulation(){
+		MoneyAccumulator accumulator = new MoneyAccumulator("EUR");
+		accumulator.add(new BigDecimal("12.5"));
+		accumulator.subtract(new BigDecimal("-0.25"));
+		accumulator.add(new BigDecimal("1E+2"));
+		//unscaled value does not fit in a long
+		accumulator.add(new BigDecimal("0.00000000000000000001"));
+
+		assertEquals(0, new BigDecimal("112.75000000000000000001").compareTo(accumulator.toBigDecimal()));
+	}
+
+	public void testAdditionWithIncompatibleCurrency(){
+		MoneyAccumulator accumulator = new MoneyAccumulator("EUR");
+		try {
+			accumulator.add(new Money("1", "USD"));
+			fail("Expected an exception");
+		} catch (IllegalArgumentException e){
+			//expected
+		}
+	}
+
+	public void testFallbackOnOverflow(){
+		MoneyAccumulator accumulator = new MoneyAccumulator("USD");
+		accumulator.add(Long.MAX_VALUE, 100);
+		accumulator.add(Long.MAX_VALUE, 100);
+
+		BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE, 2).multiply(new BigDecimal(2));
+		assertEquals(0, expected.compareTo(accumulator.toBigDecimal()));
+	}
+
+	public void testFallbackOnExcessDecimals(){
+		MoneyAccumulator accumulator = new MoneyAccumulator("JPY");
+		accumulator.add(100, 1);
+		accumulator.add(50, 100);
+
+		assertEquals(0, new BigDecimal("100.5").compareTo(accumulator.toBigDecimal()));
+		assertEquals(new Money("100.50", "JPY"), accumulator.toMoney());
+	}
+}
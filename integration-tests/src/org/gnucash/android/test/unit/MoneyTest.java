@@ -168,6 +168,39 @@ public class MoneyTest extends TestCase {
 		assertEquals("9.75", some.asString());
 	}
 	
+	public void testRationalAmounts(){
+		Money rational = new Money(1575, 100, CURRENCY_CODE);
+		assertEquals(new Money("15.75", CURRENCY_CODE), rational);
+		assertEquals(1575, rational.getNumerator());
+		assertEquals(100, rational.getDenominator());
+
+		assertEquals(new BigDecimal("-2.5"), Money.rationalToDecimal(-25, 10));
+		assertEquals(0, new BigDecimal("0.3333").compareTo(
+				Money.rationalToDecimal(1, 3).setScale(4, BigDecimal.ROUND_HALF_EVEN)));
+
+		assertEquals(new BigDecimal("33.33"), Money.rationalToDecimal(100, 3, 2));
+		assertEquals(new BigDecimal("12.345"), Money.rationalToDecimal(12345, 1000, 2));
+		Money rounded = new Money(Money.rationalToDecimal(100, 3, 2), Currency.getInstance(CURRENCY_CODE));
+		assertEquals(3333, rounded.getNumerator());
+		assertEquals(100, rounded.getDenominator());
+	}
+
+	public void testUnrepresentableRationalAmountThrows(){
+		Money unrounded = new Money(Money.rationalToDecimal(100, 3), Currency.getInstance(CURRENCY_CODE));
+		try {
+			unrounded.getNumerator();
+			fail("Numerators which do not fit in a long should not wrap around");
+		} catch (ArithmeticException e) {
+			//expected
+		}
+		try {
+			unrounded.getDenominator();
+			fail("Denominators which do not fit in a long should not wrap around");
+		} catch (ArithmeticException e) {
+			//expected
+		}
+	}
+
 	public void validateImmutability(){
 		assertEquals(mHashcode, money.hashCode());
 		assertEquals(amount, money.asDouble());